@@ -0,0 +1,121 @@
+package es.upm.hbase.benchmark;
+
+import es.upm.hbase.UsersSchema;
+import es.upm.hbase.aggregate.ProvinceAggregator;
+import es.upm.hbase.codec.UserCodec;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.Table;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Users, logins and names per province of option 32 against the same aggregates computed from a
+ * sequential scan of whole rows decoded into Strings.
+ *
+ * The table is in memory, so the time of an RPC comes from the latency and bandwidth of
+ * {@link RemoteUsersTableState}, and the read RPCs and the bytes of their responses are reported
+ * as the rpcs and rpcBytes counters: what the aggregator saves by projecting, filtering on the
+ * server and batching shows up there even when the latency is left out. The work of the
+ * RegionServers, filters included, runs in the benchmark thread, and reading the cells from the
+ * block cache or the disks is not modelled.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AggregationBenchmark {
+
+    /**
+     * Read RPCs and response bytes of the last invocation, the same for all of them since every
+     * invocation reads the same rows.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Transfer {
+        public long rpcs;
+        public long rpcBytes;
+    }
+
+    @Benchmark
+    public int scanAndAggregate(RemoteUsersTableState state, Transfer transfer) throws IOException {
+        long rpcs = state.getConnection().getRpcs();
+        long rpcBytes = state.getConnection().getRpcBytes();
+        Map<String, Long> counts = new HashMap<>();
+        Map<String, String> first = new HashMap<>();
+        Map<String, String> last = new HashMap<>();
+        Map<String, Set<String>> names = new HashMap<>();
+        try (Table t = state.manager.getConnection().getTable(UsersSchema.TABLE);
+             ResultScanner rs = t.getScanner(new Scan().setCaching(state.batchSize))) {
+            for (Result result : rs) {
+                String province = UserCodec.get(result, UsersSchema.PROVINCE);
+                if (province == null) {
+                    continue;
+                }
+                String login = UserCodec.get(result, UsersSchema.LAST_LOGIN);
+                counts.merge(province, 1L, Long::sum);
+                if (login != null) {
+                    first.merge(province, login, (a, b) -> a.compareTo(b) <= 0 ? a : b);
+                    last.merge(province, login, (a, b) -> a.compareTo(b) >= 0 ? a : b);
+                }
+                names.computeIfAbsent(province, p -> new HashSet<>()).add(UserCodec.get(result, UsersSchema.NAME));
+            }
+        }
+        count(state, transfer, rpcs, rpcBytes);
+        return counts.size();
+    }
+
+    @Benchmark
+    public int provinceAggregator(RemoteUsersTableState state, Transfer transfer) throws Exception {
+        return aggregate(state, transfer, new ProvinceAggregator(state.manager, UsersSchema.TABLE));
+    }
+
+    /**
+     * Rows returned two cells at a time and stitched back on the client.
+     */
+    @Benchmark
+    public int provinceAggregatorBatched(RemoteUsersTableState state, Transfer transfer) throws Exception {
+        return aggregate(state, transfer, new ProvinceAggregator(state.manager, UsersSchema.TABLE).setBatch(2));
+    }
+
+    /**
+     * One province, filtered on the server, so only its users cross the network.
+     */
+    @Benchmark
+    public int provinceAggregatorFiltered(RemoteUsersTableState state, Transfer transfer) throws Exception {
+        return aggregate(state, transfer, new ProvinceAggregator(state.manager, UsersSchema.TABLE)
+                .setProvinces(UsersSchema.PROVINCES[0]));
+    }
+
+    private static int aggregate(RemoteUsersTableState state, Transfer transfer, ProvinceAggregator aggregator)
+            throws Exception {
+        long rpcs = state.getConnection().getRpcs();
+        long rpcBytes = state.getConnection().getRpcBytes();
+        int provinces = aggregator.setCaching(state.batchSize).aggregate().size();
+        count(state, transfer, rpcs, rpcBytes);
+        return provinces;
+    }
+
+    // Counters of the connection are shared by every thread, the benchmarks run with one
+    private static void count(RemoteUsersTableState state, Transfer transfer, long rpcs, long rpcBytes) {
+        transfer.rpcs = state.getConnection().getRpcs() - rpcs;
+        transfer.rpcBytes = state.getConnection().getRpcBytes() - rpcBytes;
+    }
+}
@@ -0,0 +1,123 @@
+package es.upm.hbase.benchmark;
+
+import es.upm.hbase.UsersSchema;
+import es.upm.hbase.key.RowKeyStrategy;
+import es.upm.hbase.load.UserDataGenerator;
+import es.upm.hbase.load.UserRowGenerator;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rows/s of the user generators on a single thread, that is per core: the generation code Main.put
+ * used to have, the thread-safe UserRowGenerator and the sources of UserDataGenerator, plus the
+ * batch-filling mode on every core. Run with -t to see how the single-thread ones scale.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(1)
+public class GeneratorBenchmark {
+    static final int BATCH = 1000;
+
+    @State(Scope.Thread)
+    public static class Generators {
+        @Param({"0", "1"})
+        public double skew;
+
+        @Param({"name", "salted"})
+        public String keys;
+
+        UserDataGenerator generator;
+        UserDataGenerator.Source source;
+        UserRowGenerator rowGenerator;
+        final List<Put> batch = new ArrayList<>(BATCH);
+
+        @Setup
+        public void setUp() {
+            generator = new UserDataGenerator(42, UsersSchema.NAMES.length, UsersSchema.PROVINCES.length, skew,
+                    RowKeyStrategy.forName(keys, 16));
+            source = generator.newSource();
+            rowGenerator = new UserRowGenerator(generator);
+        }
+    }
+
+    /**
+     * The per-row code of Main.put before the generator: new Random and SimpleDateFormat for
+     * every value and the family and qualifiers encoded again for every row.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void legacy(Blackhole bh) {
+        for (int i = 0; i < BATCH; i++) {
+            String name = UsersSchema.NAMES[new Random().nextInt(UsersSchema.NAMES.length)];
+            String province = UsersSchema.PROVINCES[new Random().nextInt(UsersSchema.PROVINCES.length)];
+            Random random = new Random();
+            int year = 2010 + random.nextInt(14);
+            int month = 1 + random.nextInt(12);
+            int day = 1 + random.nextInt(28);
+            String lastLogin = new SimpleDateFormat("yyyy-MM-dd").format(new Date(year - 1900, month - 1, day));
+
+            Put put = new Put(Bytes.toBytes(name));
+            put.addColumn(Bytes.toBytes("BasicData"), Bytes.toBytes("name"), Bytes.toBytes(name));
+            put.addColumn(Bytes.toBytes("BasicData"), Bytes.toBytes("province"), Bytes.toBytes(province));
+            put.addColumn(Bytes.toBytes("BasicData"), Bytes.toBytes("lastLogin"), Bytes.toBytes(lastLogin));
+            bh.consume(put);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void userRowGenerator(Generators g, Blackhole bh) {
+        for (int i = 0; i < BATCH; i++) {
+            bh.consume(g.rowGenerator.next());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void source(Generators g, Blackhole bh) {
+        for (int i = 0; i < BATCH; i++) {
+            bh.consume(g.source.next(HConstants.LATEST_TIMESTAMP));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public List<Put> fillBatch(Generators g) {
+        g.source.fill(g.batch, BATCH, HConstants.LATEST_TIMESTAMP);
+        return g.batch;
+    }
+
+    /**
+     * Batch mode on every core; divide by the number of cores for the rate per core.
+     */
+    @Benchmark
+    @OperationsPerInvocation(100 * BATCH)
+    public void parallelFill(Generators g, Blackhole bh) throws Exception {
+        g.generator.generate(Runtime.getRuntime().availableProcessors(), 100 * BATCH, BATCH, batch -> bh.consume(batch.size()));
+    }
+}
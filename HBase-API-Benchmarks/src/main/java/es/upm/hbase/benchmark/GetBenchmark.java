@@ -0,0 +1,83 @@
+package es.upm.hbase.benchmark;
+
+import es.upm.hbase.UsersSchema;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Table;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads rowCount random users per invocation with the gets of options 4, 5 and 6, plus
+ * multi-gets of batchSize keys.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GetBenchmark {
+
+    @Benchmark
+    public void get(UsersTableState state, Blackhole bh) throws Exception {
+        state.parallel((from, to) -> {
+            try (Table t = state.manager.getConnection().getTable(UsersSchema.TABLE)) {
+                for (int i = from; i < to; i++) {
+                    Result result = t.get(new Get(state.randomKey()));
+                    bh.consume(result.getValue(UsersSchema.FAMILY, UsersSchema.PROVINCE));
+                }
+            }
+        });
+    }
+
+    @Benchmark
+    public void columnGet(UsersTableState state, Blackhole bh) throws Exception {
+        state.parallel((from, to) -> {
+            try (Table t = state.manager.getConnection().getTable(UsersSchema.TABLE)) {
+                for (int i = from; i < to; i++) {
+                    Result result = t.get(new Get(state.randomKey()).addColumn(UsersSchema.FAMILY, UsersSchema.LAST_LOGIN));
+                    bh.consume(result.getValue(UsersSchema.FAMILY, UsersSchema.LAST_LOGIN));
+                }
+            }
+        });
+    }
+
+    @Benchmark
+    public void multiVersionGet(UsersTableState state, Blackhole bh) throws Exception {
+        state.parallel((from, to) -> {
+            try (Table t = state.manager.getConnection().getTable(UsersSchema.TABLE)) {
+                for (int i = from; i < to; i++) {
+                    Result result = t.get(new Get(state.randomKey()).readVersions(5));
+                    bh.consume(result.getColumnCells(UsersSchema.FAMILY, UsersSchema.PROVINCE));
+                    bh.consume(result.getColumnCells(UsersSchema.FAMILY, UsersSchema.LAST_LOGIN));
+                }
+            }
+        });
+    }
+
+    @Benchmark
+    public void batchGet(UsersTableState state, Blackhole bh) throws Exception {
+        state.parallel((from, to) -> {
+            try (Table t = state.manager.getConnection().getTable(UsersSchema.TABLE)) {
+                List<Get> batch = new ArrayList<>(state.batchSize);
+                for (int i = from; i < to; i++) {
+                    batch.add(new Get(state.randomKey()).addColumn(UsersSchema.FAMILY, UsersSchema.PROVINCE));
+                    if (batch.size() == state.batchSize || i == to - 1) {
+                        bh.consume(t.get(batch));
+                        batch = new ArrayList<>(state.batchSize);
+                    }
+                }
+            }
+        });
+    }
+}
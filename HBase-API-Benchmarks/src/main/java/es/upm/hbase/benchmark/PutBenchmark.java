@@ -0,0 +1,83 @@
+package es.upm.hbase.benchmark;
+
+import es.upm.hbase.UsersSchema;
+import es.upm.hbase.load.BufferedLoader;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.client.BufferedMutator;
+import org.apache.hadoop.hbase.client.BufferedMutatorParams;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Table;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes rowCount users per invocation: one put per row, batched puts and BufferedMutator.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PutBenchmark {
+
+    @Benchmark
+    public void singlePut(UsersTableState state) throws Exception {
+        state.parallel((from, to) -> {
+            try (Table t = state.manager.getConnection().getTable(UsersSchema.TABLE)) {
+                for (int i = from; i < to; i++) {
+                    t.put(state.newPut(i, HConstants.LATEST_TIMESTAMP));
+                }
+            }
+        });
+    }
+
+    @Benchmark
+    public void batchPut(UsersTableState state) throws Exception {
+        state.parallel((from, to) -> {
+            try (Table t = state.manager.getConnection().getTable(UsersSchema.TABLE)) {
+                List<Put> batch = new ArrayList<>(state.batchSize);
+                for (int i = from; i < to; i++) {
+                    batch.add(state.newPut(i, HConstants.LATEST_TIMESTAMP));
+                    if (batch.size() == state.batchSize) {
+                        t.put(batch);
+                        batch = new ArrayList<>(state.batchSize);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    t.put(batch);
+                }
+            }
+        });
+    }
+
+    @Benchmark
+    public void bufferedMutator(UsersTableState state) throws Exception {
+        BufferedMutatorParams params = new BufferedMutatorParams(UsersSchema.TABLE)
+                .writeBufferSize((long) state.batchSize * (state.valueSize + 64));
+        try (BufferedMutator mutator = state.manager.getConnection().getBufferedMutator(params)) {
+            state.parallel((from, to) -> {
+                for (int i = from; i < to; i++) {
+                    mutator.mutate(state.newPut(i, HConstants.LATEST_TIMESTAMP));
+                }
+            });
+        }
+    }
+
+    /**
+     * Option 15 end to end: producers, bounded queue and BufferedMutator.
+     */
+    @Benchmark
+    public void bufferedLoader(UsersTableState state) throws Exception {
+        new BufferedLoader(state.manager, UsersSchema.TABLE, state.threads,
+                (long) state.batchSize * (state.valueSize + 64), 1000, 10000).load(state.rowCount);
+    }
+}
@@ -0,0 +1,32 @@
+package es.upm.hbase.benchmark;
+
+import es.upm.hbase.benchmark.inmemory.InMemoryConnection;
+import org.apache.hadoop.conf.Configuration;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Users table whose reads cost what the RPCs to a RegionServer would: rpcLatencyUs per round
+ * trip plus the transfer of the response at bandwidthMb MB/s. 0 leaves the cost out.
+ */
+@State(Scope.Benchmark)
+public class RemoteUsersTableState extends UsersTableState {
+
+    @Param({"0", "500"})
+    public int rpcLatencyUs;
+
+    @Param({"100"})
+    public int bandwidthMb;
+
+    @Override
+    protected Configuration configure(Configuration conf) {
+        conf.setInt(InMemoryConnection.RPC_LATENCY_KEY, rpcLatencyUs);
+        conf.setInt(InMemoryConnection.RPC_BANDWIDTH_KEY, bandwidthMb);
+        return conf;
+    }
+
+    public InMemoryConnection getConnection() {
+        return (InMemoryConnection) manager.getConnection();
+    }
+}
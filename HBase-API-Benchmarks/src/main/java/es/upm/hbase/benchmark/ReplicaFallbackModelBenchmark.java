@@ -0,0 +1,67 @@
+package es.upm.hbase.benchmark;
+
+import es.upm.hbase.UsersSchema;
+import es.upm.hbase.metrics.Operation;
+import es.upm.hbase.replica.TimelineReads;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Result;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Model of the get of option 4 against a slow primary replica, with strong reads and with the
+ * timeline reads of option 33. It is not a measurement of the replica fallback: the in-memory
+ * table decides which reads find the primary slow and ends a delayed TIMELINE read at the primary
+ * call timeout plus one round trip, so the sampled latencies follow from the parameters of
+ * {@link SlowPrimaryUsersTableState} by construction.
+ *
+ * What runs is the code of the options around the call: the timeline get and connection of
+ * {@link TimelineReads} and the counting of the answers the model flags as stale. The replica
+ * calls, the fallback and the stale results of the HBase client need a cluster with region
+ * replicas to be measured.
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ReplicaFallbackModelBenchmark {
+
+    /**
+     * Answers of the invocations of a thread that the model flagged as coming from a secondary.
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Replicas {
+        public long stale;
+    }
+
+    @Benchmark
+    public Result strongGet(SlowPrimaryUsersTableState state) throws IOException {
+        return state.manager.getTable(UsersSchema.TABLE).get(lookup(state));
+    }
+
+    @Benchmark
+    public Result timelineGet(SlowPrimaryUsersTableState state, Replicas replicas) throws IOException {
+        Result result = state.timeline.getTable(UsersSchema.TABLE).get(TimelineReads.timeline(lookup(state)));
+        if (state.timeline.count(Operation.GET, result).isStale()) {
+            replicas.stale++;
+        }
+        return result;
+    }
+
+    private static Get lookup(SlowPrimaryUsersTableState state) {
+        return new Get(state.randomKey()).addColumn(UsersSchema.FAMILY, UsersSchema.PROVINCE);
+    }
+}
@@ -0,0 +1,76 @@
+package es.upm.hbase.benchmark;
+
+import es.upm.hbase.UsersSchema;
+import es.upm.hbase.scan.ParallelScanner;
+import org.apache.hadoop.hbase.CompareOperator;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.filter.SingleColumnValueFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The scans of options 7, 8 and 9 over the preloaded rows, with batchSize rows per RPC, and the
+ * region-parallel scan of option 18.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScanBenchmark {
+
+    @Benchmark
+    public long fullScan(UsersTableState state, Blackhole bh) throws IOException {
+        Scan scan = new Scan().addColumn(UsersSchema.FAMILY, UsersSchema.PROVINCE).setCaching(state.batchSize);
+        return consume(state, scan, bh);
+    }
+
+    @Benchmark
+    public long rangeScan(UsersTableState state, Blackhole bh) throws IOException {
+        Scan scan = new Scan().withStartRow(state.keys[state.rowCount / 4]).withStopRow(state.keys[state.rowCount * 3 / 4])
+                .addColumn(UsersSchema.FAMILY, UsersSchema.PROVINCE).setCaching(state.batchSize);
+        return consume(state, scan, bh);
+    }
+
+    @Benchmark
+    public long filterScan(UsersTableState state, Blackhole bh) throws IOException {
+        Scan scan = new Scan().setCaching(state.batchSize)
+                .setFilter(new SingleColumnValueFilter(UsersSchema.FAMILY, UsersSchema.PROVINCE, CompareOperator.EQUAL,
+                        Bytes.toBytes(UsersSchema.PROVINCES[0])));
+        return consume(state, scan, bh);
+    }
+
+    @Benchmark
+    public long parallelScan(UsersTableState state, Blackhole bh) throws Exception {
+        Scan scan = new Scan().addColumn(UsersSchema.FAMILY, UsersSchema.PROVINCE).setCaching(state.batchSize);
+        return new ParallelScanner(state.manager, UsersSchema.TABLE, state.threads, state.threads, state.batchSize)
+                .setVerbose(false)
+                .scan(scan, true, bh::consume)
+                .getRows();
+    }
+
+    private static long consume(UsersTableState state, Scan scan, Blackhole bh) throws IOException {
+        long rows = 0;
+        try (Table t = state.manager.getConnection().getTable(UsersSchema.TABLE);
+             ResultScanner rs = t.getScanner(scan)) {
+            for (Result result : rs) {
+                bh.consume(result);
+                rows++;
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,56 @@
+package es.upm.hbase.benchmark;
+
+import es.upm.hbase.benchmark.inmemory.InMemoryConnection;
+import es.upm.hbase.replica.TimelineReads;
+import org.apache.hadoop.conf.Configuration;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+
+/**
+ * Users table whose reads take rpcLatencyUs, except for the primaryDelayRatio of them that find
+ * the primary replica primaryDelayUs slower, as in a GC pause or a region move. Timeline reads of
+ * a slow primary are modelled as ending one round trip after primaryTimeoutUs, flagged as stale.
+ */
+@State(Scope.Benchmark)
+public class SlowPrimaryUsersTableState extends UsersTableState {
+
+    @Param({"200"})
+    public int rpcLatencyUs;
+
+    @Param({"50000"})
+    public int primaryDelayUs;
+
+    @Param({"0.02"})
+    public double primaryDelayRatio;
+
+    @Param({"10000"})
+    public long primaryTimeoutUs;
+
+    public TimelineReads timeline;
+
+    @Override
+    protected Configuration configure(Configuration conf) {
+        conf.setInt(InMemoryConnection.RPC_LATENCY_KEY, rpcLatencyUs);
+        conf.setInt(InMemoryConnection.PRIMARY_DELAY_KEY, primaryDelayUs);
+        conf.setDouble(InMemoryConnection.PRIMARY_DELAY_RATIO_KEY, primaryDelayRatio);
+        // The same timeout for every read, so that the timeline reads share the connection and its tables
+        conf.setLong(TimelineReads.PRIMARY_TIMEOUT_KEY, primaryTimeoutUs);
+        conf.setLong(TimelineReads.PRIMARY_TIMEOUT_MULTIGET_KEY, primaryTimeoutUs);
+        return conf;
+    }
+
+    @Override
+    protected void loaded() throws IOException {
+        timeline = new TimelineReads(manager, primaryTimeoutUs);
+    }
+
+    @TearDown(Level.Trial)
+    public void closeTimeline() throws IOException {
+        timeline.close();
+    }
+}
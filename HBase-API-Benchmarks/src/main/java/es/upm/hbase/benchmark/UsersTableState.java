@@ -0,0 +1,141 @@
+package es.upm.hbase.benchmark;
+
+import es.upm.hbase.UsersSchema;
+import es.upm.hbase.benchmark.inmemory.InMemoryConnection;
+import es.upm.hbase.connection.ConnectionManager;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Users table behind an in-memory connection, shared by the benchmarks, with the parameters
+ * every data-path benchmark is run with. Every benchmark invocation processes rowCount rows
+ * split among threads workers.
+ */
+@State(Scope.Benchmark)
+public class UsersTableState {
+
+    /**
+     * Work done by one worker over the rows [from, to).
+     */
+    public interface Work {
+        void run(int from, int to) throws Exception;
+    }
+
+    static final byte[] PAYLOAD = Bytes.toBytes("payload");
+    static final int PRELOADED_VERSIONS = 3;
+
+    @Param({"10000"})
+    public int rowCount;
+
+    @Param({"16", "1024"})
+    public int valueSize;
+
+    @Param({"100"})
+    public int batchSize;
+
+    @Param({"1", "4"})
+    public int threads;
+
+    public ConnectionManager manager;
+    public byte[][] keys;
+    private byte[] value;
+    private ExecutorService workers;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        Configuration conf = configure(InMemoryConnection.configure(HBaseConfiguration.create()));
+        manager = new ConnectionManager(conf);
+        workers = Executors.newFixedThreadPool(threads);
+        value = new byte[valueSize];
+        ThreadLocalRandom.current().nextBytes(value);
+        keys = new byte[rowCount][];
+        for (int i = 0; i < rowCount; i++) {
+            keys[i] = Bytes.toBytes(String.format("user%08d", i));
+        }
+        // Preloaded rows for the read benchmarks, with several versions each.
+        Table t = manager.getConnection().getTable(UsersSchema.TABLE);
+        for (int version = 1; version <= PRELOADED_VERSIONS; version++) {
+            List<Put> puts = new ArrayList<>(rowCount);
+            for (int i = 0; i < rowCount; i++) {
+                puts.add(newPut(i, version));
+            }
+            t.put(puts);
+        }
+        t.close();
+        loaded();
+    }
+
+    /**
+     * Settings of the in-memory connection, for the states that need more than the defaults.
+     */
+    protected Configuration configure(Configuration conf) {
+        return conf;
+    }
+
+    /**
+     * Called once the rows are preloaded, for the states that need more than the table.
+     */
+    protected void loaded() throws IOException {
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        workers.shutdownNow();
+        manager.close();
+    }
+
+    /**
+     * A user row like the ones of Main.put plus a payload column of valueSize bytes.
+     */
+    public Put newPut(int i, long timestamp) {
+        Put put = new Put(keys[i], timestamp);
+        put.addColumn(UsersSchema.FAMILY, UsersSchema.NAME, keys[i]);
+        put.addColumn(UsersSchema.FAMILY, UsersSchema.PROVINCE, Bytes.toBytes(UsersSchema.PROVINCES[i % UsersSchema.PROVINCES.length]));
+        put.addColumn(UsersSchema.FAMILY, UsersSchema.LAST_LOGIN, Bytes.toBytes("2020-01-01"));
+        put.addColumn(UsersSchema.FAMILY, PAYLOAD, value);
+        return put;
+    }
+
+    public byte[] randomKey() {
+        return keys[ThreadLocalRandom.current().nextInt(keys.length)];
+    }
+
+    /**
+     * Splits the rows among the workers and waits for all of them.
+     */
+    public void parallel(Work work) throws Exception {
+        if (threads == 1) {
+            work.run(0, rowCount);
+            return;
+        }
+        List<Future<?>> futures = new ArrayList<>(threads);
+        for (int w = 0; w < threads; w++) {
+            int from = (int) ((long) rowCount * w / threads);
+            int to = (int) ((long) rowCount * (w + 1) / threads);
+            futures.add(workers.submit(() -> {
+                work.run(from, to);
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+    }
+}
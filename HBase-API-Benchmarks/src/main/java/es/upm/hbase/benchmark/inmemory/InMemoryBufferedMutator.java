@@ -0,0 +1,80 @@
+package es.upm.hbase.benchmark.inmemory;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.BufferedMutator;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Mutation;
+import org.apache.hadoop.hbase.client.Put;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link BufferedMutator} that buffers mutations up to the write buffer size, as the real one does,
+ * and applies them to the store when flushing.
+ */
+class InMemoryBufferedMutator implements BufferedMutator {
+    private final InMemoryConnection connection;
+    private final TableName name;
+    private final InMemoryStore store;
+    private final long writeBufferSize;
+    private final List<Mutation> buffer = new ArrayList<>();
+    private long bufferedBytes = 0;
+
+    InMemoryBufferedMutator(InMemoryConnection connection, TableName name, InMemoryStore store, long writeBufferSize) {
+        this.connection = connection;
+        this.name = name;
+        this.store = store;
+        this.writeBufferSize = writeBufferSize;
+    }
+
+    @Override
+    public TableName getName() {
+        return name;
+    }
+
+    @Override
+    public Configuration getConfiguration() {
+        return connection.getConfiguration();
+    }
+
+    @Override
+    public synchronized void mutate(Mutation mutation) {
+        buffer.add(mutation);
+        bufferedBytes += mutation.heapSize();
+        if (bufferedBytes >= writeBufferSize) {
+            flush();
+        }
+    }
+
+    @Override
+    public void mutate(List<? extends Mutation> mutations) {
+        for (Mutation mutation : mutations) {
+            mutate(mutation);
+        }
+    }
+
+    @Override
+    public synchronized void flush() {
+        for (Mutation mutation : buffer) {
+            if (mutation instanceof Put) {
+                store.put((Put) mutation);
+            } else if (mutation instanceof Delete) {
+                store.delete((Delete) mutation);
+            }
+        }
+        buffer.clear();
+        bufferedBytes = 0;
+    }
+
+    @Override
+    public long getWriteBufferSize() {
+        return writeBufferSize;
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+}
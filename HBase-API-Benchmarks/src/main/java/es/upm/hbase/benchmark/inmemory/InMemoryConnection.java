@@ -0,0 +1,199 @@
+package es.upm.hbase.benchmark.inmemory;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Admin;
+import org.apache.hadoop.hbase.client.BufferedMutator;
+import org.apache.hadoop.hbase.client.BufferedMutatorParams;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.Consistency;
+import org.apache.hadoop.hbase.client.RegionLocator;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.client.TableBuilder;
+import org.apache.hadoop.hbase.security.User;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * In-process stand-in of a cluster connection, so the data paths can be benchmarked offline.
+ *
+ * It is plugged in through the hbase.client.connection.impl setting, which ConnectionFactory
+ * honours, so the code under test keeps creating its connection as usual. Tables are created
+ * on first use and live as long as the connection. Admin operations are not supported.
+ *
+ * Reads can be made to cost what an RPC would: every get, multi-get and scanner round trip then
+ * waits the configured latency plus the time its response takes at the configured bandwidth, and
+ * is counted with the bytes of its response, so that benchmarks can tell how much data reached
+ * the client.
+ *
+ * The primary replica of the regions can be made slow too: a share of the reads, like those
+ * caught by a GC pause or a region move, then wait an extra delay. TIMELINE reads are a model
+ * of the fallback of the client to the secondary replicas, not the fallback itself: when the
+ * primary has not answered within the primary call timeout of gets, the read ends one round trip
+ * after the timeout instead, with its results flagged as stale.
+ */
+public class InMemoryConnection implements Connection {
+    public static final String CONNECTION_IMPL_KEY = "hbase.client.connection.impl";
+    public static final String MAX_VERSIONS_KEY = "inmemory.max.versions";
+    public static final String RPC_LATENCY_KEY = "inmemory.rpc.latency.us";
+    public static final String RPC_BANDWIDTH_KEY = "inmemory.rpc.bandwidth.mb";
+    public static final String PRIMARY_DELAY_KEY = "inmemory.primary.delay.us";
+    public static final String PRIMARY_DELAY_RATIO_KEY = "inmemory.primary.delay.ratio";
+    public static final String PRIMARY_TIMEOUT_KEY = "hbase.client.primaryCallTimeout.get";
+
+    private final Configuration conf;
+    private final ConcurrentHashMap<TableName, InMemoryStore> stores = new ConcurrentHashMap<>();
+    private final long rpcLatencyNs;
+    private final double rpcNsPerByte;
+    private final long primaryDelayNs;
+    private final double primaryDelayRatio;
+    private final long primaryTimeoutNs;
+    private final AtomicLong rpcs = new AtomicLong();
+    private final AtomicLong rpcBytes = new AtomicLong();
+    private volatile boolean closed = false;
+
+    public InMemoryConnection(Configuration conf, ExecutorService pool, User user) {
+        this.conf = conf;
+        this.rpcLatencyNs = conf.getLong(RPC_LATENCY_KEY, 0) * 1000;
+        int bandwidthMb = conf.getInt(RPC_BANDWIDTH_KEY, 0);
+        this.rpcNsPerByte = bandwidthMb > 0 ? 1e9 / (bandwidthMb * 1048576.0) : 0;
+        this.primaryDelayNs = conf.getLong(PRIMARY_DELAY_KEY, 0) * 1000;
+        this.primaryDelayRatio = conf.getDouble(PRIMARY_DELAY_RATIO_KEY, 0);
+        this.primaryTimeoutNs = conf.getLong(PRIMARY_TIMEOUT_KEY, 10000) * 1000;
+    }
+
+    /**
+     * Configuration whose connections are in-memory ones.
+     */
+    public static Configuration configure(Configuration conf) {
+        conf.set(CONNECTION_IMPL_KEY, InMemoryConnection.class.getName());
+        return conf;
+    }
+
+    /**
+     * Accounts for a read RPC whose response has the given size, waiting for as long as it would
+     * take. Returns whether a secondary replica answered it.
+     */
+    boolean rpc(long responseBytes, Consistency consistency) {
+        rpcs.incrementAndGet();
+        rpcBytes.addAndGet(responseBytes);
+        long roundTripNs = rpcLatencyNs + (long) (responseBytes * rpcNsPerByte);
+        long readNs = roundTripNs;
+        boolean stale = false;
+        if (primaryDelayNs > 0 && ThreadLocalRandom.current().nextDouble() < primaryDelayRatio) {
+            readNs += primaryDelayNs;
+            if (consistency == Consistency.TIMELINE && primaryTimeoutNs + roundTripNs < readNs) {
+                readNs = primaryTimeoutNs + roundTripNs;
+                stale = true;
+            }
+        }
+        long deadline = System.nanoTime() + readNs;
+        for (long left = deadline - System.nanoTime(); left > 0; left = deadline - System.nanoTime()) {
+            LockSupport.parkNanos(left);
+        }
+        return stale;
+    }
+
+    /**
+     * Read RPCs done so far.
+     */
+    public long getRpcs() {
+        return rpcs.get();
+    }
+
+    /**
+     * Bytes of the responses of the read RPCs done so far.
+     */
+    public long getRpcBytes() {
+        return rpcBytes.get();
+    }
+
+    private InMemoryStore store(TableName name) {
+        return stores.computeIfAbsent(name, n -> new InMemoryStore(conf.getInt(MAX_VERSIONS_KEY, 10)));
+    }
+
+    @Override
+    public Configuration getConfiguration() {
+        return conf;
+    }
+
+    @Override
+    public BufferedMutator getBufferedMutator(TableName tableName) {
+        return new InMemoryBufferedMutator(this, tableName, store(tableName), 2 * 1024 * 1024);
+    }
+
+    @Override
+    public BufferedMutator getBufferedMutator(BufferedMutatorParams params) {
+        long writeBufferSize = params.getWriteBufferSize() > 0 ? params.getWriteBufferSize() : 2 * 1024 * 1024;
+        return new InMemoryBufferedMutator(this, params.getTableName(), store(params.getTableName()), writeBufferSize);
+    }
+
+    @Override
+    public RegionLocator getRegionLocator(TableName tableName) {
+        return new InMemoryRegionLocator(tableName);
+    }
+
+    @Override
+    public void clearRegionLocationCache() {
+    }
+
+    @Override
+    public Admin getAdmin() {
+        throw new UnsupportedOperationException("Admin operations are not available on the in-memory connection");
+    }
+
+    @Override
+    public TableBuilder getTableBuilder(TableName tableName, ExecutorService pool) {
+        return new TableBuilder() {
+            @Override
+            public TableBuilder setOperationTimeout(int timeout) {
+                return this;
+            }
+
+            @Override
+            public TableBuilder setRpcTimeout(int timeout) {
+                return this;
+            }
+
+            @Override
+            public TableBuilder setReadRpcTimeout(int timeout) {
+                return this;
+            }
+
+            @Override
+            public TableBuilder setWriteRpcTimeout(int timeout) {
+                return this;
+            }
+
+            @Override
+            public Table build() {
+                return new InMemoryTable(InMemoryConnection.this, tableName, store(tableName));
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        stores.clear();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void abort(String why, Throwable e) {
+        close();
+    }
+
+    @Override
+    public boolean isAborted() {
+        return closed;
+    }
+}
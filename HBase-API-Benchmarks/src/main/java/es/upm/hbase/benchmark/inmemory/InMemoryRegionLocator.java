@@ -0,0 +1,53 @@
+package es.upm.hbase.benchmark.inmemory;
+
+import org.apache.hadoop.hbase.HRegionLocation;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.RegionInfoBuilder;
+import org.apache.hadoop.hbase.client.RegionLocator;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Every in-memory table is a single region hosted by a fake local server.
+ */
+class InMemoryRegionLocator implements RegionLocator {
+    static final ServerName SERVER = ServerName.valueOf("localhost", 16020, 1L);
+
+    private final TableName name;
+    private final HRegionLocation location;
+
+    InMemoryRegionLocator(TableName name) {
+        this.name = name;
+        this.location = new HRegionLocation(RegionInfoBuilder.newBuilder(name).build(), SERVER);
+    }
+
+    @Override
+    public HRegionLocation getRegionLocation(byte[] row, int replicaId, boolean reload) {
+        return location;
+    }
+
+    @Override
+    public List<HRegionLocation> getRegionLocations(byte[] row, boolean reload) {
+        return Collections.singletonList(location);
+    }
+
+    @Override
+    public void clearRegionLocationCache() {
+    }
+
+    @Override
+    public List<HRegionLocation> getAllRegionLocations() {
+        return Collections.singletonList(location);
+    }
+
+    @Override
+    public TableName getName() {
+        return name;
+    }
+
+    @Override
+    public void close() {
+    }
+}
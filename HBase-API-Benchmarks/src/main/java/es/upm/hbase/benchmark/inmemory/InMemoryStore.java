@@ -0,0 +1,213 @@
+package es.upm.hbase.benchmark.inmemory;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Contents of one in-memory table: row, family, qualifier and timestamp sorted like in a region,
+ * keeping at most maxVersions versions per column.
+ */
+class InMemoryStore {
+    private final ConcurrentSkipListMap<byte[], Row> rows = new ConcurrentSkipListMap<>(Bytes.BYTES_COMPARATOR);
+    private final int maxVersions;
+
+    InMemoryStore(int maxVersions) {
+        this.maxVersions = maxVersions;
+    }
+
+    void put(Put put) {
+        long now = System.currentTimeMillis();
+        Row row = rows.computeIfAbsent(put.getRow(), r -> new Row());
+        for (List<Cell> cells : put.getFamilyCellMap().values()) {
+            for (Cell cell : cells) {
+                long ts = cell.getTimestamp() == HConstants.LATEST_TIMESTAMP ? now : cell.getTimestamp();
+                Versions versions = row
+                        .computeIfAbsent(CellUtil.cloneFamily(cell), f -> new Family())
+                        .computeIfAbsent(CellUtil.cloneQualifier(cell), q -> new Versions());
+                versions.put(ts, CellUtil.cloneValue(cell));
+                while (versions.size() > maxVersions) {
+                    versions.pollLastEntry();
+                }
+            }
+        }
+    }
+
+    void delete(Delete delete) {
+        if (delete.getFamilyCellMap().isEmpty()) {
+            rows.remove(delete.getRow());
+            return;
+        }
+        Row row = rows.get(delete.getRow());
+        if (row == null) {
+            return;
+        }
+        for (List<Cell> cells : delete.getFamilyCellMap().values()) {
+            for (Cell cell : cells) {
+                if (cell.getQualifierLength() == 0) {
+                    row.remove(CellUtil.cloneFamily(cell));
+                } else {
+                    Family family = row.get(CellUtil.cloneFamily(cell));
+                    if (family != null) {
+                        family.remove(CellUtil.cloneQualifier(cell));
+                    }
+                }
+            }
+        }
+    }
+
+    Result get(Get get) throws IOException {
+        Row row = rows.get(get.getRow());
+        if (row == null) {
+            return Result.EMPTY_RESULT;
+        }
+        List<Cell> cells = select(get.getRow(), row, get.getFamilyMap(), get.getMaxVersions());
+        if (get.getFilter() != null) {
+            cells = filter(get.getFilter(), cells);
+        }
+        return cells == null ? Result.EMPTY_RESULT : Result.create(cells);
+    }
+
+    /**
+     * Rows of the scan range, projected, versioned and filtered, in key order.
+     */
+    Iterator<Result> scan(Scan scan) {
+        ConcurrentNavigableMap<byte[], Row> range =
+                rows.tailMap(scan.getStartRow(), scan.includeStartRow());
+        if (scan.getStopRow().length > 0) {
+            range = range.headMap(scan.getStopRow(), scan.includeStopRow());
+        }
+        Iterator<Map.Entry<byte[], Row>> entries =
+                range.entrySet().iterator();
+        return new Iterator<Result>() {
+            private Result next = advance();
+
+            private Result advance() {
+                try {
+                    while (entries.hasNext()) {
+                        Map.Entry<byte[], Row> entry = entries.next();
+                        List<Cell> cells = select(entry.getKey(), entry.getValue(), scan.getFamilyMap(), scan.getMaxVersions());
+                        if (scan.getFilter() != null) {
+                            if (scan.getFilter().filterAllRemaining()) {
+                                return null;
+                            }
+                            cells = filter(scan.getFilter(), cells);
+                        }
+                        if (cells != null && !cells.isEmpty()) {
+                            return Result.create(cells);
+                        }
+                    }
+                    return null;
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Result next() {
+                Result current = next;
+                next = advance();
+                return current;
+            }
+        };
+    }
+
+    private static List<Cell> select(byte[] rowKey,
+                                     Row row,
+                                     Map<byte[], NavigableSet<byte[]>> projection, int maxVersions) {
+        List<Cell> cells = new ArrayList<>();
+        for (Map.Entry<byte[], Family> family : row.entrySet()) {
+            NavigableSet<byte[]> qualifiers = null;
+            if (!projection.isEmpty()) {
+                if (!projection.containsKey(family.getKey())) {
+                    continue;
+                }
+                qualifiers = projection.get(family.getKey());
+            }
+            for (Map.Entry<byte[], Versions> column : family.getValue().entrySet()) {
+                if (qualifiers != null && !qualifiers.isEmpty() && !qualifiers.contains(column.getKey())) {
+                    continue;
+                }
+                int versions = 0;
+                for (Map.Entry<Long, byte[]> version : column.getValue().entrySet()) {
+                    if (versions++ == maxVersions) {
+                        break;
+                    }
+                    cells.add(new KeyValue(rowKey, family.getKey(), column.getKey(), version.getKey(),
+                            KeyValue.Type.Put, version.getValue()));
+                }
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * Applies the filter the way a region scanner does for a single row, null if the row is filtered.
+     */
+    private static List<Cell> filter(Filter filter, List<Cell> cells) throws IOException {
+        filter.reset();
+        if (cells.isEmpty() || filter.filterRowKey(cells.get(0))) {
+            return null;
+        }
+        List<Cell> kept = new ArrayList<>(cells.size());
+        for (Cell cell : cells) {
+            Filter.ReturnCode code = filter.filterCell(cell);
+            if (code == Filter.ReturnCode.INCLUDE || code == Filter.ReturnCode.INCLUDE_AND_NEXT_COL
+                    || code == Filter.ReturnCode.INCLUDE_AND_SEEK_NEXT_ROW) {
+                kept.add(filter.transformCell(cell));
+            }
+            if (code == Filter.ReturnCode.NEXT_ROW || code == Filter.ReturnCode.INCLUDE_AND_SEEK_NEXT_ROW) {
+                break;
+            }
+        }
+        filter.filterRowCells(kept);
+        if (filter.hasFilterRow() && filter.filterRow()) {
+            return null;
+        }
+        return kept;
+    }
+
+    private static class Row extends ConcurrentSkipListMap<byte[], Family> {
+        Row() {
+            super(Bytes.BYTES_COMPARATOR);
+        }
+    }
+
+    private static class Family extends ConcurrentSkipListMap<byte[], Versions> {
+        Family() {
+            super(Bytes.BYTES_COMPARATOR);
+        }
+    }
+
+    /**
+     * Values of a column by timestamp, newest first.
+     */
+    private static class Versions extends ConcurrentSkipListMap<Long, byte[]> {
+        Versions() {
+            super(Collections.reverseOrder());
+        }
+    }
+}
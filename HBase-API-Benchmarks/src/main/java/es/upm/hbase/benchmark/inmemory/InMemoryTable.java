@@ -0,0 +1,223 @@
+package es.upm.hbase.benchmark.inmemory;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.AbstractClientScanner;
+import org.apache.hadoop.hbase.client.Consistency;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.RegionLocator;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Row;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.client.TableDescriptor;
+import org.apache.hadoop.hbase.client.TableDescriptorBuilder;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * {@link Table} backed by an {@link InMemoryStore}, with no RPCs involved; reads account for the
+ * RPCs they would take through {@link InMemoryConnection}.
+ *
+ * Scanners return their rows in round trips of up to caching rows and maxResultSize bytes, and
+ * split rows in parts of batch cells like a RegionServer does. The results of the reads answered
+ * by a secondary replica are flagged as stale; a multi-get or batch only falls back to the
+ * secondaries when all its actions are TIMELINE gets.
+ */
+class InMemoryTable implements Table {
+    private final InMemoryConnection connection;
+    private final TableName name;
+    private final InMemoryStore store;
+
+    InMemoryTable(InMemoryConnection connection, TableName name, InMemoryStore store) {
+        this.connection = connection;
+        this.name = name;
+        this.store = store;
+    }
+
+    @Override
+    public TableName getName() {
+        return name;
+    }
+
+    @Override
+    public Configuration getConfiguration() {
+        return connection.getConfiguration();
+    }
+
+    @Override
+    public TableDescriptor getDescriptor() {
+        return TableDescriptorBuilder.newBuilder(name).build();
+    }
+
+    @Override
+    public RegionLocator getRegionLocator() {
+        return connection.getRegionLocator(name);
+    }
+
+    @Override
+    public boolean exists(Get get) throws IOException {
+        return !store.get(get).isEmpty();
+    }
+
+    @Override
+    public Result get(Get get) throws IOException {
+        Result result = store.get(get);
+        return connection.rpc(sizeOf(result), get.getConsistency()) ? stale(result) : result;
+    }
+
+    @Override
+    public Result[] get(List<Get> gets) throws IOException {
+        Result[] results = new Result[gets.size()];
+        long bytes = 0;
+        for (int i = 0; i < results.length; i++) {
+            results[i] = store.get(gets.get(i));
+            bytes += sizeOf(results[i]);
+        }
+        if (connection.rpc(bytes, consistency(gets))) {
+            for (int i = 0; i < results.length; i++) {
+                results[i] = stale(results[i]);
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public void put(Put put) {
+        store.put(put);
+    }
+
+    @Override
+    public void put(List<Put> puts) {
+        for (Put put : puts) {
+            store.put(put);
+        }
+    }
+
+    @Override
+    public void delete(Delete delete) {
+        store.delete(delete);
+    }
+
+    @Override
+    public void delete(List<Delete> deletes) {
+        for (Delete delete : deletes) {
+            store.delete(delete);
+        }
+        deletes.clear();
+    }
+
+    @Override
+    public void batch(List<? extends Row> actions, Object[] results) throws IOException {
+        long bytes = 0;
+        for (int i = 0; i < actions.size(); i++) {
+            Row action = actions.get(i);
+            if (action instanceof Put) {
+                store.put((Put) action);
+                results[i] = Result.EMPTY_RESULT;
+            } else if (action instanceof Delete) {
+                store.delete((Delete) action);
+                results[i] = Result.EMPTY_RESULT;
+            } else if (action instanceof Get) {
+                Result result = store.get((Get) action);
+                bytes += sizeOf(result);
+                results[i] = result;
+            } else {
+                throw new UnsupportedOperationException("Unsupported action " + action);
+            }
+        }
+        if (connection.rpc(bytes, consistency(actions))) {
+            for (int i = 0; i < results.length; i++) {
+                results[i] = stale((Result) results[i]);
+            }
+        }
+    }
+
+    @Override
+    public ResultScanner getScanner(Scan scan) {
+        Iterator<Result> rows = store.scan(scan);
+        int caching = scan.getCaching() > 0 ? scan.getCaching()
+                : getConfiguration().getInt(HConstants.HBASE_CLIENT_SCANNER_CACHING, HConstants.DEFAULT_HBASE_CLIENT_SCANNER_CACHING);
+        long maxResultSize = scan.getMaxResultSize() > 0 ? scan.getMaxResultSize()
+                : getConfiguration().getLong(HConstants.HBASE_CLIENT_SCANNER_MAX_RESULT_SIZE_KEY,
+                HConstants.DEFAULT_HBASE_CLIENT_SCANNER_MAX_RESULT_SIZE);
+        ArrayDeque<Result> page = new ArrayDeque<>();
+        return new AbstractClientScanner() {
+            @Override
+            public Result next() {
+                if (page.isEmpty() && rows.hasNext()) {
+                    List<Result> read = new ArrayList<>();
+                    long bytes = 0;
+                    while (rows.hasNext() && read.size() < caching && bytes < maxResultSize) {
+                        Result row = rows.next();
+                        bytes += sizeOf(row);
+                        read.add(row);
+                    }
+                    boolean stale = connection.rpc(bytes, scan.getConsistency());
+                    for (Result row : read) {
+                        split(row, scan.getBatch(), stale, page);
+                    }
+                }
+                return page.poll();
+            }
+
+            @Override
+            public void close() {
+            }
+
+            @Override
+            public boolean renewLease() {
+                return true;
+            }
+        };
+    }
+
+    @Override
+    public void close() {
+    }
+
+    // Parts of up to batch cells of the row, all of them but the last flagged as partial
+    private static void split(Result row, int batch, boolean stale, ArrayDeque<Result> parts) {
+        Cell[] cells = row.rawCells();
+        if (batch <= 0 || cells.length <= batch) {
+            parts.add(stale ? stale(row) : row);
+            return;
+        }
+        for (int from = 0; from < cells.length; from += batch) {
+            int to = Math.min(cells.length, from + batch);
+            parts.add(Result.create(Arrays.asList(cells).subList(from, to), null, stale, to < cells.length));
+        }
+    }
+
+    private static Result stale(Result result) {
+        return Result.create(result.rawCells(), result.getExists(), true);
+    }
+
+    // TIMELINE when every action is a timeline get, the only reads that may go to the secondaries
+    private static Consistency consistency(List<? extends Row> actions) {
+        for (Row action : actions) {
+            if (!(action instanceof Get) || ((Get) action).getConsistency() != Consistency.TIMELINE) {
+                return Consistency.STRONG;
+            }
+        }
+        return Consistency.TIMELINE;
+    }
+
+    private static long sizeOf(Result result) {
+        long size = 0;
+        for (Cell cell : result.rawCells()) {
+            size += cell.getSerializedSize();
+        }
+        return size;
+    }
+}
@@ -1,14 +1,47 @@
+import es.upm.hbase.UsersSchema;
+import es.upm.hbase.aggregate.ProvinceAggregator;
+import es.upm.hbase.aggregate.ProvinceStats;
+import es.upm.hbase.balance.RebalancePlanner;
+import es.upm.hbase.cache.RowCache;
+import es.upm.hbase.changes.ChangeCapture;
+import es.upm.hbase.changes.ChangeLogWriter;
+import es.upm.hbase.codec.CodecMigration;
+import es.upm.hbase.codec.UserCodec;
+import es.upm.hbase.connection.ConnectionManager;
+import es.upm.hbase.export.TableExporter;
+import es.upm.hbase.index.ProvinceIndex;
+import es.upm.hbase.key.KeyedTable;
+import es.upm.hbase.key.KeyRange;
+import es.upm.hbase.key.RowKeyStrategy;
+import es.upm.hbase.load.BufferedLoader;
+import es.upm.hbase.load.RegionAlignedLoader;
+import es.upm.hbase.load.UserDataGenerator;
+import es.upm.hbase.load.UserRowGenerator;
+import es.upm.hbase.lookup.AsyncLookupPipeline;
+import es.upm.hbase.metrics.MetricsReporter;
+import es.upm.hbase.metrics.Operation;
+import es.upm.hbase.region.CompactionOrchestrator;
+import es.upm.hbase.region.SplitAdvisor;
+import es.upm.hbase.replica.TimelineReads;
+import es.upm.hbase.scan.ParallelScanner;
+import es.upm.hbase.scan.RowSink;
+import es.upm.hbase.scan.ScanProfile;
+import es.upm.hbase.workload.Workload;
+import es.upm.hbase.workload.WorkloadDriver;
+import org.HdrHistogram.Histogram;
 import org.apache.hadoop.hbase.*;
 import org.apache.hadoop.hbase.client.*;
-import org.apache.hadoop.hbase.filter.CompareFilter;
-import org.apache.hadoop.hbase.filter.Filter;
-import org.apache.hadoop.hbase.filter.SingleColumnValueFilter;
+import org.apache.hadoop.hbase.client.metrics.ScanMetrics;
 import org.apache.hadoop.hbase.util.Bytes;
 import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
 
+import java.io.BufferedReader;
 import java.io.IOException;
-import java.text.SimpleDateFormat;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -21,97 +54,174 @@ import java.util.concurrent.TimeoutException;
  * @date 16/11/24
  **/
 public class Main {
-    private Connection connection;
-    private Admin admin;
+    private final ConnectionManager manager;
+    private final ProvinceIndex index;
+    // Read-through cache of the get options, null when disabled
+    private RowCache cache;
+    // Row key layout of new tables and users, the original one is the name
+    private RowKeyStrategy keys = RowKeyStrategy.NAME;
+    // Random users of the put and load options, rebuilt when the keys change
+    private UserDataGenerator generator = new UserDataGenerator(keys);
     private TableName table = TableName.valueOf("Users");
-    private static final String[] NAMES = {"Juan", "Luis", "Carlos", "Ana", "María", "Pedro", "Sofía", "Carmen", "Javier", "Laura"};
-    private static final String[] PROVINCES = {"Madrid", "Barcelona", "Valencia", "Sevilla", "Zaragoza", "Málaga", "Murcia", "Palma", "Bilbao", "Valladolid"};
+    // Scans only need the province column, or the packed cell holding it
+    private final ScanProfile scanProfile = new ScanProfile().addColumn(UsersSchema.FAMILY, UsersSchema.PROVINCE)
+            .addColumn(UsersSchema.FAMILY, UserCodec.PACKED_QUALIFIER);
+    // Writes the connection metrics to a file periodically, null when stopped
+    private MetricsReporter reporter;
+    // Replicas of every region of new tables, 1 for none
+    private int regionReplicas = 1;
+    // Timeline-consistent get options, null for strong reads from the primary
+    private TimelineReads timeline;
+
+    public Main(ConnectionManager manager) {
+        this.manager = manager;
+        this.index = new ProvinceIndex(manager);
+    }
 
     private void createTable() throws IOException {
         long start = System.currentTimeMillis();
-        connection = ConnectionFactory.createConnection();
-        admin = connection.getAdmin();
+        Admin admin = manager.getAdmin();
         HColumnDescriptor family = new HColumnDescriptor(Bytes.toBytes("BasicData"));
         family.setMaxVersions(10); // Default is 3.
 
-        admin.createTable(new HTableDescriptor(table).addFamily(family));
-        admin.close();
-        connection.close();
+        // The value format and row keys of the generator are recorded for the next sessions
+        HTableDescriptor descriptor = new HTableDescriptor(table).addFamily(family);
+        descriptor.setValue(UserCodec.FORMAT_KEY, generator.getCodec().getFormat().name());
+        descriptor.setValue(RowKeyStrategy.KEYS_KEY, keys.getSpec());
+        if (regionReplicas > 1) {
+            descriptor.setRegionReplication(regionReplicas);
+        }
+
+        byte[][] splits = keys.splitKeys();
+        timed(Operation.ADMIN, () -> {
+            if (splits.length > 0) {
+                admin.createTable(descriptor, splits);
+            } else {
+                admin.createTable(descriptor);
+            }
+            return null;
+        });
+        manager.refresh(table);
+        if (timeline != null) {
+            timeline.warmUp(table);
+        }
         long finish = System.currentTimeMillis();
         long timeElapsed = finish - start;
         System.out.println("Time elapsed: "+timeElapsed+"ms.");
     }
 
     private void deleteTable() throws IOException {
-        connection = ConnectionFactory.createConnection();
-        admin = connection.getAdmin();
-        admin.disableTable(table);
-        admin.deleteTable(table);
-        admin.close();
-        connection.close();
+        Admin admin = manager.getAdmin();
+        timed(Operation.ADMIN, () -> {
+            admin.disableTable(table);
+            admin.deleteTable(table);
+            return null;
+        });
+        index.dropIndexTable();
+        manager.refresh(table);
         System.out.println("Table removed");
     }
 
     private void put(int numberUsers) throws IOException {
         long start = System.currentTimeMillis();
-        connection = ConnectionFactory.createConnection();
-        Table t = connection.getTable(table);
+        UserDataGenerator.Source source = generator.newSource();
         for (int i = 1; i <= numberUsers; i++) {
-            // Generate random data for each user
-            String name = getRandom(NAMES);
-            String province = getRandom(PROVINCES);
-            String lastLogin = generateRandomDate();
-
-            byte[] key = Bytes.toBytes(name);
-            Put put = new Put(key);
-
-            // Insert data in 'UserInfo' family
-            put.addColumn(Bytes.toBytes("BasicData"), Bytes.toBytes("name"), Bytes.toBytes(name));
-            put.addColumn(Bytes.toBytes("BasicData"), Bytes.toBytes("province"), Bytes.toBytes(province));
-            put.addColumn(Bytes.toBytes("BasicData"), Bytes.toBytes("lastLogin"), Bytes.toBytes(lastLogin));
-
-            // Insert row in table
-            t.put(put);
+            // Generate random data for each user, in the 'BasicData' family
+            Put put = source.next(HConstants.LATEST_TIMESTAMP);
+            byte[] key = put.getRow();
+            String name = Bytes.toString(UserCodec.value(put, UsersSchema.NAME));
+            String province = Bytes.toString(UserCodec.value(put, UsersSchema.PROVINCE));
+            String lastLogin = Bytes.toString(UserCodec.value(put, UsersSchema.LAST_LOGIN));
+
+            // Insert row in table, together with its index entry when the index exists
+            timed(Operation.PUT, 1, UserRowGenerator.payloadSize(put), () -> {
+                index.put(put);
+                return null;
+            });
+            if (cache != null) {
+                cache.invalidate(key);
+            }
 
             // Print user
             System.out.println("User: name " + name + " province " + province + " lastLogin " + lastLogin);
         }
-        t.close();
-        connection.close();
         long finish = System.currentTimeMillis();
         long timeElapsed = finish - start;
         System.out.println("Time elapsed: "+timeElapsed+"ms.");
     }
 
-    // Auxiliary method to get a random element from an array
-    private static String getRandom(String[] array) {
-        Random random = new Random();
-        return array[random.nextInt(array.length)];
+    private void bulkPut(long numberUsers, int producers, int bufferMb) throws IOException, InterruptedException {
+        BufferedLoader loader = new BufferedLoader(manager, table, producers, bufferMb * 1024L * 1024L, 1000, 10000);
+        loader.setGenerator(generator).load(numberUsers);
+        if (cache != null) {
+            cache.clear();
+        }
     }
 
-    // Method to generate a random date between 2010 and 2023
-    private static String generateRandomDate() {
-        Random random = new Random();
-        int year = 2010 + random.nextInt(14); // Entre 2010 y 2023
-        int month = 1 + random.nextInt(12);   // Entre 1 y 12
-        int day = 1 + random.nextInt(28);     // Entre 1 y 28 para simplificar
+    private void initialLoad(int numberUsers, boolean skipWal) throws IOException, InterruptedException {
+        RegionAlignedLoader loader = new RegionAlignedLoader(manager, table);
+        loader.setGenerator(generator).setDurability(skipWal ? Durability.SKIP_WAL : Durability.USE_DEFAULT)
+                .load(numberUsers);
+        if (cache != null) {
+            cache.clear();
+        }
+    }
 
-        SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd");
-        return sdf.format(new Date(year - 1900, month - 1, day));
+    private void batchGet(String file, int batchSize, int inFlight, boolean ordered) throws IOException, InterruptedException {
+        long[] found = new long[3];
+        AsyncLookupPipeline.ResultSink sink = (name, result) -> {
+            found[result.isEmpty() ? 1 : 0]++;
+            if (result.isStale()) {
+                found[2]++;
+            }
+        };
+        Consistency consistency = timeline != null ? Consistency.TIMELINE : Consistency.STRONG;
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+            Iterator<String> names = reader.lines().map(String::trim).filter(line -> !line.isEmpty()).iterator();
+            if (batchSize <= 0) {
+                new AsyncLookupPipeline(null, table, 1, 1, true).setConsistency(consistency).setKeys(keys)
+                        .setMetrics(manager.getMetrics().get(Operation.GET)).runBlocking(readTable(), names, sink);
+            } else {
+                AsyncConnection connection = timeline != null ? timeline.getAsyncConnection() : manager.getAsyncConnection();
+                new AsyncLookupPipeline(connection, table, batchSize, inFlight, ordered).setConsistency(consistency).setKeys(keys)
+                        .setMetrics(manager.getMetrics().get(Operation.GET)).run(names, sink);
+            }
+        }
+        System.out.println("Users found: "+found[0]+" not found: "+found[1]+" stale: "+found[2]);
     }
 
     private void delete(String name) throws IOException {
         long start = System.currentTimeMillis();
-        connection = ConnectionFactory.createConnection();
-        Table t = connection.getTable(table);
 
         byte[] key = Bytes.toBytes(name);
 
-        Delete delete = new Delete(key);
-        t.delete(delete);
+        if (!keys.isUnique() && !index.isEnabled()) {
+            // The row is the name and there is no index entry to find, nothing to read
+            timed(Operation.DELETE, 1, 0, () -> {
+                index.delete(key);
+                return null;
+            });
+            if (cache != null) {
+                cache.invalidate(key);
+            }
+        } else {
+            // With unique keys every user with the name has its own row, read once with its province
+            Get get = UserCodec.addColumns(new Get(key), UsersSchema.PROVINCE);
+            List<Result> users = timedRows(Operation.GET, () -> new KeyedTable(manager.getTable(table), keys).getUsers(key, get));
+            for (Result user : users) {
+                byte[] row = keys.isUnique() ? user.getRow() : key;
+                byte[] province = UserCodec.value(user, UsersSchema.PROVINCE);
+                timed(Operation.DELETE, 1, 0, () -> {
+                    index.delete(row, province);
+                    return null;
+                });
+                if (cache != null) {
+                    cache.invalidate(row);
+                }
+            }
+        }
 
         System.out.println("Deleted user: "+name);
-        connection.close();
         long finish = System.currentTimeMillis();
         long timeElapsed = finish - start;
         System.out.println("Time elapsed: "+timeElapsed+"ms.");
@@ -119,19 +229,16 @@ public class Main {
 
     private void get(String name) throws IOException {
         long start = System.currentTimeMillis();
-        connection = ConnectionFactory.createConnection();
-        byte[] cf = Bytes.toBytes("BasicData");
         byte[] column = Bytes.toBytes("province");
-        Table t = connection.getTable(table);
+        Table t = readTable();
 
         byte[] key = Bytes.toBytes(name);
 
-        Get get = new Get(key);
-        Result result = t.get(get);
-
-        String province = Bytes.toString(result.getValue(cf, column));
-        System.out.println("User "+ name +" - Province: "+province);
-        connection.close();
+        Get get = readGet(key);
+        for (Result result : timedUserRows(t, key, get)) {
+            String province = UserCodec.get(result, column);
+            System.out.println("User "+ name +" - Province: "+province+stale(result));
+        }
         long finish = System.currentTimeMillis();
         long timeElapsed = finish - start;
         System.out.println("Time elapsed: "+timeElapsed+"ms.");
@@ -139,50 +246,211 @@ public class Main {
 
     private void getNVersionRow(String name) throws IOException {
         long start = System.currentTimeMillis();
-        connection = ConnectionFactory.createConnection();
-        byte[] cf = Bytes.toBytes("BasicData");
         byte[] column1 = Bytes.toBytes("province");
         byte[] column2 = Bytes.toBytes("lastLogin");
 
-        Table t = connection.getTable(table);
+        Table t = readTable();
 
         byte[] key = Bytes.toBytes(name);
 
-        Get get = new Get(key);
+        Get get = readGet(key);
         get.setMaxVersions(5);
-        Result result = t.get(get);
-
-        List<Cell> valuesColumn1 = result.getColumnCells(cf,column1);
-        List<Cell> valuesColumn2 = result.getColumnCells(cf,column2);
 
         System.out.println("Obtaining all system access for user "+ name+" ...");
-        for ( int i = 0; i < valuesColumn1.size(); i++){
-            String province = Bytes.toString(CellUtil.cloneValue(valuesColumn1.get(i)));
-            String lastLogin = Bytes.toString(CellUtil.cloneValue(valuesColumn2.get(i)));
-            System.out.println( "User "+name+" - Province: "+province+ " Last_Login: " +lastLogin);
+        for (Result result : timedRows(Operation.GET, () -> new KeyedTable(t, keys).getUsers(key, get))) {
+            for (String[] version : UserCodec.versions(result, column1, column2)) {
+                String province = version[0];
+                String lastLogin = version[1];
+                System.out.println( "User "+name+" - Province: "+province+ " Last_Login: " +lastLogin+stale(result));
+            }
         }
-        connection.close();
         long finish = System.currentTimeMillis();
         long timeElapsed = finish - start;
         System.out.println("Time elapsed: "+timeElapsed+"ms.");
     }
 
+    private Result cachedGet(Table t, Get get) throws IOException {
+        return cache != null ? cache.get(t, get) : t.get(get);
+    }
+
+    // Rows of the users with the name: the cached get with name keys, a fan-out scan otherwise
+    private List<Result> userRows(Table t, byte[] name, Get get) throws IOException {
+        if (!keys.isUnique()) {
+            return Collections.singletonList(cachedGet(t, get));
+        }
+        return new KeyedTable(t, keys).getUsers(name, get);
+    }
+
+    private List<Result> timedUserRows(Table t, byte[] name, Get get) throws IOException {
+        return timedRows(Operation.GET, () -> userRows(t, name, get));
+    }
+
+    // Table of the get and scan options, through the timeline connection when timeline reads are on
+    private Table readTable() throws IOException {
+        return timeline != null ? timeline.getTable(table) : manager.getTable(table);
+    }
+
+    private Get readGet(byte[] key) {
+        Get get = new Get(key);
+        return timeline != null ? TimelineReads.timeline(get) : get;
+    }
+
+    private static String stale(Result result) {
+        return result.isStale() ? " (stale, from a replica)" : "";
+    }
+
+    // A call timed into the metrics of the connection
+    private interface TimedCall<T, E extends Exception> {
+        T call() throws IOException, E;
+    }
+
+    // Records a call that succeeded, with the value it returned
+    private interface Recorder<T> {
+        void record(long startNs, T value);
+    }
+
+    // Runs the call into the metrics of the operation, with no rows or bytes of its own
+    private <T, E extends Exception> T timed(Operation operation, TimedCall<T, E> body) throws IOException, E {
+        return timed(operation, 0, 0, body);
+    }
+
+    private <T, E extends Exception> T timed(Operation operation, long rows, long bytes, TimedCall<T, E> body)
+            throws IOException, E {
+        return timed(operation, body, (startNs, value) -> record(operation, startNs, rows, bytes));
+    }
+
+    // Runs a read of rows into the metrics of the operation, counting the rows it returns
+    private <E extends Exception> List<Result> timedRows(Operation operation, TimedCall<List<Result>, E> body)
+            throws IOException, E {
+        return timed(operation, body, (startNs, rows) -> record(operation, startNs, rows));
+    }
+
+    // Records the time of the call once it returns, or counts its failure and rethrows it
+    private <T, E extends Exception> T timed(Operation operation, TimedCall<T, E> body, Recorder<T> recorder)
+            throws IOException, E {
+        long startNs = System.nanoTime();
+        T value;
+        try {
+            value = body.call();
+        } catch (Exception e) {
+            manager.getMetrics().get(operation).error(e);
+            throw e;
+        }
+        recorder.record(startNs, value);
+        return value;
+    }
+
+    // Records a call that took from startNs until now in the metrics of the connection
+    private void record(Operation operation, long startNs, long rows, long bytes) {
+        manager.getMetrics().get(operation).record(startNs, rows, bytes);
+    }
+
+    private void record(Operation operation, long startNs, List<Result> rows) {
+        long bytes = 0;
+        for (Result row : rows) {
+            bytes += ParallelScanner.sizeOf(row);
+        }
+        record(operation, startNs, rows.size(), bytes);
+        if (timeline != null) {
+            timeline.count(operation, rows);
+        }
+    }
+
+    private void configureGenerator(long seed, int names, int provinces, double skew) {
+        generator = new UserDataGenerator(seed, names, provinces, skew, keys, generator.getCodec());
+        System.out.println("Generator: "+generator);
+    }
+
+    private void configureKeys(String strategy, int regions) {
+        keys = RowKeyStrategy.forName(strategy, regions);
+        generator = generator.withKeys(keys);
+        System.out.println("Row keys: "+keys+". Recreate the table (options 14 and 1) to apply the new layout.");
+    }
+
+    // The format and row keys of the table when it has them, so that users are written and read like the existing ones
+    private void loadTableLayout() throws IOException {
+        keys = RowKeyStrategy.forTable(manager.getAdmin(), table);
+        generator = generator.withKeys(keys).withCodec(UserCodec.forTable(manager.getAdmin(), table));
+    }
+
+    private void migrateValues(String format) throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        UserCodec codec = UserCodec.of(UserCodec.Format.valueOf(format.toUpperCase()));
+        timed(Operation.ADMIN, () -> {
+            new CodecMigration(manager, table).migrate(codec);
+            return null;
+        });
+        generator = generator.withCodec(codec);
+        if (cache != null) {
+            cache.clear();
+        }
+        long finish = System.currentTimeMillis();
+        long timeElapsed = finish - start;
+        System.out.println("Time elapsed: "+timeElapsed+"ms.");
+    }
+
+    private void valueReport() throws IOException, InterruptedException {
+        System.out.println("Value format: "+UserCodec.forTable(manager.getAdmin(), table));
+        System.out.println(new CodecMigration(manager, table).measure());
+    }
+
+    private void configureCache(int maxEntries, int maxMb, int ttlSeconds) {
+        if (maxEntries <= 0) {
+            cache = null;
+            System.out.println("Cache disabled");
+            return;
+        }
+        cache = new RowCache(maxEntries, maxMb * 1024L * 1024L, ttlSeconds, TimeUnit.SECONDS);
+        System.out.println("Cache enabled: "+cache);
+    }
+
+    // Runs the same gets without and with the cache to compare their latency
+    private void compareCache(String name, int iterations) throws IOException {
+        if (cache == null) {
+            System.out.println("Enable the cache first");
+            return;
+        }
+        Table t = manager.getTable(table);
+        // The row of the first user with the name, found through the row keys like option 4
+        byte[] key = Bytes.toBytes(name);
+        List<Result> users = new KeyedTable(t, keys).getUsers(key, UserCodec.addColumns(new Get(key), UsersSchema.PROVINCE));
+        if (users.isEmpty() || users.get(0).isEmpty()) {
+            System.out.println("User "+name+" not found");
+            return;
+        }
+        Get get = new Get(users.get(0).getRow());
+        Histogram direct = new Histogram(3);
+        Histogram cached = new Histogram(3);
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            t.get(get);
+            direct.recordValue(System.nanoTime() - start);
+        }
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            cache.get(t, get);
+            cached.recordValue(System.nanoTime() - start);
+        }
+        System.out.println(String.format("Without cache: mean %.3fms p50 %.3fms p99 %.3fms", direct.getMean() / 1e6,
+                direct.getValueAtPercentile(50) / 1e6, direct.getValueAtPercentile(99) / 1e6));
+        System.out.println(String.format("With cache:    mean %.3fms p50 %.3fms p99 %.3fms", cached.getMean() / 1e6,
+                cached.getValueAtPercentile(50) / 1e6, cached.getValueAtPercentile(99) / 1e6));
+        System.out.println(cache);
+    }
+
     private void getSpecificColumn(String name) throws IOException {
         long start = System.currentTimeMillis();
-        connection = ConnectionFactory.createConnection();
-        byte[] cf = Bytes.toBytes("BasicData");
         byte[] column = Bytes.toBytes("lastLogin");
-        Table t = connection.getTable(table);
+        Table t = readTable();
 
         byte[] key = Bytes.toBytes(name);
 
-        Get get = new Get(key);
-        get.addColumn(cf,column);
-        Result result = t.get(get);
-
-        String lastLogin = Bytes.toString(result.getValue(cf, column));
-        System.out.println("User "+name+" - Last_Login: "+lastLogin);
-        connection.close();
+        Get get = readGet(key);
+        UserCodec.addColumns(get, column);
+        for (Result result : timedUserRows(t, key, get)) {
+            String lastLogin = UserCodec.get(result, column);
+            System.out.println("User "+name+" - Last_Login: "+lastLogin+stale(result));
+        }
         long finish = System.currentTimeMillis();
         long timeElapsed = finish - start;
         System.out.println("Time elapsed: "+timeElapsed+"ms.");
@@ -191,22 +459,12 @@ public class Main {
 
     private void scan() throws IOException {
         long start = System.currentTimeMillis();
-        connection = ConnectionFactory.createConnection();
         byte[] cf = Bytes.toBytes("BasicData");
         byte[] column = Bytes.toBytes("province");
-        Table t = connection.getTable(table);
+        Table t = readTable();
 
         Scan scan = new Scan();
-        ResultScanner rs = t.getScanner(scan);
-
-        Result result = rs.next();
-        while (result!=null && !result.isEmpty()){
-            String key = Bytes.toString(result.getRow());
-            String province = Bytes.toString(result.getValue(cf,column));
-            System.out.println("Key: "+key+" Province: "+province);
-            result = rs.next();
-        }
-        connection.close();
+        writeScan(t, scan, cf, column);
         long finish = System.currentTimeMillis();
         long timeElapsed = finish - start;
         System.out.println("Time elapsed: "+timeElapsed+"ms.");
@@ -214,25 +472,15 @@ public class Main {
 
     private void rangeScan(String name1, String name2) throws IOException {
         long start = System.currentTimeMillis();
-        connection = ConnectionFactory.createConnection();
         byte[] cf = Bytes.toBytes("BasicData");
         byte[] column = Bytes.toBytes("province");
-        Table t = connection.getTable(table);
+        Table t = readTable();
 
         byte[] startKey = Bytes.toBytes(name1);
         byte[] endKey = Bytes.toBytes(name2);
 
         Scan scan = new Scan(startKey,endKey);
-        ResultScanner rs = t.getScanner(scan);
-
-        Result result = rs.next();
-        while (result!=null && !result.isEmpty()){
-            String key = Bytes.toString(result.getRow());
-            String province = Bytes.toString(result.getValue(cf,column));
-            System.out.println("Key: "+key+" Province: "+province);
-            result = rs.next();
-        }
-        connection.close();
+        writeScan(t, scan, cf, column);
         long finish = System.currentTimeMillis();
         long timeElapsed = finish - start;
         System.out.println("Time elapsed: "+timeElapsed+"ms.");
@@ -240,174 +488,257 @@ public class Main {
 
     private void filterScan(String province) throws IOException {
         long start = System.currentTimeMillis();
-        connection = ConnectionFactory.createConnection();
         byte[] cf = Bytes.toBytes("BasicData");
         byte[] column = Bytes.toBytes("province");
-        Table t = connection.getTable(table);
+        Table t = readTable();
 
         Scan scan = new Scan();
-        Filter f = new SingleColumnValueFilter(cf, column,   CompareFilter.CompareOp.EQUAL,Bytes.toBytes(province));
-        scan.setFilter(f);
-        ResultScanner rs = t.getScanner(scan);
-
-        Result result = rs.next();
-        while (result!=null && !result.isEmpty()){
-            String key = Bytes.toString(result.getRow());
-            province = Bytes.toString(result.getValue(cf,column));
-            System.out.println("Key: "+key+" Province: "+province);
-            result = rs.next();
-        }
-        connection.close();
+        // Matches the province whatever the encoding of the row
+        scan.setFilter(UserCodec.provinceFilter(Bytes.toBytes(province)));
+        if (scanProfile.getBatch() > 0 && ScanProfile.needsWholeRows(scan)) {
+            System.out.println("Batch of the scan profile ignored, the province filter needs whole rows");
+        }
+        writeScan(t, scan, cf, column);
         long finish = System.currentTimeMillis();
         long timeElapsed = finish - start;
         System.out.println("Time elapsed: "+timeElapsed+"ms.");
     }
 
-    private void split(String splitPoint) throws IOException, InterruptedException {
-        long start = System.currentTimeMillis();
-        connection = ConnectionFactory.createConnection();
-        admin = connection.getAdmin();
-        byte[] splitPoint1 = Bytes.toBytes(splitPoint);
+    // Applies the scan profile and writes every row to the configured output
+    private void writeScan(Table t, Scan scan, byte[] cf, byte[] column) throws IOException {
+        // Scan metrics always go to the connection metrics, they are printed when enabled
+        scanProfile.apply(scan).setScanMetricsEnabled(true);
+        if (timeline != null) {
+            TimelineReads.timeline(scan);
+        }
+        System.out.flush();
+        // Rows and bytes written, counted while the scan runs
+        long[] written = new long[2];
+        ScanMetrics metrics = timed(Operation.SCAN, () -> {
+            try (ResultScanner rs = new KeyedTable(t, keys).getScanner(scan);
+                 RowSink sink = scanProfile.newSink(cf, column, "Province")) {
+                Result result = rs.next();
+                while (result!=null && !result.isEmpty()){
+                    sink.accept(result);
+                    written[0]++;
+                    written[1] += ParallelScanner.sizeOf(result);
+                    if (timeline != null) {
+                        timeline.count(Operation.SCAN, result);
+                    }
+                    result = rs.next();
+                }
+                return rs.getScanMetrics();
+            }
+        }, (startNs, value) -> record(Operation.SCAN, startNs, written[0], written[1]));
+        manager.getMetrics().scanned(metrics);
+        if (scanProfile.isMetricsEnabled()) {
+            ScanProfile.printMetrics(metrics);
+        }
+    }
 
-        admin.split(table, splitPoint1);
-        waitOnlineNewRegionsAfterSplit(splitPoint1);
-        Thread.sleep(30000);
+    private void configureScanProfile(int caching, int batch, long maxResultSize, boolean metrics, String output) {
+        scanProfile.setCaching(caching)
+                .setBatch(batch)
+                .setMaxResultSize(maxResultSize)
+                .setMetricsEnabled(metrics)
+                .setOutput(ScanProfile.Output.valueOf(output.toUpperCase()));
+        System.out.println("Scan profile: "+scanProfile);
+    }
+
+    private void parallelScan(String name1, String name2, boolean ordered) throws IOException, InterruptedException {
+        byte[] column = Bytes.toBytes("province");
 
-        admin.close();
-        connection.close();
+        Scan scan = scanProfile.apply(new Scan());
+        if (!name1.equals("-")) {
+            scan.withStartRow(Bytes.toBytes(name1));
+        }
+        if (!name2.equals("-")) {
+            scan.withStopRow(Bytes.toBytes(name2));
+        }
+        ParallelScanner scanner = new ParallelScanner(manager, table);
+        // The regions of every bucket with prefixed keys in one run, rows are in key order within each bucket
+        List<KeyRange> ranges = keys.ranges(scan.getStartRow(), scan.getStopRow());
+        if (ordered) {
+            scanner.scan(scan, ranges, true, result -> {
+                String key = Bytes.toStringBinary(result.getRow());
+                String province = UserCodec.get(result, column);
+                System.out.println("Key: "+key+" Province: "+province);
+            });
+        } else {
+            Map<String, Long> provinces = new ConcurrentHashMap<>();
+            scanner.scan(scan, ranges, false,
+                    result -> provinces.merge(String.valueOf(UserCodec.get(result, column)), 1L, Long::sum));
+            for (Map.Entry<String, Long> entry : new TreeMap<>(provinces).entrySet()) {
+                System.out.println("Province: "+entry.getKey()+" Users: "+entry.getValue());
+            }
+        }
+    }
+
+    // Per-province counts, logins and names, folded while the regions are scanned in parallel
+    private void aggregate(String name1, String name2, String provinces) throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        byte[] startRow = name1.equals("-") ? HConstants.EMPTY_START_ROW : Bytes.toBytes(name1);
+        byte[] stopRow = name2.equals("-") ? HConstants.EMPTY_END_ROW : Bytes.toBytes(name2);
+        ProvinceAggregator aggregator = new ProvinceAggregator(manager, table);
+        if (!provinces.equals("-")) {
+            aggregator.setProvinces(provinces.split(","));
+        }
+        for (ProvinceStats stats : aggregator.aggregate(keys.ranges(startRow, stopRow)).values()) {
+            System.out.println(stats);
+        }
         long finish = System.currentTimeMillis();
         long timeElapsed = finish - start;
         System.out.println("Time elapsed: "+timeElapsed+"ms.");
     }
 
-    private void waitOnlineNewRegionsAfterSplit(byte[] startKey) throws IOException, InterruptedException {
+    private void buildIndex() throws IOException, InterruptedException {
         long start = System.currentTimeMillis();
-        connection = ConnectionFactory.createConnection();
-        admin = connection.getAdmin();
-        HRegionInfo newLeftSideRegion = null;
-        HRegionInfo newRightSideRegion = null;
-
-        int retry = 1;
-        do {
-            Thread.sleep(1000);
-
-            List<HRegionInfo> regions = admin.getTableRegions(table);
-            Iterator<HRegionInfo> iter = regions.iterator();
-
-            while (iter.hasNext() && (newLeftSideRegion == null || newRightSideRegion == null)) {
-                HRegionInfo rinfo = iter.next();
-                if (Arrays.equals(rinfo.getEndKey(), startKey)) {
-                    newLeftSideRegion = rinfo;
-                }
-                if (Arrays.equals(rinfo.getStartKey(), startKey)) {
-                    newRightSideRegion = rinfo;
-                }
-            }
-            retry++;
-        } while (newLeftSideRegion == null && newRightSideRegion == null && retry <= 50);
-
-        if (retry > 3){
-            throw new IOException("split failed, can't find regions with startKey and endKey = "+Bytes.toStringBinary(startKey));
-        }
-        admin.close();
-        connection.close();
+        index.rebuild();
         long finish = System.currentTimeMillis();
         long timeElapsed = finish - start;
         System.out.println("Time elapsed: "+timeElapsed+"ms.");
     }
 
-    private void move() throws IOException, InterruptedException {
+    private void indexScan(String province) throws IOException {
         long start = System.currentTimeMillis();
-        connection = ConnectionFactory.createConnection();
-        admin = connection.getAdmin();
-        ServerName[] servers = getServers();
-
-        int i = 0;
-        for(HRegionInfo hRegionInfo : admin.getTableRegions(table)){
-            String originalServer = getServerOfRegion(hRegionInfo).getHostAndPort();
-            ServerName finalServer = servers[i];
-
-            if(originalServer.compareTo(finalServer.getHostAndPort())!=0){
-                byte[] snb = (finalServer.getHostname() + "," + finalServer.getPort() + "," + finalServer.getStartcode()).getBytes();
-                admin.move(hRegionInfo.getEncodedNameAsBytes(), snb);
-                wait(10);
-            }
-            i++;
-            if (i == servers.length) {
-                i = 0;
+        byte[] cf = Bytes.toBytes("BasicData");
+        byte[] column = Bytes.toBytes("province");
+
+        try (RowSink sink = scanProfile.newSink(cf, column, "Province")) {
+            for (Result result : index.query(Bytes.toBytes(province))) {
+                sink.accept(result);
             }
         }
-        admin.close();
-        connection.close();
         long finish = System.currentTimeMillis();
         long timeElapsed = finish - start;
         System.out.println("Time elapsed: "+timeElapsed+"ms.");
     }
 
-    private ServerName[] getServers() throws IOException {
-        connection = ConnectionFactory.createConnection();
-        admin = connection.getAdmin();
-        Collection<ServerName> serverNames = admin.getClusterStatus().getServers();
-        admin.close();
-        connection.close();
-        return serverNames.toArray(new ServerName[serverNames.size()]);
+    private void checkIndex(boolean repair) throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        index.check(repair);
+        long finish = System.currentTimeMillis();
+        long timeElapsed = finish - start;
+        System.out.println("Time elapsed: "+timeElapsed+"ms.");
     }
 
-    private ServerName getServerOfRegion(HRegionInfo hri) throws IOException {
-        connection = ConnectionFactory.createConnection();
-        admin = connection.getAdmin();
-        for (ServerName sm : getServers()){
-            for(HRegionInfo hRegionInfo : admin.getOnlineRegions(sm)){
-                if(Bytes.compareTo(hri.getEncodedNameAsBytes(),hRegionInfo.getEncodedNameAsBytes())==0){
-                    return sm;
-                }
+    private void split(String splitPoint) throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        SplitAdvisor advisor = new SplitAdvisor(manager, table);
+        timed(Operation.ADMIN, () -> {
+            // auto splits the oversized and hot regions at keys sampled from their data
+            List<SplitAdvisor.Split> splits = splitPoint.equals("auto") ? advisor.advise()
+                    : Collections.singletonList(advisor.at(Bytes.toBytes(splitPoint)));
+            advisor.print(splits);
+            advisor.execute(splits);
+            return null;
+        });
+
+        long finish = System.currentTimeMillis();
+        long timeElapsed = finish - start;
+        System.out.println("Time elapsed: "+timeElapsed+"ms.");
+    }
+
+    private void move(boolean dryRun) throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        RebalancePlanner planner = new RebalancePlanner(manager, table);
+        timed(Operation.ADMIN, () -> {
+            RebalancePlanner.Placement placement = planner.snapshot();
+            List<RebalancePlanner.Move> plan = planner.plan(placement);
+            planner.print(placement, plan);
+            if (!dryRun) {
+                planner.execute(plan);
+                manager.refresh(table);
             }
-        }
-        admin.close();
-        connection.close();
-        return null;
+            return null;
+        });
+        long finish = System.currentTimeMillis();
+        long timeElapsed = finish - start;
+        System.out.println("Time elapsed: "+timeElapsed+"ms.");
     }
 
-    private void merge() throws IOException, InterruptedException, ExecutionException, TimeoutException {
+    private void merge(int maxMb) throws IOException, InterruptedException {
         long start = System.currentTimeMillis();
-        connection = ConnectionFactory.createConnection();
-        admin = connection.getAdmin();
-        List<HRegionInfo> tableHRs = admin.getTableRegions(table);
-        System.out.println("Number of regions: "+tableHRs.size()+" this process will merge the first 2 regions");
-        System.out.println(tableHRs.get(0).getEncodedName()+" "+tableHRs.get(1).getEncodedName());
-        admin.mergeRegionsAsync(tableHRs.get(0).getRegionName(),tableHRs.get(1).getRegionName(),true).get(30, TimeUnit.SECONDS);
-        System.out.println("Number of regions after merge: "+admin.getTableRegions(table).size());
-        admin.close();
-        connection.close();
+        Admin admin = manager.getAdmin();
+        System.out.println("Number of regions: "+admin.getRegions(table).size());
+        timed(Operation.ADMIN, () -> {
+            new CompactionOrchestrator(manager, table).mergeSmall(maxMb * 1024L * 1024L);
+            return null;
+        });
+        System.out.println("Number of regions after merge: "+admin.getRegions(table).size());
         long finish = System.currentTimeMillis();
         long timeElapsed = finish - start;
         System.out.println("Time elapsed: "+timeElapsed+"ms.");
-        System.out.println("It takes some time to be efective. Check table HFiles using the Hadoop fs tool");
     }
 
-    private void compact() throws IOException, InterruptedException {
+    private void compact(boolean major) throws IOException, InterruptedException {
         long start = System.currentTimeMillis();
-        connection = ConnectionFactory.createConnection();
-        admin = connection.getAdmin();
-        try{
-            admin.compact(table);
-            System.out.println("Compaction done!");
-        }catch(Exception e){
-            System.out.println(e);
-        }
-        admin.close();
-        connection.close();
+        // Region by region with a cap per server, returning once the RegionServers are done
+        timed(Operation.ADMIN, () -> {
+            new CompactionOrchestrator(manager, table).compact(major);
+            return null;
+        });
+        System.out.println("Compaction done!");
         long finish = System.currentTimeMillis();
         long timeElapsed = finish - start;
         System.out.println("Time elapsed: "+timeElapsed+"ms.");
     }
 
-    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException, TimeoutException {
+    private void startMetricsReporter(String file, int seconds) throws IOException {
+        if (reporter != null) {
+            reporter.close();
+            System.out.println("Metrics reporter stopped, last snapshot in "+reporter.getFile());
+            reporter = null;
+        }
+        if (file.equals("-")) {
+            return;
+        }
+        reporter = new MetricsReporter(manager.getMetrics(), Paths.get(file), seconds * 1000L).start();
+        System.out.println("Metrics reporter writing "+reporter);
+    }
 
-        Scanner scanner = new Scanner(System.in);
-        int input = 0;
-        System.out.println("Welcome to the HBase API examples proposed during the Cloud Computing and Big Data Ecosystems course.");
-        System.out.println("Next, all possible actions are listed, write the number and press enter to execute the desired action:");
+    // Region-parallel export to local files, resumed when the directory holds an unfinished one
+    private void export(String format, String directory, int rollMb) throws IOException, InterruptedException {
+        new TableExporter(manager, table)
+                .setFormat(TableExporter.Format.valueOf(format.toUpperCase()))
+                .setRollBytes(rollMb * 1024L * 1024L)
+                .export(Paths.get(directory));
+    }
+
+    // Changes since the marks of the checkpoint file, to a file or to the console
+    private void captureChanges(String checkpointFile, String output) throws IOException, InterruptedException {
+        try (ChangeLogWriter writer = output.equals("-") ? new ChangeLogWriter() : new ChangeLogWriter(Paths.get(output))) {
+            new ChangeCapture(manager, table).capture(Paths.get(checkpointFile), writer);
+        }
+    }
+
+    private void printMetrics() {
+        System.out.println(manager.getMetrics());
+    }
+
+    // Replicas apply to the tables created next, timeline reads to the get and scan options from now on
+    private void configureReplicas(int replicas, boolean timelineReads, long primaryTimeoutUs) throws IOException {
+        regionReplicas = Math.max(1, replicas);
+        if (timeline != null) {
+            timeline.close();
+            timeline = null;
+        }
+        if (timelineReads) {
+            timeline = new TimelineReads(manager, primaryTimeoutUs);
+            timeline.warmUp(table);
+        }
+        System.out.println("Region replicas of new tables: "+regionReplicas+", reads: "
+                +(timeline != null ? timeline : "strong reads from the primary"));
+    }
+
+    private void close() throws IOException {
+        if (timeline != null) {
+            timeline.close();
+        }
+        manager.close();
+    }
+
+    private static void printActions() {
         System.out.println("  1: Create the table Users");
         System.out.println("  2: Load data (PUT)");
         System.out.println("  3: Delete user (DELETE)");
@@ -417,15 +748,65 @@ public class Main {
         System.out.println("  7: Scan (SCAN)");
         System.out.println("  8: Range scan (SCAN)");
         System.out.println("  9: Filter scan (SCAN)");
-        System.out.println("  10: (ADMIN) split region");
-        System.out.println("  11: (ADMIN) move region");
-        System.out.println("  12: (ADMIN) merge region");
-        System.out.println("  13: (ADMIN) compact region");
+        System.out.println("  10: (ADMIN) split region (at a key, or auto for oversized and hot regions)");
+        System.out.println("  11: (ADMIN) move regions to balance the load");
+        System.out.println("  12: (ADMIN) merge adjacent small regions");
+        System.out.println("  13: (ADMIN) compact regions one by one");
         System.out.println("  14: remove table");
+        System.out.println("  15: Bulk load data (BufferedMutator PUT)");
+        System.out.println("  16: Initial load data (region-aligned PUT, WAL optional)");
+        System.out.println("  17: Batch lookup of a file of names (async multi-GET)");
+        System.out.println("  18: Parallel scan by region (SCAN)");
+        System.out.println("  19: Configure scans (caching, batch, metrics, output)");
+        System.out.println("  20: Build the province index (create and backfill)");
+        System.out.println("  21: Filter by province using the index (SCAN + GET)");
+        System.out.println("  22: Check the province index consistency");
+        System.out.println("  23: Configure the GET cache");
+        System.out.println("  24: Compare GET latency without and with the cache");
+        System.out.println("  25: Configure row keys and pre-split regions (name, name-id, salted, hashed)");
+        System.out.println("  26: Configure the data generator (seed, cardinality, skew)");
+        System.out.println("  27: Migrate the value format of the table (text, binary, packed)");
+        System.out.println("  28: Report the table size and scan throughput");
+        System.out.println("  29: Start or stop the metrics file reporter");
+        System.out.println("  30: Print the client metrics (also published through JMX)");
+        System.out.println("  31: Export the table to local files (csv or columnar, resumable)");
+        System.out.println("  32: Users, logins and names per province (parallel aggregation)");
+        System.out.println("  33: Configure region replicas and timeline reads (GET and SCAN from replicas)");
+        System.out.println("  34: Changes since the last run (incremental time-range SCAN)");
         System.out.println("  -1: Exit");
         System.out.println("  -2: Remember actions");
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException, TimeoutException {
+
+        // Headless mode: java Main --workload <file> runs the workload and exits
+        if (args.length == 2 && args[0].equals("--workload")) {
+            Workload workload = Workload.load(args[1]);
+            try (ConnectionManager manager = new ConnectionManager()) {
+                new WorkloadDriver(manager, workload).run();
+            }
+            return;
+        }
+
+        Scanner scanner = new Scanner(System.in);
+        int input = 0;
+        System.out.println("Welcome to the HBase API examples proposed during the Cloud Computing and Big Data Ecosystems course.");
+        System.out.println("Next, all possible actions are listed, write the number and press enter to execute the desired action:");
+        printActions();
 
-        Main main = new Main();
+        long start = System.currentTimeMillis();
+        ConnectionManager manager = new ConnectionManager();
+        System.out.println("Connection opened in "+(System.currentTimeMillis() - start)+"ms.");
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                manager.close();
+            } catch (IOException e) {
+                System.out.println(e);
+            }
+        }));
+        manager.warmUp(TableName.valueOf("Users"));
+        Main main = new Main(manager);
+        main.loadTableLayout();
         String name = "";
         int id=-1;
 
@@ -484,45 +865,194 @@ public class Main {
                         main.filterScan(province);
                         break;
                     case 10:
-                        System.out.println("Enter user name: ");
+                        System.out.println("Enter the split key (auto to let the advisor choose): ");
                         name = scanner.next();
                         main.split(name);
                         break;
                     case 11:
-                        main.move();
+                        System.out.println("Only print the plan (dry run)? (true/false): ");
+                        boolean dryRun = scanner.nextBoolean();
+                        main.move(dryRun);
                         break;
                     case 12:
-                        main.merge();
+                        System.out.println("Enter the maximum size in MB of a merged region: ");
+                        int mergeMb = scanner.nextInt();
+                        main.merge(mergeMb);
                         break;
                     case 13:
-                        main.compact();
+                        System.out.println("Major compaction? (true/false): ");
+                        boolean major = scanner.nextBoolean();
+                        main.compact(major);
                         break;
                     case 14:
                         main.deleteTable();
                         break;
+                    case 15:
+                        System.out.println("Enter the number of users to create");
+                        long bulkUsers = scanner.nextLong();
+                        System.out.println("Enter the number of producer threads");
+                        int producers = scanner.nextInt();
+                        System.out.println("Enter the write buffer size in MB");
+                        int bufferMb = scanner.nextInt();
+                        main.bulkPut(bulkUsers, producers, bufferMb);
+                        System.out.println("Users loaded");
+                        break;
+                    case 16:
+                        System.out.println("Enter the number of users to create");
+                        int initialUsers = scanner.nextInt();
+                        System.out.println("Skip the WAL? Faster, but the users loaded are lost if a RegionServer fails "
+                                + "before the final flush (true/false): ");
+                        boolean skipWal = scanner.nextBoolean();
+                        main.initialLoad(initialUsers, skipWal);
+                        System.out.println("Users loaded");
+                        break;
+                    case 17:
+                        System.out.println("Enter the file with one name per line: ");
+                        String file = scanner.next();
+                        System.out.println("Enter the batch size (0 for the blocking GET baseline): ");
+                        int batchSize = scanner.nextInt();
+                        System.out.println("Enter the maximum number of batches in flight: ");
+                        int inFlight = scanner.nextInt();
+                        System.out.println("Keep input order? (true/false): ");
+                        boolean ordered = scanner.nextBoolean();
+                        main.batchGet(file, batchSize, inFlight, ordered);
+                        break;
+                    case 18:
+                        System.out.println("Enter first user name (- for the whole table): ");
+                        name = scanner.next();
+                        System.out.println("Enter last user name (- for the whole table): ");
+                        String lastName = scanner.next();
+                        System.out.println("Print rows in key order? (true/false, false counts users per province): ");
+                        boolean sorted = scanner.nextBoolean();
+                        main.parallelScan(name, lastName, sorted);
+                        break;
+                    case 19:
+                        System.out.println("Enter rows per RPC (caching, -1 for default): ");
+                        int caching = scanner.nextInt();
+                        System.out.println("Enter cells per result (batch, -1 for whole rows): ");
+                        int batch = scanner.nextInt();
+                        System.out.println("Enter max bytes per RPC (-1 for default): ");
+                        long maxResultSize = scanner.nextLong();
+                        System.out.println("Print scan metrics? (true/false): ");
+                        boolean metrics = scanner.nextBoolean();
+                        System.out.println("Enter output (print/raw/count): ");
+                        String output = scanner.next();
+                        main.configureScanProfile(caching, batch, maxResultSize, metrics, output);
+                        break;
+                    case 20:
+                        main.buildIndex();
+                        break;
+                    case 21:
+                        System.out.println("Enter province to filter: ");
+                        String indexedProvince = scanner.next();
+                        main.indexScan(indexedProvince);
+                        break;
+                    case 22:
+                        System.out.println("Repair the differences found? (true/false): ");
+                        boolean repair = scanner.nextBoolean();
+                        main.checkIndex(repair);
+                        break;
+                    case 23:
+                        System.out.println("Enter the maximum number of entries (0 disables the cache): ");
+                        int maxEntries = scanner.nextInt();
+                        System.out.println("Enter the maximum size in MB: ");
+                        int maxMb = scanner.nextInt();
+                        System.out.println("Enter the time to live in seconds: ");
+                        int ttl = scanner.nextInt();
+                        main.configureCache(maxEntries, maxMb, ttl);
+                        break;
+                    case 24:
+                        System.out.println("Enter name: ");
+                        name = scanner.next();
+                        System.out.println("Enter the number of gets: ");
+                        int iterations = scanner.nextInt();
+                        main.compareCache(name, iterations);
+                        break;
+                    case 25:
+                        System.out.println("Enter the row key strategy (name, name-id, salted or hashed): ");
+                        String strategy = scanner.next();
+                        System.out.println("Enter the number of regions (buckets for salted and hashed keys): ");
+                        int regions = scanner.nextInt();
+                        main.configureKeys(strategy, regions);
+                        break;
+                    case 26:
+                        System.out.println("Enter the seed: ");
+                        long seed = scanner.nextLong();
+                        System.out.println("Enter the number of distinct names: ");
+                        int names = scanner.nextInt();
+                        System.out.println("Enter the number of distinct provinces: ");
+                        int provinces = scanner.nextInt();
+                        System.out.println("Enter the skew (0 uniform, 1 zipfian): ");
+                        double skew = Double.parseDouble(scanner.next());
+                        main.configureGenerator(seed, names, provinces, skew);
+                        break;
+                    case 27:
+                        System.out.println("Enter the value format (text, binary or packed): ");
+                        String format = scanner.next();
+                        main.migrateValues(format);
+                        break;
+                    case 28:
+                        main.valueReport();
+                        break;
+                    case 29:
+                        System.out.println("Enter the metrics file, or - to stop the reporter: ");
+                        String metricsFile = scanner.next();
+                        int seconds = 0;
+                        if (!metricsFile.equals("-")) {
+                            System.out.println("Enter the interval in seconds: ");
+                            seconds = scanner.nextInt();
+                        }
+                        main.startMetricsReporter(metricsFile, seconds);
+                        break;
+                    case 30:
+                        main.printMetrics();
+                        break;
+                    case 31:
+                        System.out.println("Enter the format (csv or columnar): ");
+                        String exportFormat = scanner.next();
+                        System.out.println("Enter the directory: ");
+                        String directory = scanner.next();
+                        System.out.println("Enter the file size in MB: ");
+                        int rollMb = scanner.nextInt();
+                        main.export(exportFormat, directory, rollMb);
+                        break;
+                    case 32:
+                        System.out.println("Enter first user name (- for the whole table): ");
+                        name = scanner.next();
+                        System.out.println("Enter last user name (- for the whole table): ");
+                        String toName = scanner.next();
+                        System.out.println("Enter the provinces, comma separated (- for all of them): ");
+                        String provinceNames = scanner.next();
+                        main.aggregate(name, toName, provinceNames);
+                        break;
+                    case 33:
+                        System.out.println("Enter the region replicas of new tables (1 for none): ");
+                        int replicas = scanner.nextInt();
+                        System.out.println("Timeline reads from the replicas? (true/false): ");
+                        boolean timelineReads = scanner.nextBoolean();
+                        long primaryTimeoutUs = 0;
+                        if (timelineReads) {
+                            System.out.println("Enter the primary call timeout in microseconds: ");
+                            primaryTimeoutUs = scanner.nextLong();
+                        }
+                        main.configureReplicas(replicas, timelineReads, primaryTimeoutUs);
+                        break;
+                    case 34:
+                        System.out.println("Enter the checkpoint file (created on the first run): ");
+                        String checkpointFile = scanner.next();
+                        System.out.println("Enter the output file (- for the console): ");
+                        String changesFile = scanner.next();
+                        main.captureChanges(checkpointFile, changesFile);
+                        break;
                     case -2:
                         System.out.println("Next, all possible actions are listed, write the number and press enter to execute the desired action:");
-                        System.out.println("  1: Create the table Users");
-                        System.out.println("  2: Load data (PUT)");
-                        System.out.println("  3: Delete user (DELETE)");
-                        System.out.println("  4: Get (GET)");
-                        System.out.println("  5: Get n versions (GET)");
-                        System.out.println("  6: Get specific column (GET)");
-                        System.out.println("  7: Scan (SCAN)");
-                        System.out.println("  8: Range scan (SCAN)");
-                        System.out.println("  9: Filter scan (SCAN)");
-                        System.out.println("  10: (ADMIN) split region");
-                        System.out.println("  11: (ADMIN) move region");
-                        System.out.println("  12: (ADMIN) merge region");
-                        System.out.println("  13: (ADMIN) compact region");
-                        System.out.println("  14: remove table");
-                        System.out.println("  -1: Exit");
-                        System.out.println("  -2: Remember actions");
+                        printActions();
                         break;
                 }
 
             } else {
                 System.out.println("Ending the program...");
+                main.close();
             }
         }
     }
@@ -0,0 +1,22 @@
+package es.upm.hbase;
+
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Names and pre-encoded identifiers of the Users table shared by the loaders and readers.
+ */
+public final class UsersSchema {
+    public static final TableName TABLE = TableName.valueOf("Users");
+    public static final byte[] FAMILY = Bytes.toBytes("BasicData");
+    public static final byte[] NAME = Bytes.toBytes("name");
+    public static final byte[] PROVINCE = Bytes.toBytes("province");
+    public static final byte[] LAST_LOGIN = Bytes.toBytes("lastLogin");
+    public static final int MAX_VERSIONS = 10;
+
+    public static final String[] NAMES = {"Juan", "Luis", "Carlos", "Ana", "María", "Pedro", "Sofía", "Carmen", "Javier", "Laura"};
+    public static final String[] PROVINCES = {"Madrid", "Barcelona", "Valencia", "Sevilla", "Zaragoza", "Málaga", "Murcia", "Palma", "Bilbao", "Valladolid"};
+
+    private UsersSchema() {
+    }
+}
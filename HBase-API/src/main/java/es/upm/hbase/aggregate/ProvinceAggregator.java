@@ -0,0 +1,192 @@
+package es.upm.hbase.aggregate;
+
+import es.upm.hbase.UsersSchema;
+import es.upm.hbase.codec.UserCodec;
+import es.upm.hbase.connection.ConnectionManager;
+import es.upm.hbase.key.KeyRange;
+import es.upm.hbase.scan.ParallelScanner;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Counts the users of every province, with their first and last login and distinct names, over
+ * the whole table or a key range.
+ *
+ * The regions are scanned in parallel and only the cells the aggregates need are read. Every
+ * scanning thread folds its rows into its own partial aggregates, reading the values in place
+ * from the cells through {@link UserCodec#writeValue}, so the rows are neither copied nor turned
+ * into Strings; bytes are only copied for a province, login or name not seen before by that
+ * thread. The partials are merged once the scan is over.
+ *
+ * Less data reaches the client when the aggregation is restricted to some provinces, whose
+ * filter is evaluated by the RegionServers, or when rows are returned batch cells at a time;
+ * the parts of a row are stitched back before it is aggregated. A scan cannot do both, since the
+ * province filter has to see the whole row, so the batch is ignored for filtered aggregations.
+ */
+public class ProvinceAggregator {
+    private static final byte[][] COLUMNS = {UsersSchema.NAME, UsersSchema.PROVINCE, UsersSchema.LAST_LOGIN};
+
+    private final ConnectionManager manager;
+    private final TableName table;
+    private int caching = 1000;
+    private int batch = 0;
+    private List<String> provinces = Collections.emptyList();
+
+    public ProvinceAggregator(ConnectionManager manager, TableName table) {
+        this.manager = manager;
+        this.table = table;
+    }
+
+    public ProvinceAggregator setCaching(int caching) {
+        this.caching = caching;
+        return this;
+    }
+
+    /**
+     * Cells per returned part of a row, 0 for whole rows.
+     */
+    public ProvinceAggregator setBatch(int batch) {
+        this.batch = batch;
+        return this;
+    }
+
+    /**
+     * Provinces to aggregate, filtered on the RegionServers; all of them when empty.
+     */
+    public ProvinceAggregator setProvinces(String... provinces) {
+        this.provinces = Arrays.asList(provinces);
+        return this;
+    }
+
+    public Map<String, ProvinceStats> aggregate() throws IOException, InterruptedException {
+        return aggregate(Collections.singletonList(new KeyRange(HConstants.EMPTY_START_ROW, HConstants.EMPTY_END_ROW)));
+    }
+
+    /**
+     * Aggregates of the users in the key ranges, such as those a {@link es.upm.hbase.key.RowKeyStrategy}
+     * maps a name range to, by province and sorted by it. Users without a province are left out.
+     */
+    public Map<String, ProvinceStats> aggregate(List<KeyRange> ranges) throws IOException, InterruptedException {
+        List<Partial> partials = Collections.synchronizedList(new ArrayList<>());
+        ThreadLocal<Partial> local = ThreadLocal.withInitial(() -> {
+            Partial partial = new Partial();
+            partials.add(partial);
+            return partial;
+        });
+        // The regions of all the ranges are scanned in one run
+        new ParallelScanner(manager, table).setVerbose(false).scan(newScan(), ranges, false, user -> local.get().add(user));
+
+        Map<String, ProvinceStats> stats = new TreeMap<>();
+        for (Partial partial : partials) {
+            partial.mergeInto(stats);
+        }
+        return stats;
+    }
+
+    private Scan newScan() {
+        Scan scan = UserCodec.addColumns(new Scan(), COLUMNS).setCaching(caching).setCacheBlocks(false);
+        if (!provinces.isEmpty()) {
+            FilterList filter = new FilterList(FilterList.Operator.MUST_PASS_ONE);
+            for (String province : provinces) {
+                filter.addFilter(UserCodec.provinceFilter(Bytes.toBytes(province)));
+            }
+            return scan.setFilter(filter);
+        }
+        return batch > 0 ? scan.setBatch(batch) : scan;
+    }
+
+    /**
+     * Aggregates of the rows one thread scanned, keyed by the bytes of the province.
+     */
+    private static final class Partial {
+        private final Map<ByteBuffer, Group> groups = new HashMap<>();
+        // Parts of the row being received, a thread scans a region at a time
+        private final List<Result> parts = new ArrayList<>();
+        private final byte[] buffer = new byte[UserCodec.BUFFER_SIZE];
+        private final UserCodec.ValueSink capture = (array, offset, length) -> {
+            this.array = array;
+            this.offset = offset;
+            this.length = length;
+        };
+        // The value captured last, valid until the next one
+        private byte[] array;
+        private int offset;
+        private int length;
+
+        void add(Result part) throws IOException {
+            Result user = part;
+            if (part.mayHaveMoreCellsInRow()) {
+                parts.add(part);
+                return;
+            } else if (!parts.isEmpty()) {
+                parts.add(part);
+                user = Result.createCompleteResult(parts);
+                parts.clear();
+            }
+            if (!UserCodec.writeValue(user, UsersSchema.PROVINCE, buffer, capture)) {
+                return;
+            }
+            Group group = groups.get(ByteBuffer.wrap(array, offset, length));
+            if (group == null) {
+                group = new Group();
+                groups.put(ByteBuffer.wrap(copy()), group);
+            }
+            group.count++;
+            if (UserCodec.writeValue(user, UsersSchema.LAST_LOGIN, buffer, capture)) {
+                if (group.firstLogin == null || Bytes.compareTo(array, offset, length, group.firstLogin, 0,
+                        group.firstLogin.length) < 0) {
+                    group.firstLogin = copy();
+                }
+                if (group.lastLogin == null || Bytes.compareTo(array, offset, length, group.lastLogin, 0,
+                        group.lastLogin.length) > 0) {
+                    group.lastLogin = copy();
+                }
+            }
+            if (UserCodec.writeValue(user, UsersSchema.NAME, buffer, capture)
+                    && !group.names.contains(ByteBuffer.wrap(array, offset, length))) {
+                group.names.add(ByteBuffer.wrap(copy()));
+            }
+        }
+
+        private byte[] copy() {
+            return Arrays.copyOfRange(array, offset, offset + length);
+        }
+
+        void mergeInto(Map<String, ProvinceStats> stats) {
+            for (Map.Entry<ByteBuffer, Group> entry : groups.entrySet()) {
+                String province = Bytes.toString(entry.getKey().array());
+                Group group = entry.getValue();
+                Set<String> names = new HashSet<>();
+                for (ByteBuffer name : group.names) {
+                    names.add(Bytes.toString(name.array()));
+                }
+                stats.computeIfAbsent(province, ProvinceStats::new).add(group.count,
+                        group.firstLogin == null ? null : Bytes.toString(group.firstLogin),
+                        group.lastLogin == null ? null : Bytes.toString(group.lastLogin), names);
+            }
+        }
+    }
+
+    private static final class Group {
+        long count;
+        byte[] firstLogin;
+        byte[] lastLogin;
+        final Set<ByteBuffer> names = new HashSet<>();
+    }
+}
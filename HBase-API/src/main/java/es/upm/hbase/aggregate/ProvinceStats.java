@@ -0,0 +1,63 @@
+package es.upm.hbase.aggregate;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Users of one province: how many, the first and last login among them and how many different
+ * names they have.
+ */
+public class ProvinceStats {
+    private final String province;
+    private long count;
+    private String firstLogin;
+    private String lastLogin;
+    private final Set<String> names = new HashSet<>();
+
+    ProvinceStats(String province) {
+        this.province = province;
+    }
+
+    void add(long users, String first, String last, Set<String> userNames) {
+        count += users;
+        if (first != null && (firstLogin == null || first.compareTo(firstLogin) < 0)) {
+            firstLogin = first;
+        }
+        if (last != null && (lastLogin == null || last.compareTo(lastLogin) > 0)) {
+            lastLogin = last;
+        }
+        names.addAll(userNames);
+    }
+
+    public String getProvince() {
+        return province;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Earliest lastLogin of the users, as yyyy-MM-dd, null when none has one.
+     */
+    public String getFirstLogin() {
+        return firstLogin;
+    }
+
+    /**
+     * Latest lastLogin of the users, as yyyy-MM-dd, null when none has one.
+     */
+    public String getLastLogin() {
+        return lastLogin;
+    }
+
+    public int getDistinctNames() {
+        return names.size();
+    }
+
+    @Override
+    public String toString() {
+        return "Province: " + province + " Users: " + count + " First login: " + firstLogin + " Last login: "
+                + lastLogin + " Distinct names: " + names.size();
+    }
+}
@@ -0,0 +1,506 @@
+package es.upm.hbase.balance;
+
+import es.upm.hbase.connection.ConnectionManager;
+import org.apache.hadoop.hbase.ClusterMetrics;
+import org.apache.hadoop.hbase.HRegionLocation;
+import org.apache.hadoop.hbase.RegionMetrics;
+import org.apache.hadoop.hbase.ServerMetrics;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.Size;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Admin;
+import org.apache.hadoop.hbase.client.RegionInfo;
+import org.apache.hadoop.hbase.client.RegionLocator;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plans and runs the region moves that even out the load of a table across the RegionServers.
+ *
+ * The placement is read in one pass: the region locations from the RegionLocator and the load
+ * of every region from two ClusterMetrics samples, whose difference gives the request rate.
+ * Every region weighs its share of the table requests, of its store file bytes and of its
+ * region count, and the plan greedily moves regions from the heaviest server to the lightest
+ * until they are within the slop of the mean, moving every region at most once. Regions with
+ * local HDFS blocks are the last to go, as moving them makes their reads remote until the next
+ * major compaction.
+ *
+ * The moves run on a bounded pool and each one waits until the region is open on its target,
+ * so the same planner drives a production cluster or a multi-RegionServer mini cluster.
+ */
+public class RebalancePlanner {
+    private final ConnectionManager manager;
+    private final TableName table;
+    private double requestWeight = 1;
+    private double sizeWeight = 1;
+    private double countWeight = 1;
+    private double localityWeight = 1;
+    private double slop = 0.1;
+    private long sampleMs = 5000;
+    private int parallelism = 4;
+    private long moveTimeoutMs = TimeUnit.MINUTES.toMillis(2);
+
+    public RebalancePlanner(ConnectionManager manager, TableName table) {
+        this.manager = manager;
+        this.table = table;
+    }
+
+    /**
+     * Relative weights of the request rate, the store file size and the region count in the
+     * load of a region. A zero weight ignores that dimension.
+     */
+    public RebalancePlanner setWeights(double requestWeight, double sizeWeight, double countWeight) {
+        if (requestWeight < 0 || sizeWeight < 0 || countWeight < 0 || requestWeight + sizeWeight + countWeight == 0) {
+            throw new IllegalArgumentException("Weights cannot be negative and one of them must be positive");
+        }
+        this.requestWeight = requestWeight;
+        this.sizeWeight = sizeWeight;
+        this.countWeight = countWeight;
+        return this;
+    }
+
+    /**
+     * How much the locality of a region holds it in place, 0 ignores it.
+     */
+    public RebalancePlanner setLocalityWeight(double localityWeight) {
+        this.localityWeight = localityWeight;
+        return this;
+    }
+
+    /**
+     * Fraction of the mean load servers may deviate from before regions are moved.
+     */
+    public RebalancePlanner setSlop(double slop) {
+        this.slop = slop;
+        return this;
+    }
+
+    /**
+     * Time between the two metrics samples the request rates come from. With 0 the counters
+     * since the regions opened are used instead.
+     */
+    public RebalancePlanner setSampleMs(long sampleMs) {
+        this.sampleMs = sampleMs;
+        return this;
+    }
+
+    /**
+     * Moves running at the same time.
+     */
+    public RebalancePlanner setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        return this;
+    }
+
+    public RebalancePlanner setMoveTimeoutMs(long moveTimeoutMs) {
+        this.moveTimeoutMs = moveTimeoutMs;
+        return this;
+    }
+
+    /**
+     * Current placement and load of the regions of the table, with every live server, including
+     * those holding none of its regions.
+     */
+    public Placement snapshot() throws IOException, InterruptedException {
+        Admin admin = manager.getAdmin();
+        EnumSet<ClusterMetrics.Option> options = EnumSet.of(ClusterMetrics.Option.LIVE_SERVERS);
+        Map<ServerName, ServerMetrics> first = admin.getClusterMetrics(options).getLiveServerMetrics();
+        long start = System.nanoTime();
+        Map<ServerName, ServerMetrics> second = first;
+        if (sampleMs > 0) {
+            Thread.sleep(sampleMs);
+            second = admin.getClusterMetrics(options).getLiveServerMetrics();
+        }
+        double seconds = sampleMs > 0 ? (System.nanoTime() - start) / 1e9 : 1;
+
+        Map<String, RegionMetrics> firstByRegion = byRegion(first);
+        Map<String, RegionMetrics> secondByRegion = byRegion(second);
+        List<RegionLoad> regions = new ArrayList<>();
+        for (HRegionLocation location : manager.getRegionLocator(table).getAllRegionLocations()) {
+            RegionInfo region = location.getRegion();
+            if (region.getReplicaId() != RegionInfo.DEFAULT_REPLICA_ID || location.getServerName() == null) {
+                continue;
+            }
+            RegionMetrics now = secondByRegion.get(region.getEncodedName());
+            RegionMetrics then = firstByRegion.get(region.getEncodedName());
+            double rate = 0;
+            long bytes = 0;
+            float locality = 0;
+            if (now != null) {
+                long requests = now.getReadRequestCount() + now.getWriteRequestCount();
+                if (sampleMs > 0 && then != null) {
+                    requests -= then.getReadRequestCount() + then.getWriteRequestCount();
+                }
+                rate = Math.max(0, requests) / seconds;
+                bytes = (long) now.getStoreFileSize().get(Size.Unit.BYTE);
+                locality = now.getDataLocality();
+            }
+            regions.add(new RegionLoad(region, location.getServerName(), rate, bytes, locality));
+        }
+        return new Placement(new ArrayList<>(second.keySet()), regions, sampleMs > 0);
+    }
+
+    /**
+     * Moves that bring every server within the slop of the mean load, in the order they were chosen.
+     */
+    public List<Move> plan(Placement placement) {
+        double[] weights = weigh(placement.regions, requestWeight, sizeWeight, countWeight);
+        for (int i = 0; i < weights.length; i++) {
+            placement.regions.get(i).weight = weights[i];
+        }
+        return plan(placement.regions, weights, placement.servers, slop, localityWeight);
+    }
+
+    /**
+     * The greedy plan: regions on servers that are not live go to the lightest server first, then
+     * the region of the heaviest server that best closes its gap to the lightest one moves there,
+     * discounted by its locality, until every server is within the slop of the mean. weights are
+     * the loads of the regions, in their order; the arguments are left untouched.
+     */
+    static List<Move> plan(List<RegionLoad> regions, double[] weights, List<ServerName> servers, double slop,
+                           double localityWeight) {
+        if (servers.size() < 2 || regions.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<ServerName, Double> load = new LinkedHashMap<>();
+        Map<ServerName, List<Integer>> hosted = new LinkedHashMap<>();
+        for (ServerName server : servers) {
+            load.put(server, 0.0);
+            hosted.put(server, new ArrayList<>());
+        }
+        List<Integer> orphans = new ArrayList<>();
+        double total = 0;
+        for (int i = 0; i < regions.size(); i++) {
+            ServerName server = regions.get(i).server;
+            total += weights[i];
+            if (hosted.containsKey(server)) {
+                load.merge(server, weights[i], Double::sum);
+                hosted.get(server).add(i);
+            } else {
+                // On a server that died after the locations were read
+                orphans.add(i);
+            }
+        }
+        double mean = total / servers.size();
+
+        List<Move> moves = new ArrayList<>();
+        for (int i : orphans) {
+            ServerName lightest = lightest(load);
+            load.merge(lightest, weights[i], Double::sum);
+            hosted.get(lightest).add(i);
+            moves.add(new Move(regions.get(i), regions.get(i).server, lightest));
+        }
+        Set<Integer> moved = new HashSet<>(orphans);
+        for (int step = 0; step < regions.size(); step++) {
+            ServerName heaviest = heaviest(load);
+            ServerName lightest = lightest(load);
+            if (load.get(heaviest) <= mean * (1 + slop) && load.get(lightest) >= mean * (1 - slop)) {
+                break;
+            }
+            double gap = load.get(heaviest) - load.get(lightest);
+            Integer best = null;
+            double bestScore = 0;
+            for (int i : hosted.get(heaviest)) {
+                // Regions heavier than the gap would only swap the roles of both servers
+                if (moved.contains(i) || weights[i] >= gap) {
+                    continue;
+                }
+                // How much the spread shrinks, discounted by the locality the region loses
+                double score = Math.min(weights[i], gap - weights[i]) / (1 + localityWeight * regions.get(i).locality);
+                if (best == null || score > bestScore) {
+                    best = i;
+                    bestScore = score;
+                }
+            }
+            if (best == null) {
+                break;
+            }
+            moved.add(best);
+            hosted.get(heaviest).remove(best);
+            hosted.get(lightest).add(best);
+            load.merge(heaviest, -weights[best], Double::sum);
+            load.merge(lightest, weights[best], Double::sum);
+            moves.add(new Move(regions.get(best), heaviest, lightest));
+        }
+        return moves;
+    }
+
+    private static ServerName heaviest(Map<ServerName, Double> load) {
+        ServerName heaviest = null;
+        for (Map.Entry<ServerName, Double> server : load.entrySet()) {
+            if (heaviest == null || server.getValue() > load.get(heaviest)) {
+                heaviest = server.getKey();
+            }
+        }
+        return heaviest;
+    }
+
+    private static ServerName lightest(Map<ServerName, Double> load) {
+        ServerName lightest = null;
+        for (Map.Entry<ServerName, Double> server : load.entrySet()) {
+            if (lightest == null || server.getValue() < load.get(lightest)) {
+                lightest = server.getKey();
+            }
+        }
+        return lightest;
+    }
+
+    /**
+     * Dry run: the load of every server now and after the plan, and the moves.
+     */
+    public void print(Placement placement, List<Move> plan) {
+        Map<ServerName, double[]> servers = new TreeMap<>();
+        for (ServerName server : placement.servers) {
+            servers.put(server, new double[4]);
+        }
+        for (RegionLoad region : placement.regions) {
+            double[] before = servers.computeIfAbsent(region.server, s -> new double[4]);
+            before[0] += region.weight;
+            before[1]++;
+        }
+        for (double[] server : servers.values()) {
+            server[2] = server[0];
+            server[3] = server[1];
+        }
+        for (Move move : plan) {
+            servers.get(move.from)[2] -= move.region.weight;
+            servers.get(move.from)[3]--;
+            servers.get(move.to)[2] += move.region.weight;
+            servers.get(move.to)[3]++;
+        }
+        System.out.println("Load of " + table + " (" + placement.regions.size() + " regions, request rates "
+                + (placement.sampled ? "sampled over " + sampleMs + "ms" : "since the regions opened") + "):");
+        for (Map.Entry<ServerName, double[]> server : servers.entrySet()) {
+            double[] values = server.getValue();
+            System.out.println(String.format("  %s: %.3f (%d regions) -> %.3f (%d regions)", server.getKey(),
+                    values[0], (long) values[1], values[2], (long) values[3]));
+        }
+        if (plan.isEmpty()) {
+            System.out.println("Balanced within " + Math.round(slop * 100) + "% of the mean, nothing to move.");
+            return;
+        }
+        System.out.println(plan.size() + " moves:");
+        for (Move move : plan) {
+            System.out.println("  " + move);
+        }
+    }
+
+    /**
+     * Runs the moves, at most parallelism at a time, each one waiting for its region to open on
+     * the target. Returns the moves that completed.
+     */
+    public int execute(List<Move> plan) throws IOException, InterruptedException {
+        if (plan.isEmpty()) {
+            return 0;
+        }
+        long start = System.currentTimeMillis();
+        ExecutorService workers = Executors.newFixedThreadPool(Math.min(parallelism, plan.size()));
+        List<Future<Long>> results = new ArrayList<>(plan.size());
+        try {
+            for (Move move : plan) {
+                results.add(workers.submit(() -> run(move)));
+            }
+            int done = 0;
+            for (int i = 0; i < plan.size(); i++) {
+                try {
+                    long elapsedMs = results.get(i).get();
+                    System.out.println("Moved " + plan.get(i).region.getName() + " in " + elapsedMs + "ms");
+                    done++;
+                } catch (ExecutionException e) {
+                    System.out.println("Move failed: " + plan.get(i) + ": " + e.getCause());
+                }
+            }
+            System.out.println(String.format("%d/%d moves done in %dms.", done, plan.size(),
+                    System.currentTimeMillis() - start));
+            return done;
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    // Runs on a pool thread of its own, so its handles are opened and closed here
+    private long run(Move move) throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        try (Admin admin = manager.getConnection().getAdmin();
+             RegionLocator locator = manager.getConnection().getRegionLocator(table)) {
+            admin.move(move.region.region.getEncodedNameAsBytes(), move.to);
+            waitForMove(locator, move, start);
+        }
+        return System.currentTimeMillis() - start;
+    }
+
+    /**
+     * Polls the location of the region, bypassing the cache, with an exponential backoff until it
+     * is open on the target server.
+     */
+    private void waitForMove(RegionLocator locator, Move move, long start) throws IOException, InterruptedException {
+        byte[] startKey = move.region.region.getStartKey();
+        long backoffMs = 50;
+        while (true) {
+            HRegionLocation location = locator.getRegionLocation(startKey, true);
+            if (location != null && move.to.equals(location.getServerName())
+                    && Bytes.equals(location.getRegion().getEncodedNameAsBytes(), move.region.region.getEncodedNameAsBytes())) {
+                return;
+            }
+            if (System.currentTimeMillis() - start > moveTimeoutMs) {
+                throw new IOException("Region " + move.region.getName() + " not open on " + move.to + " after "
+                        + moveTimeoutMs + "ms, last seen on " + (location == null ? null : location.getServerName()));
+            }
+            Thread.sleep(backoffMs);
+            backoffMs = Math.min(backoffMs * 2, 2000);
+        }
+    }
+
+    /**
+     * Load of every region: its shares of the request rate and the store file bytes of the
+     * regions, and of their count, each multiplied by its weight.
+     */
+    static double[] weigh(List<RegionLoad> regions, double requestWeight, double sizeWeight, double countWeight) {
+        double requests = 0;
+        double bytes = 0;
+        for (RegionLoad region : regions) {
+            requests += region.requestRate;
+            bytes += region.storeFileBytes;
+        }
+        double[] weights = new double[regions.size()];
+        for (int i = 0; i < weights.length; i++) {
+            RegionLoad region = regions.get(i);
+            // Dimensions without any load, a new or idle table, do not count.
+            weights[i] = (requests > 0 ? requestWeight * region.requestRate / requests : 0)
+                    + (bytes > 0 ? sizeWeight * region.storeFileBytes / bytes : 0)
+                    + countWeight / regions.size();
+        }
+        return weights;
+    }
+
+    private static Map<String, RegionMetrics> byRegion(Map<ServerName, ServerMetrics> servers) {
+        Map<String, RegionMetrics> regions = new TreeMap<>();
+        for (ServerMetrics server : servers.values()) {
+            for (RegionMetrics region : server.getRegionMetrics().values()) {
+                regions.put(RegionInfo.encodeRegionName(region.getRegionName()), region);
+            }
+        }
+        return regions;
+    }
+
+    /**
+     * Live servers and the regions of the table at one point.
+     */
+    public static class Placement {
+        private final List<ServerName> servers;
+        private final List<RegionLoad> regions;
+        private final boolean sampled;
+
+        Placement(List<ServerName> servers, List<RegionLoad> regions, boolean sampled) {
+            this.servers = servers;
+            this.regions = regions;
+            this.sampled = sampled;
+        }
+
+        public List<ServerName> getServers() {
+            return servers;
+        }
+
+        public List<RegionLoad> getRegions() {
+            return regions;
+        }
+    }
+
+    /**
+     * One region, where it is and what it costs.
+     */
+    public static class RegionLoad {
+        private final RegionInfo region;
+        private final ServerName server;
+        private final double requestRate;
+        private final long storeFileBytes;
+        private final float locality;
+        private double weight;
+
+        RegionLoad(RegionInfo region, ServerName server, double requestRate, long storeFileBytes, float locality) {
+            this.region = region;
+            this.server = server;
+            this.requestRate = requestRate;
+            this.storeFileBytes = storeFileBytes;
+            this.locality = locality;
+        }
+
+        public RegionInfo getRegionInfo() {
+            return region;
+        }
+
+        public String getName() {
+            return region.getEncodedName();
+        }
+
+        public ServerName getServer() {
+            return server;
+        }
+
+        public double getRequestRate() {
+            return requestRate;
+        }
+
+        public long getStoreFileBytes() {
+            return storeFileBytes;
+        }
+
+        public float getLocality() {
+            return locality;
+        }
+
+        public double getWeight() {
+            return weight;
+        }
+    }
+
+    /**
+     * Planned move of a region.
+     */
+    public static class Move {
+        private final RegionLoad region;
+        private final ServerName from;
+        private final ServerName to;
+
+        Move(RegionLoad region, ServerName from, ServerName to) {
+            this.region = region;
+            this.from = from;
+            this.to = to;
+        }
+
+        public RegionLoad getRegion() {
+            return region;
+        }
+
+        public ServerName getFrom() {
+            return from;
+        }
+
+        public ServerName getTo() {
+            return to;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s [%s, %s) %s -> %s: weight %.3f, %.0f req/s, %.2f MB, locality %.2f",
+                    region.getName(), Bytes.toStringBinary(region.region.getStartKey()),
+                    Bytes.toStringBinary(region.region.getEndKey()), from, to, region.weight, region.requestRate,
+                    region.storeFileBytes / 1048576.0, region.locality);
+        }
+    }
+}
@@ -0,0 +1,257 @@
+package es.upm.hbase.cache;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process read-through cache for point gets.
+ *
+ * Entries are keyed on the row plus the projection of the get (families, qualifiers and number
+ * of versions) and keep the {@link Result} as returned by the server, so values stay as raw
+ * bytes. The cache is bounded both in entries and in bytes with LRU eviction, and every entry
+ * expires after the configured TTL. Writes done by this client must call {@link #invalidate}.
+ */
+public class RowCache {
+    private final int maxEntries;
+    private final long maxBytes;
+    private final long ttlNs;
+
+    private final LinkedHashMap<CacheKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<RowKey, Set<CacheKey>> byRow = new HashMap<>();
+    private long bytes = 0;
+    // Bumped by every invalidation, so that a get racing with a local write does not cache the old row.
+    private long generation = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+
+    public RowCache(int maxEntries, long maxBytes, long ttl, TimeUnit unit) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.ttlNs = unit.toNanos(ttl);
+    }
+
+    /**
+     * Returns the cached result of the get, or runs it against the table and caches it.
+     * Rows that do not exist are cached too, as empty results. Stale results of timeline gets are
+     * returned but not cached, so that a lagging replica is not served for the whole TTL.
+     */
+    public Result get(Table table, Get get) throws IOException {
+        CacheKey key = new CacheKey(get);
+        Result cached = lookup(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+        misses.incrementAndGet();
+        long before = currentGeneration();
+        Result result = table.get(get);
+        if (!result.isStale()) {
+            store(key, result, before);
+        }
+        return result;
+    }
+
+    /**
+     * Drops every cached projection of the row.
+     */
+    public synchronized void invalidate(byte[] row) {
+        generation++;
+        Set<CacheKey> keys = byRow.remove(new RowKey(row));
+        if (keys == null) {
+            return;
+        }
+        for (CacheKey key : keys) {
+            Entry entry = entries.remove(key);
+            if (entry != null) {
+                bytes -= entry.size;
+                invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        generation++;
+        entries.clear();
+        byRow.clear();
+        bytes = 0;
+    }
+
+    private synchronized Result lookup(CacheKey key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (System.nanoTime() - entry.expiresAt > 0) {
+            remove(key, entry);
+            expirations.incrementAndGet();
+            return null;
+        }
+        return entry.result;
+    }
+
+    private synchronized long currentGeneration() {
+        return generation;
+    }
+
+    private synchronized void store(CacheKey key, Result result, long readGeneration) {
+        long size = sizeOf(key, result);
+        if (size > maxBytes || readGeneration != generation) {
+            return;
+        }
+        Entry previous = entries.put(key, new Entry(result, size, System.nanoTime() + ttlNs));
+        if (previous != null) {
+            bytes -= previous.size;
+        }
+        bytes += size;
+        byRow.computeIfAbsent(key.row, r -> new HashSet<>()).add(key);
+
+        Iterator<Map.Entry<CacheKey, Entry>> eldest = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && eldest.hasNext()) {
+            Map.Entry<CacheKey, Entry> victim = eldest.next();
+            eldest.remove();
+            bytes -= victim.getValue().size;
+            unlinkRow(victim.getKey());
+            evictions.incrementAndGet();
+        }
+    }
+
+    private void remove(CacheKey key, Entry entry) {
+        entries.remove(key);
+        bytes -= entry.size;
+        unlinkRow(key);
+    }
+
+    private void unlinkRow(CacheKey key) {
+        Set<CacheKey> keys = byRow.get(key.row);
+        if (keys != null) {
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                byRow.remove(key.row);
+            }
+        }
+    }
+
+    private static long sizeOf(CacheKey key, Result result) {
+        long size = key.row.bytes.length + key.projection.length();
+        Cell[] cells = result.rawCells();
+        if (cells != null) {
+            for (Cell cell : cells) {
+                size += cell.getSerializedSize();
+            }
+        }
+        return size;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long sizeInBytes() {
+        return bytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        long requests = hits.get() + misses.get();
+        return String.format("Entries: %d/%d, bytes: %d/%d, hits: %d, misses: %d (hit ratio %.1f%%), evictions: %d, expirations: %d, invalidations: %d",
+                entries.size(), maxEntries, bytes, maxBytes, hits.get(), misses.get(),
+                requests == 0 ? 0.0 : 100.0 * hits.get() / requests, evictions.get(), expirations.get(), invalidations.get());
+    }
+
+    private static class Entry {
+        final Result result;
+        final long size;
+        final long expiresAt;
+
+        Entry(Result result, long size, long expiresAt) {
+            this.result = result;
+            this.size = size;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static class RowKey {
+        final byte[] bytes;
+        final int hash;
+
+        RowKey(byte[] bytes) {
+            this.bytes = bytes;
+            this.hash = Bytes.hashCode(bytes);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof RowKey && Bytes.equals(bytes, ((RowKey) o).bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static class CacheKey {
+        final RowKey row;
+        final String projection;
+
+        CacheKey(Get get) {
+            this.row = new RowKey(get.getRow());
+            StringBuilder sb = new StringBuilder().append(get.getMaxVersions()).append('/');
+            // The family map of a Get is sorted, so equal projections give equal strings.
+            for (Map.Entry<byte[], NavigableSet<byte[]>> family : get.getFamilyMap().entrySet()) {
+                sb.append(Bytes.toStringBinary(family.getKey())).append(':');
+                if (family.getValue() != null) {
+                    for (byte[] qualifier : family.getValue()) {
+                        sb.append(Bytes.toStringBinary(qualifier)).append(',');
+                    }
+                }
+                sb.append(';');
+            }
+            this.projection = sb.toString();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey other = (CacheKey) o;
+            return row.equals(other.row) && projection.equals(other.projection);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * row.hashCode() + projection.hashCode();
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package es.upm.hbase.changes;
+
+import es.upm.hbase.connection.ConnectionManager;
+import es.upm.hbase.metrics.Operation;
+import es.upm.hbase.metrics.OperationMetrics;
+import es.upm.hbase.scan.RegionRange;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.util.EnvironmentEdgeManager;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Emits the cells of a table written since the previous run, region by region in parallel.
+ *
+ * Every region range is scanned with a time range from its high-water mark in the
+ * {@link ChangeCheckpoint} up to the start of the run minus a lag, reading every version, so a
+ * run costs in proportion to the changes since the previous one and not to the table size. Raw
+ * scans also return the delete markers, and the deleted cells not yet compacted away. Once a
+ * range has been streamed to the sink and the sink flushed, its mark moves to the end of the time
+ * range; a range that fails keeps its mark, and its changes are emitted again by the next run.
+ *
+ * The timestamps are those of the RegionServers when the writes carry none. The lag covers
+ * writes still in flight when the run starts and the clock skew between this client and the
+ * servers; changes written with explicit timestamps older than a mark are not captured.
+ */
+public class ChangeCapture {
+    private final ConnectionManager manager;
+    private final TableName table;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int caching = 1000;
+    private boolean raw = true;
+    private long lagMs = 1000;
+
+    public ChangeCapture(ConnectionManager manager, TableName table) {
+        this.manager = manager;
+        this.table = table;
+    }
+
+    public ChangeCapture setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+        return this;
+    }
+
+    public ChangeCapture setCaching(int caching) {
+        this.caching = caching;
+        return this;
+    }
+
+    /**
+     * Whether delete markers are captured, true by default.
+     */
+    public ChangeCapture setRaw(boolean raw) {
+        this.raw = raw;
+        return this;
+    }
+
+    /**
+     * Time before the start of a run that its changes end at.
+     */
+    public ChangeCapture setLagMs(long lagMs) {
+        this.lagMs = Math.max(0, lagMs);
+        return this;
+    }
+
+    /**
+     * Streams the changes since the marks of the checkpoint file, which is created on the first
+     * run and then captures the whole history kept by the table, and advances the marks.
+     */
+    public Summary capture(Path checkpointFile, ChangeSink sink) throws IOException, InterruptedException {
+        ChangeCheckpoint checkpoint = ChangeCheckpoint.load(checkpointFile, table.getNameAsString());
+        List<byte[][]> bounds = new ArrayList<>();
+        for (RegionRange range : RegionRange.split(manager.getRegionLocator(table).getAllRegionLocations(),
+                HConstants.EMPTY_START_ROW, HConstants.EMPTY_END_ROW)) {
+            bounds.add(new byte[][]{range.getStartRow(), range.getStopRow()});
+        }
+        checkpoint.realign(bounds);
+
+        long until = EnvironmentEdgeManager.currentTime() - lagMs;
+        List<ChangeCheckpoint.Range> pending = new ArrayList<>();
+        for (ChangeCheckpoint.Range range : checkpoint.getRanges()) {
+            if (range.mark < until) {
+                pending.add(range);
+            }
+        }
+        Summary summary = new Summary(until, pending.size());
+        ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, pending.size())));
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            for (ChangeCheckpoint.Range range : pending) {
+                tasks.add(workers.submit(() -> {
+                    captureRange(range, until, checkpoint, sink, summary);
+                    return null;
+                }));
+            }
+            for (int i = 0; i < tasks.size(); i++) {
+                try {
+                    tasks.get(i).get();
+                } catch (ExecutionException e) {
+                    throw new IOException("Capture of " + pending.get(i) + " failed, the next run emits its changes again",
+                            e.getCause());
+                }
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+        summary.finish();
+        System.out.println(summary);
+        return summary;
+    }
+
+    private void captureRange(ChangeCheckpoint.Range range, long until, ChangeCheckpoint checkpoint, ChangeSink sink,
+                              Summary summary) throws IOException {
+        Scan scan = new Scan().withStartRow(range.startRow, true).withStopRow(range.stopRow, false)
+                .setTimeRange(range.mark, until).readAllVersions().setRaw(raw).setCaching(caching)
+                .setCacheBlocks(false).setScanMetricsEnabled(true);
+        OperationMetrics metrics = manager.getMetrics().get(Operation.SCAN);
+        long start = System.nanoTime();
+        long rows = 0;
+        long bytes = 0;
+        try (Table t = manager.getConnection().getTable(table);
+             ResultScanner scanner = t.getScanner(scan)) {
+            for (Result changes : scanner) {
+                sink.accept(changes);
+                long deletes = 0;
+                for (Cell cell : changes.rawCells()) {
+                    bytes += cell.getSerializedSize();
+                    if (CellUtil.isDelete(cell)) {
+                        deletes++;
+                    }
+                }
+                summary.row(changes.size(), deletes);
+                rows++;
+            }
+            // The changes are written out before the mark records them as emitted
+            sink.flush();
+            checkpoint.advance(range, until);
+            metrics.record(start, rows, bytes);
+            manager.getMetrics().scanned(scanner.getScanMetrics());
+        } catch (IOException | RuntimeException e) {
+            metrics.error(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Totals of the changes emitted by one run.
+     */
+    public static class Summary {
+        private final long start = System.nanoTime();
+        private final long until;
+        private final int ranges;
+        private final AtomicLong rows = new AtomicLong();
+        private final AtomicLong cells = new AtomicLong();
+        private final AtomicLong deletes = new AtomicLong();
+        private long elapsedNs;
+
+        Summary(long until, int ranges) {
+            this.until = until;
+            this.ranges = ranges;
+        }
+
+        void row(long rowCells, long rowDeletes) {
+            rows.incrementAndGet();
+            cells.addAndGet(rowCells);
+            deletes.addAndGet(rowDeletes);
+        }
+
+        void finish() {
+            elapsedNs = System.nanoTime() - start;
+        }
+
+        /**
+         * End of the time range of the run, the new mark of every range captured.
+         */
+        public long getUntil() {
+            return until;
+        }
+
+        public long getRows() {
+            return rows.get();
+        }
+
+        public long getCells() {
+            return cells.get();
+        }
+
+        public long getDeletes() {
+            return deletes.get();
+        }
+
+        public long getElapsedNs() {
+            return elapsedNs;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Captured %d changed cells (%d delete markers) in %d rows of %d ranges, up to %s, "
+                            + "in %dms.", cells.get(), deletes.get(), rows.get(), ranges, Instant.ofEpochMilli(until),
+                    elapsedNs / 1000000);
+        }
+    }
+}
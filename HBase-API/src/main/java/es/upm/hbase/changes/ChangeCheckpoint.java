@@ -0,0 +1,130 @@
+package es.upm.hbase.changes;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * High-water marks of a change capture, kept in a local text file: the table name, then one line
+ * per key range with its bounds and the timestamp up to which its changes were emitted. Keys are
+ * written with Bytes.toStringBinary.
+ *
+ * The ranges are those of the regions in the last run. When the regions change in between, a
+ * new range takes the lowest mark of the old ranges it overlaps, so that no change is skipped;
+ * some are emitted again instead. Every update rewrites the file into a temporary one that is
+ * then moved over it, so a crash leaves either the old or the new marks.
+ */
+public class ChangeCheckpoint {
+    private final Path file;
+    private final String table;
+    private final List<Range> ranges;
+
+    private ChangeCheckpoint(Path file, String table, List<Range> ranges) {
+        this.file = file;
+        this.table = table;
+        this.ranges = ranges;
+    }
+
+    /**
+     * Checkpoint in the file, with no ranges when the file does not exist yet.
+     */
+    public static ChangeCheckpoint load(Path file, String table) throws IOException {
+        if (!Files.exists(file)) {
+            return new ChangeCheckpoint(file, table, new ArrayList<>());
+        }
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        if (lines.isEmpty() || !lines.get(0).equals(table)) {
+            throw new IOException(file + " is not a change checkpoint of " + table);
+        }
+        List<Range> ranges = new ArrayList<>();
+        for (String line : lines.subList(1, lines.size())) {
+            String[] fields = line.split("\t", -1);
+            ranges.add(new Range(Bytes.toBytesBinary(fields[0]), Bytes.toBytesBinary(fields[1]),
+                    Long.parseLong(fields[2])));
+        }
+        return new ChangeCheckpoint(file, table, ranges);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    public List<Range> getRanges() {
+        return Collections.unmodifiableList(ranges);
+    }
+
+    /**
+     * Replaces the ranges with [startRow, stopRow) bounds, sorted by key, each one with the lowest
+     * mark of the current ranges it overlaps, 0 when it overlaps none, and saves them.
+     */
+    public synchronized void realign(List<byte[][]> bounds) throws IOException {
+        List<Range> realigned = new ArrayList<>(bounds.size());
+        for (byte[][] bound : bounds) {
+            long mark = Long.MAX_VALUE;
+            for (Range range : ranges) {
+                if (overlaps(range.startRow, range.stopRow, bound[0], bound[1])) {
+                    mark = Math.min(mark, range.mark);
+                }
+            }
+            realigned.add(new Range(bound[0], bound[1], mark == Long.MAX_VALUE ? 0 : mark));
+        }
+        ranges.clear();
+        ranges.addAll(realigned);
+        save();
+    }
+
+    /**
+     * Records that every change of the range older than mark was emitted.
+     */
+    public synchronized void advance(Range range, long mark) throws IOException {
+        range.mark = mark;
+        save();
+    }
+
+    private static boolean overlaps(byte[] start1, byte[] stop1, byte[] start2, byte[] stop2) {
+        return (stop1.length == 0 || Bytes.compareTo(start2, stop1) < 0)
+                && (stop2.length == 0 || Bytes.compareTo(start1, stop2) < 0);
+    }
+
+    private synchronized void save() throws IOException {
+        StringBuilder text = new StringBuilder(table).append('\n');
+        for (Range range : ranges) {
+            text.append(Bytes.toStringBinary(range.startRow)).append('\t')
+                    .append(Bytes.toStringBinary(range.stopRow)).append('\t').append(range.mark).append('\n');
+        }
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temporary, text.toString().getBytes(StandardCharsets.UTF_8));
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * A key range [startRow, stopRow) whose changes older than mark were emitted.
+     */
+    public static class Range {
+        final byte[] startRow;
+        final byte[] stopRow;
+        long mark;
+
+        Range(byte[] startRow, byte[] stopRow, long mark) {
+            this.startRow = startRow;
+            this.stopRow = stopRow;
+            this.mark = mark;
+        }
+
+        public long getMark() {
+            return mark;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + Bytes.toStringBinary(startRow) + ", " + Bytes.toStringBinary(stopRow) + ")";
+        }
+    }
+}
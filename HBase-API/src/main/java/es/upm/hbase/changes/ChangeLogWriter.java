@@ -0,0 +1,82 @@
+package es.upm.hbase.changes;
+
+import es.upm.hbase.codec.UserCodec;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes changes as tab-separated lines, one per cell: timestamp, type (Put, Delete, DeleteColumn,
+ * DeleteFamily or DeleteFamilyVersion), row, qualifier and, for puts, the text of the value.
+ * Rows and qualifiers are written with Bytes.toStringBinary.
+ *
+ * The cells of a row are written together, but rows of different regions interleave.
+ */
+public class ChangeLogWriter implements ChangeSink, Closeable {
+    private final Writer out;
+    private final boolean owned;
+
+    /**
+     * Writer appending to the file.
+     */
+    public ChangeLogWriter(Path file) throws IOException {
+        this(Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND), true);
+    }
+
+    /**
+     * Writer to the standard output, which is flushed but left open on close.
+     */
+    public ChangeLogWriter() {
+        this(new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)), false);
+    }
+
+    private ChangeLogWriter(Writer out, boolean owned) {
+        this.out = out;
+        this.owned = owned;
+    }
+
+    @Override
+    public synchronized void accept(Result changes) throws IOException {
+        String row = Bytes.toStringBinary(changes.getRow());
+        for (Cell cell : changes.rawCells()) {
+            out.write(Long.toString(cell.getTimestamp()));
+            out.write('\t');
+            out.write(cell.getType().name());
+            out.write('\t');
+            out.write(row);
+            out.write('\t');
+            out.write(Bytes.toStringBinary(CellUtil.cloneQualifier(cell)));
+            out.write('\t');
+            if (cell.getType() == Cell.Type.Put) {
+                out.write(UserCodec.text(cell));
+            }
+            out.write('\n');
+        }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (owned) {
+            out.close();
+        } else {
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package es.upm.hbase.changes;
+
+import org.apache.hadoop.hbase.client.Result;
+
+import java.io.IOException;
+
+/**
+ * Receives the changes of one row: its put cells and delete markers in the captured time range,
+ * every version of every column. Rows of different regions arrive from different threads.
+ */
+public interface ChangeSink {
+    void accept(Result changes) throws IOException;
+
+    /**
+     * Writes out the changes accepted so far, called before the mark of a range moves past them.
+     */
+    void flush() throws IOException;
+}
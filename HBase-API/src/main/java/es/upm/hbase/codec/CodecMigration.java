@@ -0,0 +1,258 @@
+package es.upm.hbase.codec;
+
+import es.upm.hbase.UsersSchema;
+import es.upm.hbase.connection.ConnectionManager;
+import es.upm.hbase.scan.ParallelScanner;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.RegionMetrics;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.Size;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Admin;
+import org.apache.hadoop.hbase.client.BufferedMutator;
+import org.apache.hadoop.hbase.client.CompactionState;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.TableDescriptorBuilder;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rewrites the Users table in another {@link UserCodec} format and reports what it changed.
+ *
+ * Every version of every user is read with a region-parallel scan, encoded again with the same
+ * timestamp and written through a BufferedMutator, and the cells of the old layout up to the
+ * newest version read are deleted, so users written meanwhile are kept. Readers decode both
+ * layouts, so the table stays readable while it runs. Once rewritten, the format is recorded in
+ * the table descriptor and the table is flushed and major compacted, so that the store files only
+ * hold the new layout when the sizes are measured again.
+ */
+public class CodecMigration {
+    private static final int SCAN_CACHING = 1000;
+    private static final long COMPACTION_POLL_MS = 1000;
+    private static final long COMPACTION_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(30);
+    private static final byte[][] COLUMNS = {UsersSchema.NAME, UsersSchema.PROVINCE, UsersSchema.LAST_LOGIN};
+
+    private final ConnectionManager manager;
+    private final TableName table;
+
+    public CodecMigration(ConnectionManager manager, TableName table) {
+        this.manager = manager;
+        this.table = table;
+    }
+
+    /**
+     * Rewrites the table with the codec and prints the report comparing it before and after.
+     */
+    public Report migrate(UserCodec codec) throws IOException, InterruptedException {
+        Measurement before = measure();
+        System.out.println("Before: " + before);
+
+        long start = System.nanoTime();
+        AtomicLong rows = new AtomicLong();
+        AtomicLong versions = new AtomicLong();
+        AtomicLong skipped = new AtomicLong();
+        Scan scan = UserCodec.addColumns(new Scan(), COLUMNS).readAllVersions().setCaching(SCAN_CACHING);
+        ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[UserCodec.BUFFER_SIZE]);
+        try (BufferedMutator mutator = manager.getConnection().getBufferedMutator(table)) {
+            new ParallelScanner(manager, table).setVerbose(false).scan(scan, false, user -> {
+                Map<Long, byte[][]> userVersions = versions(user);
+                for (byte[][] values : userVersions.values()) {
+                    if (values[0] == null || values[1] == null || values[2] == null) {
+                        // A column was deleted on its own, the row is left as it is rather than half rewritten.
+                        skipped.incrementAndGet();
+                        return;
+                    }
+                }
+                long newest = 0;
+                for (Map.Entry<Long, byte[][]> version : userVersions.entrySet()) {
+                    byte[][] values = version.getValue();
+                    LocalDate lastLogin = LocalDate.parse(Bytes.toString(values[2]));
+                    Put put = new Put(user.getRow(), version.getKey());
+                    codec.write(put, values[0], values[1], lastLogin.getYear(), lastLogin.getMonthValue(),
+                            lastLogin.getDayOfMonth(), buffers.get());
+                    mutator.mutate(put);
+                    newest = Math.max(newest, version.getKey());
+                }
+                Delete delete = new Delete(user.getRow());
+                if (codec.getFormat() == UserCodec.Format.PACKED) {
+                    for (byte[] column : COLUMNS) {
+                        delete.addColumns(UsersSchema.FAMILY, column, newest);
+                    }
+                } else {
+                    delete.addColumns(UsersSchema.FAMILY, UserCodec.PACKED_QUALIFIER, newest);
+                }
+                mutator.mutate(delete);
+                rows.incrementAndGet();
+                versions.addAndGet(userVersions.size());
+            });
+        }
+        long rewriteNs = System.nanoTime() - start;
+        System.out.println(String.format("Rewrote %d users (%d versions) as %s in %dms, %d users skipped.",
+                rows.get(), versions.get(), codec, rewriteNs / 1000000, skipped.get()));
+
+        Admin admin = manager.getAdmin();
+        admin.modifyTable(TableDescriptorBuilder.newBuilder(admin.getDescriptor(table))
+                .setValue(UserCodec.FORMAT_KEY, codec.getFormat().name()).build());
+        compact(admin);
+        manager.refresh(table);
+
+        Measurement after = measure();
+        System.out.println("After:  " + after);
+        Report report = new Report(before, after);
+        System.out.println(report);
+        return report;
+    }
+
+    /**
+     * Size of the table on the RegionServers and the throughput of a full parallel scan decoding
+     * the province of every user.
+     */
+    public Measurement measure() throws IOException, InterruptedException {
+        Measurement measurement = new Measurement();
+        Admin admin = manager.getAdmin();
+        for (ServerName server : admin.getRegionServers()) {
+            for (RegionMetrics region : admin.getRegionMetrics(server, table)) {
+                measurement.storeFileBytes += bytes(region.getStoreFileSize());
+                measurement.uncompressedBytes += bytes(region.getUncompressedStoreFileSize());
+                measurement.memStoreBytes += bytes(region.getMemStoreSize());
+            }
+        }
+        AtomicLong cells = new AtomicLong();
+        AtomicLong cellBytes = new AtomicLong();
+        Scan scan = new Scan().addFamily(UsersSchema.FAMILY).setCaching(SCAN_CACHING);
+        ParallelScanner.ScanSummary summary = new ParallelScanner(manager, table).setVerbose(false).scan(scan, false, user -> {
+            UserCodec.value(user, UsersSchema.PROVINCE);
+            long size = 0;
+            for (Cell cell : user.rawCells()) {
+                size += cell.getSerializedSize();
+            }
+            cells.addAndGet(user.size());
+            cellBytes.addAndGet(size);
+        });
+        measurement.rows = summary.getRows();
+        measurement.cells = cells.get();
+        measurement.cellBytes = cellBytes.get();
+        measurement.scanNs = summary.getElapsedNs();
+        return measurement;
+    }
+
+    private void compact(Admin admin) throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        admin.flush(table);
+        admin.majorCompact(table);
+        // The request is asynchronous, give the RegionServers a moment to pick it up.
+        Thread.sleep(COMPACTION_POLL_MS);
+        while (admin.getCompactionState(table) != CompactionState.NONE) {
+            if (System.currentTimeMillis() - start > COMPACTION_TIMEOUT_MS) {
+                throw new InterruptedIOException("Major compaction of " + table + " still running after "
+                        + TimeUnit.MILLISECONDS.toMinutes(COMPACTION_TIMEOUT_MS) + " minutes");
+            }
+            Thread.sleep(COMPACTION_POLL_MS);
+        }
+        System.out.println("Flushed and major compacted in " + (System.currentTimeMillis() - start) + "ms.");
+    }
+
+    /**
+     * Text values of name, province and lastLogin of every version of the user, by timestamp.
+     */
+    private static Map<Long, byte[][]> versions(Result user) {
+        Map<Long, byte[][]> versions = new TreeMap<>();
+        for (Cell cell : user.rawCells()) {
+            byte[][] values = versions.computeIfAbsent(cell.getTimestamp(), ts -> new byte[COLUMNS.length][]);
+            boolean packed = CellUtil.matchingQualifier(cell, UserCodec.PACKED_QUALIFIER);
+            Result version = Result.create(new Cell[]{cell});
+            for (int i = 0; i < COLUMNS.length; i++) {
+                // A packed cell wins over single columns with the same timestamp, as UserCodec.value does.
+                if (packed || (values[i] == null && CellUtil.matchingQualifier(cell, COLUMNS[i]))) {
+                    values[i] = UserCodec.value(version, COLUMNS[i]);
+                }
+            }
+        }
+        return versions;
+    }
+
+    private static long bytes(Size size) {
+        return (long) size.get(Size.Unit.BYTE);
+    }
+
+    /**
+     * Size and scan throughput of the table at one point.
+     */
+    public static class Measurement {
+        private long storeFileBytes;
+        private long uncompressedBytes;
+        private long memStoreBytes;
+        private long rows;
+        private long cells;
+        private long cellBytes;
+        private long scanNs;
+
+        public long getStoreFileBytes() {
+            return storeFileBytes;
+        }
+
+        public long getCellBytes() {
+            return cellBytes;
+        }
+
+        public double getRowsPerSecond() {
+            return scanNs == 0 ? 0 : rows / (scanNs / 1e9);
+        }
+
+        public double getMbPerSecond() {
+            return scanNs == 0 ? 0 : cellBytes / (scanNs / 1e9) / (1024 * 1024);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("store files %.2f MB (%.2f MB uncompressed), memstore %.2f MB; %d rows, %d cells, "
+                            + "%.2f MB of cells (%.1f bytes/row); scan %dms, %.0f rows/s, %.2f MB/s",
+                    storeFileBytes / 1048576.0, uncompressedBytes / 1048576.0, memStoreBytes / 1048576.0, rows, cells,
+                    cellBytes / 1048576.0, rows == 0 ? 0 : (double) cellBytes / rows, scanNs / 1000000,
+                    getRowsPerSecond(), getMbPerSecond());
+        }
+    }
+
+    /**
+     * Comparison of the table before and after the migration.
+     */
+    public static class Report {
+        private final Measurement before;
+        private final Measurement after;
+
+        Report(Measurement before, Measurement after) {
+            this.before = before;
+            this.after = after;
+        }
+
+        public Measurement getBefore() {
+            return before;
+        }
+
+        public Measurement getAfter() {
+            return after;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Store files %+.1f%%, cell bytes %+.1f%%, scan rows/s %+.1f%%",
+                    change(before.storeFileBytes, after.storeFileBytes), change(before.cellBytes, after.cellBytes),
+                    change(before.getRowsPerSecond(), after.getRowsPerSecond()));
+        }
+
+        private static double change(double before, double after) {
+            return before == 0 ? 0 : (after - before) * 100 / before;
+        }
+    }
+}
@@ -0,0 +1,515 @@
+package es.upm.hbase.codec;
+
+import es.upm.hbase.UsersSchema;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.CompareOperator;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Admin;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.filter.BinaryComparator;
+import org.apache.hadoop.hbase.filter.BinaryPrefixComparator;
+import org.apache.hadoop.hbase.filter.ByteArrayComparable;
+import org.apache.hadoop.hbase.filter.Filter;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.SingleColumnValueFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Value encoding of the BasicData family, driven by the list of {@link Column}s of a user.
+ * <ul>
+ * <li>TEXT: every column as a UTF-8 string in its own cell, the original layout.</li>
+ * <li>BINARY: one cell per column, dates as 4-byte epoch days and dictionary columns as a
+ * 1-byte id (values outside the dictionary are written as 0xff followed by the text).</li>
+ * <li>PACKED: all the columns of the user, binary encoded, in the single cell "u". The province
+ * goes first, so that it can still be filtered on the server with a prefix comparator.</li>
+ * </ul>
+ * The readers recognise the encoding of every cell by itself, so a table keeps working while
+ * it is being migrated. The format new rows get is stored in the table descriptor.
+ */
+public final class UserCodec {
+    public enum Format {
+        TEXT, BINARY, PACKED
+    }
+
+    public enum Type {
+        STRING, DICTIONARY, DATE
+    }
+
+    /**
+     * One column of the user schema.
+     */
+    public static final class Column {
+        final byte[] qualifier;
+        final Type type;
+        final byte[][] dictionary;
+
+        Column(byte[] qualifier, Type type, String[] dictionary) {
+            this.qualifier = qualifier;
+            this.type = type;
+            this.dictionary = new byte[dictionary.length][];
+            for (int i = 0; i < dictionary.length; i++) {
+                this.dictionary[i] = Bytes.toBytes(dictionary[i]);
+            }
+        }
+    }
+
+    /**
+     * Receives the text of a value as a slice of an array that it must not keep nor modify.
+     */
+    public interface ValueSink {
+        void accept(byte[] array, int offset, int length) throws IOException;
+    }
+
+    public static final String FORMAT_KEY = "users.value.format";
+    public static final byte[] PACKED_QUALIFIER = Bytes.toBytes("u");
+    /**
+     * Size of the buffer {@link #write} needs.
+     */
+    public static final int BUFFER_SIZE = 1024;
+
+    private static final byte PACKED_VERSION = 1;
+    private static final int ESCAPE = 0xff;
+    private static final int DATE_LENGTH = 4;
+    private static final int TEXT_DATE_LENGTH = 10;
+
+    // Packed in this order, the province first so that filters can match the prefix of the cell.
+    private static final Column PROVINCE = new Column(UsersSchema.PROVINCE, Type.DICTIONARY, UsersSchema.PROVINCES);
+    private static final Column LAST_LOGIN = new Column(UsersSchema.LAST_LOGIN, Type.DATE, new String[0]);
+    private static final Column NAME = new Column(UsersSchema.NAME, Type.DICTIONARY, UsersSchema.NAMES);
+    private static final List<Column> COLUMNS = Arrays.asList(PROVINCE, LAST_LOGIN, NAME);
+
+    public static final UserCodec TEXT = new UserCodec(Format.TEXT);
+    public static final UserCodec BINARY = new UserCodec(Format.BINARY);
+    public static final UserCodec PACKED = new UserCodec(Format.PACKED);
+
+    private final Format format;
+
+    private UserCodec(Format format) {
+        this.format = format;
+    }
+
+    public static UserCodec of(Format format) {
+        switch (format) {
+            case BINARY:
+                return BINARY;
+            case PACKED:
+                return PACKED;
+            default:
+                return TEXT;
+        }
+    }
+
+    /**
+     * Codec new rows of the table are written with, TEXT when the descriptor does not say.
+     */
+    public static UserCodec forTable(Admin admin, TableName table) throws IOException {
+        if (!admin.tableExists(table)) {
+            return TEXT;
+        }
+        String format = admin.getDescriptor(table).getValue(FORMAT_KEY);
+        return format == null ? TEXT : of(Format.valueOf(format));
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    /**
+     * Adds the cells of a user to the put. name and province are UTF-8 text, buffer is scratch
+     * space of at least BUFFER_SIZE bytes that can be reused once this returns, as the put
+     * copies the values into its cells.
+     */
+    public void write(Put put, byte[] name, byte[] province, int year, int month, int day, byte[] buffer) {
+        int epochDay = epochDay(year, month, day);
+        switch (format) {
+            case TEXT:
+                add(put, UsersSchema.NAME, name, 0, name.length);
+                add(put, UsersSchema.PROVINCE, province, 0, province.length);
+                writeTextDate(buffer, 0, year, month, day);
+                add(put, UsersSchema.LAST_LOGIN, buffer, 0, TEXT_DATE_LENGTH);
+                break;
+            case BINARY:
+                int length = encode(NAME, name, 0, buffer, 0);
+                add(put, UsersSchema.NAME, buffer, 0, length);
+                length = encode(PROVINCE, province, 0, buffer, 0);
+                add(put, UsersSchema.PROVINCE, buffer, 0, length);
+                Bytes.putInt(buffer, 0, epochDay);
+                add(put, UsersSchema.LAST_LOGIN, buffer, 0, DATE_LENGTH);
+                break;
+            case PACKED:
+                // In the order of COLUMNS.
+                buffer[0] = PACKED_VERSION;
+                int offset = 1;
+                offset += encode(PROVINCE, province, epochDay, buffer, offset);
+                offset += encode(LAST_LOGIN, null, epochDay, buffer, offset);
+                offset += encode(NAME, name, epochDay, buffer, offset);
+                add(put, PACKED_QUALIFIER, buffer, 0, offset);
+                break;
+        }
+    }
+
+    /**
+     * Same as {@link #write(Put, byte[], byte[], int, int, int, byte[])} with the date as text.
+     */
+    public void write(Put put, byte[] name, byte[] province, String lastLogin) {
+        LocalDate date = LocalDate.parse(lastLogin);
+        write(put, name, province, date.getYear(), date.getMonthValue(), date.getDayOfMonth(), new byte[BUFFER_SIZE]);
+    }
+
+    /**
+     * Text value of a column of the user, whatever its encoding, null when missing.
+     */
+    public static byte[] value(Result result, byte[] qualifier) {
+        Cell packed = result.getColumnLatestCell(UsersSchema.FAMILY, PACKED_QUALIFIER);
+        Cell cell = result.getColumnLatestCell(UsersSchema.FAMILY, qualifier);
+        // While migrating a row can have both, the newest one wins.
+        if (packed != null && (cell == null || packed.getTimestamp() >= cell.getTimestamp())) {
+            return unpack(packed, qualifier);
+        }
+        return cell == null ? null : decode(column(qualifier), cell);
+    }
+
+    /**
+     * Passes the text value of a column of the user to the sink without copying it: straight from
+     * the cell backing array, the dictionary, or buffer for dates, which needs BUFFER_SIZE bytes.
+     * Returns false, without calling the sink, when the column is missing.
+     */
+    public static boolean writeValue(Result result, byte[] qualifier, byte[] buffer, ValueSink sink) throws IOException {
+        Cell packed = result.getColumnLatestCell(UsersSchema.FAMILY, PACKED_QUALIFIER);
+        Cell cell = result.getColumnLatestCell(UsersSchema.FAMILY, qualifier);
+        Column column = column(qualifier);
+        if (packed != null && (cell == null || packed.getTimestamp() >= cell.getTimestamp())) {
+            int offset = field(packed, qualifier);
+            if (offset < 0) {
+                return false;
+            }
+            byte[] array = packed.getValueArray();
+            switch (column.type) {
+                case DATE:
+                    writeDate(Bytes.toInt(array, offset), buffer, sink);
+                    return true;
+                case DICTIONARY:
+                    int id = array[offset] & 0xff;
+                    if (id != ESCAPE) {
+                        sink.accept(column.dictionary[id], 0, column.dictionary[id].length);
+                        return true;
+                    }
+                    // The escaped text follows, like a string.
+                    writeString(array, offset + 1, sink);
+                    return true;
+                default:
+                    writeString(array, offset, sink);
+                    return true;
+            }
+        }
+        if (cell == null) {
+            return false;
+        }
+        byte[] array = cell.getValueArray();
+        int offset = cell.getValueOffset();
+        int length = cell.getValueLength();
+        if (column != null && column.type == Type.DATE && length == DATE_LENGTH) {
+            writeDate(Bytes.toInt(array, offset), buffer, sink);
+        } else if (column != null && column.type == Type.DICTIONARY && length == 1
+                && (array[offset] & 0xff) < column.dictionary.length) {
+            byte[] text = column.dictionary[array[offset] & 0xff];
+            sink.accept(text, 0, text.length);
+        } else if (column != null && column.type == Type.DICTIONARY && length > 0 && (array[offset] & 0xff) == ESCAPE) {
+            sink.accept(array, offset + 2, array[offset + 1] & 0xff);
+        } else {
+            sink.accept(array, offset, length);
+        }
+        return true;
+    }
+
+    public static String get(Result result, byte[] qualifier) {
+        return Bytes.toString(value(result, qualifier));
+    }
+
+    /**
+     * Text of the value of a single put cell: the decoded value of a user column, every column as
+     * qualifier=value for a packed cell, and the escaped bytes for any other column.
+     */
+    public static String text(Cell cell) {
+        if (CellUtil.matchingQualifier(cell, PACKED_QUALIFIER)) {
+            StringBuilder text = new StringBuilder();
+            for (Column column : COLUMNS) {
+                if (text.length() > 0) {
+                    text.append(',');
+                }
+                text.append(Bytes.toString(column.qualifier)).append('=').append(Bytes.toString(unpack(cell, column.qualifier)));
+            }
+            return text.toString();
+        }
+        Column column = column(CellUtil.cloneQualifier(cell));
+        return column == null ? Bytes.toStringBinary(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength())
+                : Bytes.toString(decode(column, cell));
+    }
+
+    /**
+     * Text value of a column of a put being written, whatever its encoding, null when it has none.
+     */
+    public static byte[] value(Put put, byte[] qualifier) {
+        List<Cell> packed = put.get(UsersSchema.FAMILY, PACKED_QUALIFIER);
+        if (!packed.isEmpty()) {
+            return unpack(packed.get(0), qualifier);
+        }
+        List<Cell> cells = put.get(UsersSchema.FAMILY, qualifier);
+        return cells.isEmpty() ? null : decode(column(qualifier), cells.get(0));
+    }
+
+    /**
+     * Versions of the user, newest first, each one as the text values of the qualifiers.
+     */
+    public static List<String[]> versions(Result result, byte[]... qualifiers) {
+        List<String[]> versions = new ArrayList<>();
+        List<Cell> packed = result.getColumnCells(UsersSchema.FAMILY, PACKED_QUALIFIER);
+        for (Cell cell : packed) {
+            String[] values = new String[qualifiers.length];
+            for (int i = 0; i < qualifiers.length; i++) {
+                values[i] = Bytes.toString(unpack(cell, qualifiers[i]));
+            }
+            versions.add(values);
+        }
+        if (!packed.isEmpty()) {
+            return versions;
+        }
+        List<List<Cell>> columns = new ArrayList<>();
+        int count = Integer.MAX_VALUE;
+        for (byte[] qualifier : qualifiers) {
+            List<Cell> cells = result.getColumnCells(UsersSchema.FAMILY, qualifier);
+            columns.add(cells);
+            count = Math.min(count, cells.size());
+        }
+        for (int v = 0; v < count && !columns.isEmpty(); v++) {
+            String[] values = new String[qualifiers.length];
+            for (int i = 0; i < qualifiers.length; i++) {
+                values[i] = Bytes.toString(decode(column(qualifiers[i]), columns.get(i).get(v)));
+            }
+            versions.add(values);
+        }
+        return versions;
+    }
+
+    /**
+     * Adds the columns, and the packed cell that may hold them, to the get.
+     */
+    public static Get addColumns(Get get, byte[]... qualifiers) {
+        for (byte[] qualifier : qualifiers) {
+            get.addColumn(UsersSchema.FAMILY, qualifier);
+        }
+        return get.addColumn(UsersSchema.FAMILY, PACKED_QUALIFIER);
+    }
+
+    public static Scan addColumns(Scan scan, byte[]... qualifiers) {
+        for (byte[] qualifier : qualifiers) {
+            scan.addColumn(UsersSchema.FAMILY, qualifier);
+        }
+        return scan.addColumn(UsersSchema.FAMILY, PACKED_QUALIFIER);
+    }
+
+    /**
+     * Server-side filter of the users of a province in any of the encodings.
+     */
+    public static Filter provinceFilter(byte[] province) {
+        byte[] binary = new byte[2 + province.length];
+        int length = encode(PROVINCE, province, 0, binary, 0);
+        byte[] packedPrefix = Bytes.add(new byte[]{PACKED_VERSION}, Arrays.copyOf(binary, length));
+        FilterList filters = new FilterList(FilterList.Operator.MUST_PASS_ONE);
+        filters.addFilter(columnFilter(UsersSchema.PROVINCE, new BinaryComparator(province)));
+        filters.addFilter(columnFilter(UsersSchema.PROVINCE, new BinaryComparator(Arrays.copyOf(binary, length))));
+        filters.addFilter(columnFilter(PACKED_QUALIFIER, new BinaryPrefixComparator(packedPrefix)));
+        return filters;
+    }
+
+    private static SingleColumnValueFilter columnFilter(byte[] qualifier, ByteArrayComparable comparator) {
+        SingleColumnValueFilter filter = new SingleColumnValueFilter(UsersSchema.FAMILY, qualifier, CompareOperator.EQUAL, comparator);
+        filter.setFilterIfMissing(true);
+        return filter;
+    }
+
+    private static void add(Put put, byte[] qualifier, byte[] value, int offset, int length) {
+        byte[] row = put.getRow();
+        try {
+            put.add(new KeyValue(row, 0, row.length, UsersSchema.FAMILY, 0, UsersSchema.FAMILY.length,
+                    qualifier, 0, qualifier.length, put.getTimestamp(), KeyValue.Type.Put, value, offset, length));
+        } catch (IOException e) {
+            // Only thrown when the row of the cell is not the row of the put.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Binary encoding of a column value into buffer at offset, returns its length.
+     */
+    private static int encode(Column column, byte[] text, int epochDay, byte[] buffer, int offset) {
+        switch (column.type) {
+            case DATE:
+                Bytes.putInt(buffer, offset, epochDay);
+                return DATE_LENGTH;
+            case DICTIONARY:
+                for (int id = 0; id < column.dictionary.length; id++) {
+                    if (Bytes.equals(column.dictionary[id], text)) {
+                        buffer[offset] = (byte) id;
+                        return 1;
+                    }
+                }
+                buffer[offset] = (byte) ESCAPE;
+                return 1 + writeString(text, buffer, offset + 1);
+            default:
+                return writeString(text, buffer, offset);
+        }
+    }
+
+    private static int writeString(byte[] text, byte[] buffer, int offset) {
+        if (text.length > 255) {
+            throw new IllegalArgumentException("Values longer than 255 bytes cannot be binary encoded");
+        }
+        buffer[offset] = (byte) text.length;
+        System.arraycopy(text, 0, buffer, offset + 1, text.length);
+        return 1 + text.length;
+    }
+
+    /**
+     * Text value of a cell of a single column in TEXT or BINARY encoding.
+     */
+    private static byte[] decode(Column column, Cell cell) {
+        byte[] array = cell.getValueArray();
+        int offset = cell.getValueOffset();
+        int length = cell.getValueLength();
+        if (column != null && column.type == Type.DATE && length == DATE_LENGTH) {
+            return formatDate(Bytes.toInt(array, offset));
+        }
+        if (column != null && column.type == Type.DICTIONARY && length > 0) {
+            int id = array[offset] & 0xff;
+            if (length == 1 && id < column.dictionary.length) {
+                return column.dictionary[id];
+            }
+            if (id == ESCAPE) {
+                return Arrays.copyOfRange(array, offset + 2, offset + 2 + (array[offset + 1] & 0xff));
+            }
+        }
+        return CellUtil.cloneValue(cell);
+    }
+
+    private static byte[] unpack(Cell cell, byte[] qualifier) {
+        int offset = field(cell, qualifier);
+        if (offset < 0) {
+            return null;
+        }
+        byte[] array = cell.getValueArray();
+        Column column = column(qualifier);
+        switch (column.type) {
+            case DATE:
+                return formatDate(Bytes.toInt(array, offset));
+            case DICTIONARY:
+                int id = array[offset] & 0xff;
+                // The escaped text follows, like a string.
+                return id != ESCAPE ? column.dictionary[id] : readString(array, offset + 1);
+            default:
+                return readString(array, offset);
+        }
+    }
+
+    /**
+     * Offset in the value array of a packed cell where the column starts, -1 when the schema
+     * has no such column.
+     */
+    private static int field(Cell cell, byte[] qualifier) {
+        byte[] array = cell.getValueArray();
+        int offset = cell.getValueOffset() + 1;
+        for (Column column : COLUMNS) {
+            if (Bytes.equals(column.qualifier, qualifier)) {
+                return offset;
+            }
+            switch (column.type) {
+                case DATE:
+                    offset += DATE_LENGTH;
+                    break;
+                case DICTIONARY:
+                    // The escaped text follows, like a string.
+                    offset = (array[offset] & 0xff) != ESCAPE ? offset + 1 : skipString(array, offset + 1);
+                    break;
+                default:
+                    offset = skipString(array, offset);
+            }
+        }
+        return -1;
+    }
+
+    // Strings of packed cells are one length byte followed by their bytes
+    private static byte[] readString(byte[] array, int offset) {
+        return Arrays.copyOfRange(array, offset + 1, skipString(array, offset));
+    }
+
+    private static void writeString(byte[] array, int offset, ValueSink sink) throws IOException {
+        sink.accept(array, offset + 1, array[offset] & 0xff);
+    }
+
+    private static int skipString(byte[] array, int offset) {
+        return offset + 1 + (array[offset] & 0xff);
+    }
+
+    private static Column column(byte[] qualifier) {
+        for (Column column : COLUMNS) {
+            if (Bytes.equals(column.qualifier, qualifier)) {
+                return column;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Days since 1970-01-01 of a proleptic Gregorian date, without building a LocalDate.
+     */
+    static int epochDay(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static byte[] formatDate(int epochDay) {
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+        byte[] text = new byte[TEXT_DATE_LENGTH];
+        writeTextDate(text, 0, date.getYear(), date.getMonthValue(), date.getDayOfMonth());
+        return text;
+    }
+
+    private static void writeDate(int epochDay, byte[] buffer, ValueSink sink) throws IOException {
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+        writeTextDate(buffer, 0, date.getYear(), date.getMonthValue(), date.getDayOfMonth());
+        sink.accept(buffer, 0, TEXT_DATE_LENGTH);
+    }
+
+    private static void writeTextDate(byte[] buffer, int offset, int year, int month, int day) {
+        buffer[offset] = (byte) ('0' + year / 1000 % 10);
+        buffer[offset + 1] = (byte) ('0' + year / 100 % 10);
+        buffer[offset + 2] = (byte) ('0' + year / 10 % 10);
+        buffer[offset + 3] = (byte) ('0' + year % 10);
+        buffer[offset + 4] = '-';
+        buffer[offset + 5] = (byte) ('0' + month / 10);
+        buffer[offset + 6] = (byte) ('0' + month % 10);
+        buffer[offset + 7] = '-';
+        buffer[offset + 8] = (byte) ('0' + day / 10);
+        buffer[offset + 9] = (byte) ('0' + day % 10);
+    }
+
+    @Override
+    public String toString() {
+        return format.name();
+    }
+}
@@ -0,0 +1,209 @@
+package es.upm.hbase.connection;
+
+import es.upm.hbase.metrics.ClientMetrics;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HRegionLocation;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Admin;
+import org.apache.hadoop.hbase.client.AsyncConnection;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hbase.client.ConnectionFactory;
+import org.apache.hadoop.hbase.client.MetricsConnection;
+import org.apache.hadoop.hbase.client.RegionLocator;
+import org.apache.hadoop.hbase.client.Table;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Owns the single, thread-safe {@link Connection} of the application and hands out cached
+ * {@link Table}, {@link Admin} and {@link RegionLocator} handles.
+ *
+ * Those handles are cheap but not thread-safe, so they are cached per calling thread and must
+ * not be closed by the caller. The handles of threads that have finished are closed the next
+ * time any thread opens one, and the rest together with the connection in {@link #close()}.
+ * Short-lived pool threads should still open their own handles from {@link #getConnection()}
+ * with try-with-resources.
+ *
+ * The operations run through the connection are measured in its {@link ClientMetrics}, and the
+ * client-side metrics of HBase are enabled unless the configuration says otherwise.
+ */
+public class ConnectionManager implements Closeable {
+    private final Connection connection;
+    private final ClientMetrics metrics = new ClientMetrics();
+    private final ThreadLocal<Map<TableName, Table>> tables = ThreadLocal.withInitial(HashMap::new);
+    private final ThreadLocal<Map<TableName, RegionLocator>> locators = ThreadLocal.withInitial(HashMap::new);
+    private final ThreadLocal<Admin> admins = new ThreadLocal<>();
+    private final ConcurrentHashMap<Thread, ConcurrentLinkedQueue<Closeable>> handles = new ConcurrentHashMap<>();
+    private volatile AsyncConnection asyncConnection;
+    private volatile boolean closed = false;
+
+    public ConnectionManager() throws IOException {
+        this(HBaseConfiguration.create());
+    }
+
+    public ConnectionManager(Configuration conf) throws IOException {
+        if (conf.get(MetricsConnection.CLIENT_SIDE_METRICS_ENABLED_KEY) == null) {
+            conf = new Configuration(conf);
+            conf.setBoolean(MetricsConnection.CLIENT_SIDE_METRICS_ENABLED_KEY, true);
+        }
+        this.connection = ConnectionFactory.createConnection(conf);
+    }
+
+    public Connection getConnection() {
+        checkOpen();
+        return connection;
+    }
+
+    /**
+     * Asynchronous connection sharing the configuration of the blocking one, opened on first use.
+     * Its tables are thread-safe and can be obtained from it directly.
+     */
+    public AsyncConnection getAsyncConnection() throws IOException {
+        checkOpen();
+        if (asyncConnection == null) {
+            synchronized (this) {
+                if (asyncConnection == null) {
+                    try {
+                        asyncConnection = ConnectionFactory.createAsyncConnection(connection.getConfiguration()).get();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while opening the async connection", e);
+                    } catch (ExecutionException e) {
+                        throw new IOException("Cannot open the async connection", e.getCause());
+                    }
+                }
+            }
+        }
+        return asyncConnection;
+    }
+
+    public ClientMetrics getMetrics() {
+        return metrics;
+    }
+
+    public Configuration getConfiguration() {
+        return connection.getConfiguration();
+    }
+
+    public Table getTable(TableName tableName) throws IOException {
+        checkOpen();
+        Map<TableName, Table> cache = tables.get();
+        Table t = cache.get(tableName);
+        if (t == null) {
+            t = connection.getTable(tableName);
+            cache.put(tableName, t);
+            track(t);
+        }
+        return t;
+    }
+
+    public RegionLocator getRegionLocator(TableName tableName) throws IOException {
+        checkOpen();
+        Map<TableName, RegionLocator> cache = locators.get();
+        RegionLocator locator = cache.get(tableName);
+        if (locator == null) {
+            locator = connection.getRegionLocator(tableName);
+            cache.put(tableName, locator);
+            track(locator);
+        }
+        return locator;
+    }
+
+    public Admin getAdmin() throws IOException {
+        checkOpen();
+        Admin admin = admins.get();
+        if (admin == null) {
+            admin = connection.getAdmin();
+            admins.set(admin);
+            track(admin);
+        }
+        return admin;
+    }
+
+    /**
+     * Loads every region location of the table into the connection cache so that the first
+     * operations do not pay for the meta lookups. Missing tables are ignored.
+     */
+    public void warmUp(TableName tableName) throws IOException {
+        checkOpen();
+        if (!getAdmin().tableExists(tableName)) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        List<HRegionLocation> locations = getRegionLocator(tableName).getAllRegionLocations();
+        long finish = System.currentTimeMillis();
+        System.out.println("Warmed up " + locations.size() + " region locations of " + tableName
+                + " in " + (finish - start) + "ms.");
+    }
+
+    /**
+     * Drops the cached locations and loads them again, to be called after the layout of a table
+     * changes (create, delete, split, merge or move).
+     */
+    public void refresh(TableName tableName) throws IOException {
+        checkOpen();
+        connection.clearRegionLocationCache();
+        warmUp(tableName);
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (Thread thread : handles.keySet()) {
+            closeHandles(thread);
+        }
+        if (asyncConnection != null) {
+            asyncConnection.close();
+        }
+        connection.close();
+        metrics.close();
+    }
+
+    /**
+     * Keeps the handle of the calling thread until the thread ends or the manager is closed, and
+     * closes those of the threads that have already ended.
+     */
+    private void track(Closeable handle) {
+        handles.computeIfAbsent(Thread.currentThread(), thread -> new ConcurrentLinkedQueue<>()).add(handle);
+        for (Thread thread : handles.keySet()) {
+            if (!thread.isAlive()) {
+                closeHandles(thread);
+            }
+        }
+    }
+
+    private void closeHandles(Thread thread) {
+        ConcurrentLinkedQueue<Closeable> owned = handles.remove(thread);
+        if (owned == null) {
+            return;
+        }
+        for (Closeable handle : owned) {
+            try {
+                handle.close();
+            } catch (IOException e) {
+                System.out.println("Error closing " + handle + ": " + e);
+            }
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Connection manager already closed");
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package es.upm.hbase.export;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Reads back the files of {@link ColumnarFileSink}, one row group at a time.
+ */
+public class ColumnarFileReader implements AutoCloseable {
+
+    /**
+     * Receives the rows of a file, a null value being a missing column. The key is binary and
+     * comes as Bytes.toStringBinary renders it.
+     */
+    public interface RowConsumer {
+        void accept(String[] row) throws IOException;
+    }
+
+    private final RandomAccessFile file;
+    private final String[] columns;
+    private final long[] groupOffsets;
+    private final int[] groupRows;
+    private final long footerStart;
+
+    public ColumnarFileReader(Path path) throws IOException {
+        this.file = new RandomAccessFile(path.toFile(), "r");
+        try {
+            byte[] magic = new byte[ColumnarFileSink.MAGIC.length];
+            file.readFully(magic);
+            if (!Arrays.equals(magic, ColumnarFileSink.MAGIC) || file.readByte() != ColumnarFileSink.VERSION) {
+                throw new IOException(path + " is not a columnar export file");
+            }
+            file.seek(file.length() - 4 - magic.length);
+            int footerLength = file.readInt();
+            footerStart = file.length() - 4 - magic.length - footerLength;
+            file.seek(footerStart);
+            columns = new String[file.readInt()];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = file.readUTF();
+            }
+            int groups = file.readInt();
+            groupOffsets = new long[groups];
+            groupRows = new int[groups];
+            for (int i = 0; i < groups; i++) {
+                groupOffsets[i] = file.readLong();
+                groupRows[i] = file.readInt();
+            }
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    public String[] getColumns() {
+        return columns.clone();
+    }
+
+    public long getRows() {
+        long rows = 0;
+        for (int count : groupRows) {
+            rows += count;
+        }
+        return rows;
+    }
+
+    public void read(RowConsumer consumer) throws IOException {
+        for (int g = 0; g < groupOffsets.length; g++) {
+            int rows = groupRows[g];
+            long end = g + 1 < groupOffsets.length ? groupOffsets[g + 1] : footerStart;
+            byte[] group = new byte[(int) (end - groupOffsets[g])];
+            file.seek(groupOffsets[g]);
+            file.readFully(group);
+            ByteBuffer buffer = ByteBuffer.wrap(group);
+            String[][] values = new String[rows][columns.length];
+            for (int c = 0; c < columns.length; c++) {
+                int validity = buffer.position();
+                int offsets = validity + (rows + 7) / 8;
+                int data = offsets + 4 * (rows + 1);
+                for (int i = 0; i < rows; i++) {
+                    if ((group[validity + (i >> 3)] & (1 << (i & 7))) != 0) {
+                        int from = buffer.getInt(offsets + 4 * i);
+                        int to = buffer.getInt(offsets + 4 * (i + 1));
+                        values[i][c] = c == 0 ? Bytes.toStringBinary(group, data + from, to - from)
+                                : new String(group, data + from, to - from, StandardCharsets.UTF_8);
+                    }
+                }
+                buffer.position(data + buffer.getInt(offsets + 4 * rows));
+            }
+            for (String[] row : values) {
+                consumer.accept(row);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,171 @@
+package es.upm.hbase.export;
+
+import es.upm.hbase.codec.UserCodec;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Writes the users column by column, in row groups, with the buffer layout of Arrow binary
+ * columns and a footer locating the groups like Parquet does:
+ * <pre>
+ * "UCOL" version(1)
+ * row group, for every column:   validity bitmap, ceil(rows / 8) bytes, bit set when present
+ *                                offsets, rows + 1 ints, value i is data[offsets[i], offsets[i + 1])
+ *                                data, the UTF-8 values one after the other
+ * footer:                        columns, name of each column, groups, offset and rows of each group
+ * footer length(4) "UCOL"
+ * </pre>
+ * Numbers are big endian. Only the current row group is kept in memory, a group is written when
+ * it reaches groupRows rows or groupBytes bytes of values, and the values are copied once, from
+ * the cells into the column buffers. {@link ColumnarFileReader} reads the files back.
+ */
+public class ColumnarFileSink extends UserFileSink {
+    static final byte[] MAGIC = Bytes.toBytes("UCOL");
+    static final byte VERSION = 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final DataOutputStream out;
+    private final int groupRows;
+    private final int groupBytes;
+    private final Column[] columns = new Column[HEADER.length];
+    private final byte[] buffer = new byte[UserCodec.BUFFER_SIZE];
+    private final List<long[]> groups = new ArrayList<>();
+    private int groupSize = 0;
+    private int bufferedBytes = 0;
+    private long rows = 0;
+
+    public ColumnarFileSink(Path file, int groupRows, int groupBytes) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE));
+        this.groupRows = groupRows;
+        this.groupBytes = groupBytes;
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = new Column(groupRows);
+        }
+        out.write(MAGIC);
+        out.writeByte(VERSION);
+    }
+
+    public ColumnarFileSink(Path file) throws IOException {
+        this(file, 64 * 1024, 8 * 1024 * 1024);
+    }
+
+    @Override
+    public void accept(Result result) throws IOException {
+        Cell[] cells = result.rawCells();
+        if (cells == null || cells.length == 0) {
+            return;
+        }
+        columns[0].accept(cells[0].getRowArray(), cells[0].getRowOffset(), cells[0].getRowLength());
+        for (int i = 0; i < COLUMNS.length; i++) {
+            Column column = columns[i + 1];
+            if (!UserCodec.writeValue(result, COLUMNS[i], buffer, column)) {
+                column.missing();
+            }
+        }
+        groupSize++;
+        rows++;
+        bufferedBytes = 0;
+        for (Column column : columns) {
+            bufferedBytes += column.offsets[groupSize];
+        }
+        if (groupSize == groupRows || bufferedBytes >= groupBytes) {
+            writeGroup();
+        }
+    }
+
+    private void writeGroup() throws IOException {
+        if (groupSize == 0) {
+            return;
+        }
+        groups.add(new long[]{out.size(), groupSize});
+        for (Column column : columns) {
+            out.write(column.validity, 0, (groupSize + 7) / 8);
+            for (int i = 0; i <= groupSize; i++) {
+                out.writeInt(column.offsets[i]);
+            }
+            out.write(column.data, 0, column.offsets[groupSize]);
+            column.clear();
+        }
+        groupSize = 0;
+        bufferedBytes = 0;
+    }
+
+    @Override
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * Bytes written plus the values of the current group. DataOutputStream counts in an int,
+     * which is plenty for files rolled at a few hundred MB.
+     */
+    @Override
+    public long getBytes() {
+        return out.size() + bufferedBytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            writeGroup();
+            int start = out.size();
+            out.writeInt(HEADER.length);
+            for (String name : HEADER) {
+                out.writeUTF(name);
+            }
+            out.writeInt(groups.size());
+            for (long[] group : groups) {
+                out.writeLong(group[0]);
+                out.writeInt((int) group[1]);
+            }
+            out.writeInt(out.size() - start);
+            out.write(MAGIC);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Buffers of one column of the current group.
+     */
+    private final class Column implements UserCodec.ValueSink {
+        final byte[] validity;
+        final int[] offsets;
+        byte[] data = new byte[64 * 1024];
+
+        Column(int groupRows) {
+            this.validity = new byte[(groupRows + 7) / 8];
+            this.offsets = new int[groupRows + 1];
+        }
+
+        @Override
+        public void accept(byte[] array, int offset, int length) {
+            int end = offsets[groupSize];
+            if (end + length > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, end + length));
+            }
+            System.arraycopy(array, offset, data, end, length);
+            validity[groupSize >> 3] |= 1 << (groupSize & 7);
+            offsets[groupSize + 1] = end + length;
+        }
+
+        void missing() {
+            offsets[groupSize + 1] = offsets[groupSize];
+        }
+
+        void clear() {
+            Arrays.fill(validity, (byte) 0);
+            offsets[0] = 0;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package es.upm.hbase.export;
+
+import es.upm.hbase.codec.UserCodec;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes the users as RFC 4180 CSV with a header line. Values go from the cell backing arrays
+ * into the output buffer; only those holding a comma, quote or line break are quoted. Row keys
+ * may be binary, so they are escaped like Bytes.toStringBinary does.
+ */
+public class CsvFileSink extends UserFileSink {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] HEX = Bytes.toBytes("0123456789ABCDEF");
+    // The characters Bytes.toStringBinary leaves as they are
+    private static final boolean[] PRINTABLE = new boolean[128];
+
+    static {
+        for (char c : "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz `~!@#$%^&*()-_=+[]{}|;:'\",.<>/?"
+                .toCharArray()) {
+            PRINTABLE[c] = true;
+        }
+    }
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[UserCodec.BUFFER_SIZE];
+    private final UserCodec.ValueSink field = this::writeField;
+    private byte[] key = new byte[256];
+    private long rows = 0;
+    private long bytes = 0;
+
+    public CsvFileSink(Path file) throws IOException {
+        this.out = new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE);
+        byte[] header = Bytes.toBytes(String.join(",", HEADER) + "\n");
+        write(header, 0, header.length);
+    }
+
+    @Override
+    public void accept(Result result) throws IOException {
+        Cell[] cells = result.rawCells();
+        if (cells == null || cells.length == 0) {
+            return;
+        }
+        writeKey(cells[0].getRowArray(), cells[0].getRowOffset(), cells[0].getRowLength());
+        for (byte[] column : COLUMNS) {
+            writeByte(',');
+            UserCodec.writeValue(result, column, buffer, field);
+        }
+        writeByte('\n');
+        rows++;
+    }
+
+    private void writeKey(byte[] array, int offset, int length) throws IOException {
+        if (key.length < 4 * length) {
+            key = new byte[4 * length];
+        }
+        int end = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int b = array[i] & 0xff;
+            if (b < 128 && PRINTABLE[b]) {
+                key[end++] = (byte) b;
+            } else {
+                key[end++] = '\\';
+                key[end++] = 'x';
+                key[end++] = HEX[b >> 4];
+                key[end++] = HEX[b & 0xf];
+            }
+        }
+        writeField(key, 0, end);
+    }
+
+    private void writeField(byte[] array, int offset, int length) throws IOException {
+        boolean quote = false;
+        for (int i = offset; i < offset + length && !quote; i++) {
+            byte b = array[i];
+            quote = b == ',' || b == '"' || b == '\n' || b == '\r';
+        }
+        if (!quote) {
+            write(array, offset, length);
+            return;
+        }
+        writeByte('"');
+        int from = offset;
+        for (int i = offset; i < offset + length; i++) {
+            if (array[i] == '"') {
+                // Quotes inside a quoted field are doubled
+                write(array, from, i - from + 1);
+                from = i;
+            }
+        }
+        write(array, from, offset + length - from);
+        writeByte('"');
+    }
+
+    private void write(byte[] array, int offset, int length) throws IOException {
+        out.write(array, offset, length);
+        bytes += length;
+    }
+
+    private void writeByte(char c) throws IOException {
+        out.write(c);
+        bytes++;
+    }
+
+    @Override
+    public long getRows() {
+        return rows;
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
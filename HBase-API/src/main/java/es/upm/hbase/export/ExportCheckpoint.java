@@ -0,0 +1,121 @@
+package es.upm.hbase.export;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Progress of an export, kept in a text file of the export directory: the format, then one line
+ * per key range with its bounds, the last row written to a closed file, the number of the next
+ * file and whether the range is done. Keys are written with Bytes.toStringBinary.
+ *
+ * The ranges are those of the regions when the export started; a resumed export scans the same
+ * ranges whatever the regions are by then. Every update rewrites the file into a temporary one
+ * that is then moved over it, so a crash leaves either the old or the new checkpoint.
+ */
+public class ExportCheckpoint {
+    public static final String FILE_NAME = "_checkpoint";
+
+    private final Path file;
+    private final String format;
+    private final List<Range> ranges;
+
+    private ExportCheckpoint(Path file, String format, List<Range> ranges) {
+        this.file = file;
+        this.format = format;
+        this.ranges = ranges;
+    }
+
+    public static ExportCheckpoint create(Path directory, String format, List<Range> ranges) throws IOException {
+        ExportCheckpoint checkpoint = new ExportCheckpoint(directory.resolve(FILE_NAME), format, ranges);
+        checkpoint.save();
+        return checkpoint;
+    }
+
+    /**
+     * Checkpoint of the directory, null when there is none.
+     */
+    public static ExportCheckpoint load(Path directory) throws IOException {
+        Path file = directory.resolve(FILE_NAME);
+        if (!Files.exists(file)) {
+            return null;
+        }
+        List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        List<Range> ranges = new ArrayList<>();
+        for (String line : lines.subList(1, lines.size())) {
+            String[] fields = line.split("\t", -1);
+            Range range = new Range(Integer.parseInt(fields[0]), Bytes.toBytesBinary(fields[1]),
+                    Bytes.toBytesBinary(fields[2]));
+            range.lastRow = fields[3].isEmpty() ? null : Bytes.toBytesBinary(fields[3]);
+            range.nextPart = Integer.parseInt(fields[4]);
+            range.done = Boolean.parseBoolean(fields[5]);
+            ranges.add(range);
+        }
+        return new ExportCheckpoint(file, lines.get(0), ranges);
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public List<Range> getRanges() {
+        return Collections.unmodifiableList(ranges);
+    }
+
+    /**
+     * Records that the rows of the range up to lastRow are in closed files.
+     */
+    public synchronized void update(Range range, byte[] lastRow, int nextPart, boolean done) throws IOException {
+        range.lastRow = lastRow;
+        range.nextPart = nextPart;
+        range.done = done;
+        save();
+    }
+
+    private synchronized void save() throws IOException {
+        StringBuilder text = new StringBuilder(format).append('\n');
+        for (Range range : ranges) {
+            text.append(range.index).append('\t').append(Bytes.toStringBinary(range.startRow)).append('\t')
+                    .append(Bytes.toStringBinary(range.stopRow)).append('\t')
+                    .append(range.lastRow == null ? "" : Bytes.toStringBinary(range.lastRow)).append('\t')
+                    .append(range.nextPart).append('\t').append(range.done).append('\n');
+        }
+        Path temporary = file.resolveSibling(FILE_NAME + ".tmp");
+        Files.write(temporary, text.toString().getBytes(StandardCharsets.UTF_8));
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * A key range [startRow, stopRow) exported into its own series of files.
+     */
+    public static class Range {
+        final int index;
+        final byte[] startRow;
+        final byte[] stopRow;
+        byte[] lastRow;
+        int nextPart;
+        boolean done;
+
+        public Range(int index, byte[] startRow, byte[] stopRow) {
+            this.index = index;
+            this.startRow = startRow;
+            this.stopRow = stopRow;
+        }
+
+        public boolean isDone() {
+            return done;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + Bytes.toStringBinary(startRow) + ", " + Bytes.toStringBinary(stopRow) + ")";
+        }
+    }
+}
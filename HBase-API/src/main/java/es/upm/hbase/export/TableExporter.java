@@ -0,0 +1,273 @@
+package es.upm.hbase.export;
+
+import es.upm.hbase.codec.UserCodec;
+import es.upm.hbase.connection.ConnectionManager;
+import es.upm.hbase.metrics.Operation;
+import es.upm.hbase.metrics.OperationMetrics;
+import es.upm.hbase.scan.RegionRange;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.Table;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Exports the users of a table into local files, one series of files per region, scanned in
+ * parallel.
+ *
+ * Each region range is scanned on its own and written to part-RRRRR-PPPPP files, rolled when a
+ * file reaches rollBytes. A file is written under a .tmp name and renamed when closed, and only
+ * then is the last row it holds recorded in the {@link ExportCheckpoint} of the directory. An
+ * export run again on the same directory continues every range after its last recorded row,
+ * rewriting at most the file that was open when it stopped.
+ *
+ * Memory stays bounded whatever the table size: at most threads ranges are open at a time, each
+ * with one scanner of caching rows and one file buffer or row group.
+ */
+public class TableExporter {
+    public enum Format {
+        CSV(".csv"), COLUMNAR(".ucol");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        UserFileSink open(Path file) throws IOException {
+            return this == CSV ? new CsvFileSink(file) : new ColumnarFileSink(file);
+        }
+    }
+
+    private static final long MAX_ROLL_BYTES = 1024L * 1024 * 1024;
+
+    private final ConnectionManager manager;
+    private final TableName table;
+    private Format format = Format.CSV;
+    private long rollBytes = 128L * 1024 * 1024;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private int caching = 1000;
+
+    public TableExporter(ConnectionManager manager, TableName table) {
+        this.manager = manager;
+        this.table = table;
+    }
+
+    public TableExporter setFormat(Format format) {
+        this.format = format;
+        return this;
+    }
+
+    /**
+     * Size at which a file is closed and the next one started, at most 1 GB.
+     */
+    public TableExporter setRollBytes(long rollBytes) {
+        this.rollBytes = Math.max(1, Math.min(rollBytes, MAX_ROLL_BYTES));
+        return this;
+    }
+
+    public TableExporter setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+        return this;
+    }
+
+    public TableExporter setCaching(int caching) {
+        this.caching = caching;
+        return this;
+    }
+
+    /**
+     * Exports the whole table, or resumes the export the directory holds.
+     */
+    public Summary export(Path directory) throws IOException, InterruptedException {
+        return export(directory, HConstants.EMPTY_START_ROW, HConstants.EMPTY_END_ROW);
+    }
+
+    /**
+     * Exports [startRow, stopRow) into the directory. When the directory holds the checkpoint of
+     * an unfinished export that one is resumed instead, with its own ranges and format.
+     */
+    public Summary export(Path directory, byte[] startRow, byte[] stopRow) throws IOException, InterruptedException {
+        Files.createDirectories(directory);
+        ExportCheckpoint checkpoint = ExportCheckpoint.load(directory);
+        if (checkpoint == null) {
+            List<ExportCheckpoint.Range> ranges = new ArrayList<>();
+            for (RegionRange range : RegionRange.split(manager.getRegionLocator(table).getAllRegionLocations(),
+                    startRow, stopRow)) {
+                ranges.add(new ExportCheckpoint.Range(ranges.size(), range.getStartRow(), range.getStopRow()));
+            }
+            checkpoint = ExportCheckpoint.create(directory, format.name(), ranges);
+        } else if (!checkpoint.getFormat().equals(format.name())) {
+            throw new IOException(directory + " holds a " + checkpoint.getFormat() + " export, not " + format);
+        }
+
+        List<ExportCheckpoint.Range> pending = new ArrayList<>();
+        for (ExportCheckpoint.Range range : checkpoint.getRanges()) {
+            if (!range.isDone()) {
+                pending.add(range);
+            }
+        }
+        int total = checkpoint.getRanges().size();
+        if (pending.size() < total) {
+            System.out.println(String.format("Resuming the export in %s: %d of %d ranges already done.", directory,
+                    total - pending.size(), total));
+        }
+
+        Summary summary = new Summary();
+        Scan template = UserCodec.addColumns(new Scan(), UserFileSink.COLUMNS).setCaching(caching)
+                .setCacheBlocks(false).setScanMetricsEnabled(true);
+        ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, pending.size())));
+        try {
+            List<Future<?>> tasks = new ArrayList<>();
+            ExportCheckpoint progress = checkpoint;
+            for (ExportCheckpoint.Range range : pending) {
+                tasks.add(workers.submit(() -> {
+                    exportRange(template, range, directory, progress, summary);
+                    return null;
+                }));
+            }
+            for (int i = 0; i < tasks.size(); i++) {
+                try {
+                    tasks.get(i).get();
+                    System.out.println(String.format("Range %d/%d %s exported - %d/%d done", pending.get(i).index + 1,
+                            total, pending.get(i), i + 1, tasks.size()));
+                } catch (ExecutionException e) {
+                    throw new IOException("Export of " + pending.get(i) + " failed, run it again to resume", e.getCause());
+                }
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+        summary.finish();
+        System.out.println(summary);
+        return summary;
+    }
+
+    private void exportRange(Scan template, ExportCheckpoint.Range range, Path directory, ExportCheckpoint checkpoint,
+                             Summary summary) throws IOException {
+        Scan scan = new Scan(template).withStopRow(range.stopRow, false);
+        if (range.lastRow == null) {
+            scan.withStartRow(range.startRow, true);
+        } else {
+            scan.withStartRow(range.lastRow, false);
+        }
+        OperationMetrics metrics = manager.getMetrics().get(Operation.SCAN);
+        long start = System.nanoTime();
+        long rows = 0;
+        long bytes = 0;
+        int part = range.nextPart;
+        Path temporary = null;
+        UserFileSink sink = null;
+        try (Table t = manager.getConnection().getTable(table);
+             ResultScanner scanner = t.getScanner(scan)) {
+            Result last = null;
+            for (Result user : scanner) {
+                if (sink == null) {
+                    temporary = directory.resolve(fileName(range, part) + ".tmp");
+                    sink = format.open(temporary);
+                }
+                sink.accept(user);
+                last = user;
+                rows++;
+                if (sink.getBytes() >= rollBytes) {
+                    bytes += commit(sink, temporary, directory.resolve(fileName(range, part)), summary);
+                    sink = null;
+                    checkpoint.update(range, last.getRow(), ++part, false);
+                }
+            }
+            if (sink != null) {
+                bytes += commit(sink, temporary, directory.resolve(fileName(range, part)), summary);
+                sink = null;
+                part++;
+            }
+            checkpoint.update(range, last == null ? range.lastRow : last.getRow(), part, true);
+            metrics.record(start, rows, bytes);
+            manager.getMetrics().scanned(scanner.getScanMetrics());
+        } catch (IOException | RuntimeException e) {
+            metrics.error(e);
+            if (sink != null) {
+                try {
+                    sink.close();
+                } catch (IOException suppressed) {
+                    e.addSuppressed(suppressed);
+                }
+                Files.deleteIfExists(temporary);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Closes the file and gives it its final name, returning its size.
+     */
+    private long commit(UserFileSink sink, Path temporary, Path file, Summary summary) throws IOException {
+        sink.close();
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        long size = Files.size(file);
+        summary.fileDone(sink.getRows(), size);
+        return size;
+    }
+
+    private String fileName(ExportCheckpoint.Range range, int part) {
+        return String.format(Locale.ROOT, "part-%05d-%05d%s", range.index, part, format.extension);
+    }
+
+    /**
+     * Totals of the files written by one run.
+     */
+    public static class Summary {
+        private final long start = System.nanoTime();
+        private final AtomicLong rows = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong files = new AtomicLong();
+        private long elapsedNs;
+
+        void fileDone(long fileRows, long fileBytes) {
+            rows.addAndGet(fileRows);
+            bytes.addAndGet(fileBytes);
+            files.incrementAndGet();
+        }
+
+        void finish() {
+            elapsedNs = System.nanoTime() - start;
+        }
+
+        public long getRows() {
+            return rows.get();
+        }
+
+        public long getBytes() {
+            return bytes.get();
+        }
+
+        public long getFiles() {
+            return files.get();
+        }
+
+        public long getElapsedNs() {
+            return elapsedNs;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = elapsedNs / 1e9;
+            return String.format("Exported %d rows into %d files (%.2f MB) in %dms (%.0f rows/s, %.2f MB/s).",
+                    rows.get(), files.get(), bytes.get() / 1048576.0, elapsedNs / 1000000, rows.get() / seconds,
+                    bytes.get() / seconds / (1024 * 1024));
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package es.upm.hbase.export;
+
+import es.upm.hbase.UsersSchema;
+import es.upm.hbase.codec.UserCodec;
+import es.upm.hbase.scan.RowSink;
+
+/**
+ * Sink writing the users to one local file: the row key and the text of name, province and
+ * lastLogin, decoded from whatever {@link UserCodec} format the row is in.
+ */
+public abstract class UserFileSink implements RowSink {
+    static final byte[][] COLUMNS = {UsersSchema.NAME, UsersSchema.PROVINCE, UsersSchema.LAST_LOGIN};
+    static final String[] HEADER = {"key", "name", "province", "lastLogin"};
+
+    /**
+     * Bytes of the file, counting those still buffered, which is what files are rolled on.
+     */
+    public abstract long getBytes();
+}
@@ -0,0 +1,296 @@
+package es.upm.hbase.index;
+
+import es.upm.hbase.UsersSchema;
+import es.upm.hbase.codec.UserCodec;
+import es.upm.hbase.connection.ConnectionManager;
+import es.upm.hbase.key.RowKeyStrategy;
+import es.upm.hbase.scan.ParallelScanner;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Admin;
+import org.apache.hadoop.hbase.client.AsyncTable;
+import org.apache.hadoop.hbase.client.BufferedMutator;
+import org.apache.hadoop.hbase.client.ColumnFamilyDescriptorBuilder;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Row;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.client.TableDescriptorBuilder;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Secondary index of the Users table by province.
+ *
+ * Every user has one row keyed province|name in the index table, so all the users of a province
+ * are found with a prefix scan instead of filtering the whole Users table. The index is written
+ * right after the users, one batch per table, but HBase gives no atomicity across tables, so
+ * queries check the province of every user they return and the consistency checker repairs leftovers.
+ */
+public class ProvinceIndex {
+    public static final TableName INDEX_TABLE = TableName.valueOf("UsersByProvince");
+    public static final byte[] FAMILY = Bytes.toBytes("Index");
+    public static final byte[] USER = Bytes.toBytes("user");
+    private static final byte SEPARATOR = '|';
+    private static final int GET_BATCH = 1000;
+
+    private final ConnectionManager manager;
+    private final TableName dataTable;
+    private final TableName indexTable;
+    private volatile Boolean enabled;
+
+    public ProvinceIndex(ConnectionManager manager, TableName dataTable, TableName indexTable) {
+        this.manager = manager;
+        this.dataTable = dataTable;
+        this.indexTable = indexTable;
+    }
+
+    public ProvinceIndex(ConnectionManager manager) {
+        this(manager, UsersSchema.TABLE, INDEX_TABLE);
+    }
+
+    /**
+     * Whether the index table exists, so that writes must maintain it.
+     */
+    public boolean isEnabled() throws IOException {
+        if (enabled == null) {
+            enabled = manager.getAdmin().tableExists(indexTable);
+        }
+        return enabled;
+    }
+
+    public void createIndexTable() throws IOException {
+        Admin admin = manager.getAdmin();
+        if (!admin.tableExists(indexTable)) {
+            admin.createTable(TableDescriptorBuilder.newBuilder(indexTable)
+                    .setColumnFamily(ColumnFamilyDescriptorBuilder.of(FAMILY))
+                    .build());
+        }
+        enabled = true;
+    }
+
+    public void dropIndexTable() throws IOException {
+        Admin admin = manager.getAdmin();
+        if (admin.tableExists(indexTable)) {
+            admin.disableTable(indexTable);
+            admin.deleteTable(indexTable);
+        }
+        enabled = false;
+    }
+
+    public static byte[] indexKey(byte[] province, byte[] name) {
+        return Bytes.add(province, new byte[]{SEPARATOR}, name);
+    }
+
+    public static byte[] prefix(byte[] province) {
+        return Bytes.add(province, new byte[]{SEPARATOR});
+    }
+
+    /**
+     * Writes the users and their index entries, removing the entries of the provinces they leave.
+     */
+    public void put(List<Put> users) throws IOException {
+        if (!isEnabled()) {
+            manager.getTable(dataTable).put(users);
+            return;
+        }
+        byte[][] oldProvinces = currentProvinces(rows(users));
+        List<Row> dataBatch = new ArrayList<>(users);
+        List<Row> indexBatch = new ArrayList<>();
+        for (int i = 0; i < users.size(); i++) {
+            Put user = users.get(i);
+            byte[] province = UserCodec.value(user, UsersSchema.PROVINCE);
+            if (province == null) {
+                continue;
+            }
+            if (oldProvinces[i] != null && !Bytes.equals(oldProvinces[i], province)) {
+                indexBatch.add(new Delete(indexKey(oldProvinces[i], user.getRow())));
+            }
+            indexBatch.add(new Put(indexKey(province, user.getRow())).addColumn(FAMILY, USER, user.getRow()));
+        }
+        Object[] dataResults = new Object[dataBatch.size()];
+        Object[] indexResults = new Object[indexBatch.size()];
+        try {
+            manager.getTable(dataTable).batch(dataBatch, dataResults);
+            manager.getTable(indexTable).batch(indexBatch, indexResults);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing users and index entries");
+        }
+    }
+
+    public void put(Put user) throws IOException {
+        if (!isEnabled()) {
+            manager.getTable(dataTable).put(user);
+            return;
+        }
+        put(Arrays.asList(user));
+    }
+
+    /**
+     * Deletes the user and its index entry.
+     */
+    public void delete(byte[] name) throws IOException {
+        delete(name, isEnabled() ? currentProvinces(Arrays.asList(name))[0] : null);
+    }
+
+    /**
+     * Deletes the user and the index entry of the province it was read with, null when it has
+     * none, without reading the row again.
+     */
+    public void delete(byte[] name, byte[] province) throws IOException {
+        if (province != null && isEnabled()) {
+            manager.getTable(indexTable).delete(new Delete(indexKey(province, name)));
+        }
+        manager.getTable(dataTable).delete(new Delete(name));
+    }
+
+    /**
+     * Users of the province: a prefix scan of the index followed by batched multi-gets of Users.
+     * Entries whose user no longer lives in the province are skipped.
+     */
+    public List<Result> query(byte[] province) throws IOException {
+        List<byte[]> names = new ArrayList<>();
+        byte[] prefix = prefix(province);
+        Scan scan = new Scan().withStartRow(prefix).withStopRow(RowKeyStrategy.stopRowForPrefix(prefix))
+                .addColumn(FAMILY, USER).setCaching(GET_BATCH);
+        try (ResultScanner rs = manager.getTable(indexTable).getScanner(scan)) {
+            for (Result entry : rs) {
+                names.add(entry.getValue(FAMILY, USER));
+            }
+        }
+        List<Result> users = new ArrayList<>(names.size());
+        Table t = manager.getTable(dataTable);
+        for (int from = 0; from < names.size(); from += GET_BATCH) {
+            List<Get> gets = new ArrayList<>();
+            for (byte[] name : names.subList(from, Math.min(names.size(), from + GET_BATCH))) {
+                gets.add(new Get(name).addFamily(UsersSchema.FAMILY));
+            }
+            for (Result user : t.get(gets)) {
+                if (!user.isEmpty() && Bytes.equals(province, UserCodec.value(user, UsersSchema.PROVINCE))) {
+                    users.add(user);
+                }
+            }
+        }
+        return users;
+    }
+
+    /**
+     * Backfills the index from the existing users with a region-parallel scan of Users.
+     */
+    public long rebuild() throws IOException, InterruptedException {
+        createIndexTable();
+        AtomicLong entries = new AtomicLong();
+        Scan scan = UserCodec.addColumns(new Scan(), UsersSchema.PROVINCE).setCaching(GET_BATCH);
+        try (BufferedMutator mutator = manager.getConnection().getBufferedMutator(indexTable)) {
+            new ParallelScanner(manager, dataTable).scan(scan, false, user -> {
+                byte[] province = UserCodec.value(user, UsersSchema.PROVINCE);
+                if (province != null) {
+                    mutator.mutate(new Put(indexKey(province, user.getRow())).addColumn(FAMILY, USER, user.getRow()));
+                    entries.incrementAndGet();
+                }
+            });
+        }
+        System.out.println("Index rebuilt with " + entries.get() + " entries.");
+        return entries.get();
+    }
+
+    /**
+     * Compares the index with Users in both directions and prints the differences: users without
+     * their entry and entries that point to a missing user or to a province the user left.
+     * When repair is set the differences are fixed.
+     */
+    public IndexCheck check(boolean repair) throws IOException, InterruptedException {
+        IndexCheck check = new IndexCheck();
+        // The consumers run on the scan workers, async tables can be shared between them.
+        AsyncTable<?> asyncData = manager.getAsyncConnection().getTable(dataTable);
+        AsyncTable<?> asyncIndex = manager.getAsyncConnection().getTable(indexTable);
+        Scan users = UserCodec.addColumns(new Scan(), UsersSchema.PROVINCE).setCaching(GET_BATCH);
+        Scan entries = new Scan().addColumn(FAMILY, USER).setCaching(GET_BATCH);
+        try (BufferedMutator mutator = manager.getConnection().getBufferedMutator(indexTable)) {
+            ParallelScanner.RowConsumer missing = user -> {
+                byte[] province = UserCodec.value(user, UsersSchema.PROVINCE);
+                check.users.incrementAndGet();
+                if (province == null) {
+                    return;
+                }
+                byte[] key = indexKey(province, user.getRow());
+                if (!asyncIndex.exists(new Get(key)).join()) {
+                    check.missing.incrementAndGet();
+                    System.out.println("Missing index entry: " + Bytes.toString(key));
+                    if (repair) {
+                        mutator.mutate(new Put(key).addColumn(FAMILY, USER, user.getRow()));
+                    }
+                }
+            };
+            new ParallelScanner(manager, dataTable).setVerbose(false).scan(users, false, missing);
+
+            ParallelScanner.RowConsumer stale = entry -> {
+                check.entries.incrementAndGet();
+                byte[] name = entry.getValue(FAMILY, USER);
+                Result user = asyncData.get(UserCodec.addColumns(new Get(name), UsersSchema.PROVINCE)).join();
+                byte[] province = UserCodec.value(user, UsersSchema.PROVINCE);
+                if (province == null || !Bytes.equals(entry.getRow(), indexKey(province, name))) {
+                    check.stale.incrementAndGet();
+                    System.out.println("Stale index entry: " + Bytes.toString(entry.getRow()));
+                    if (repair) {
+                        mutator.mutate(new Delete(entry.getRow()));
+                    }
+                }
+            };
+            new ParallelScanner(manager, indexTable).setVerbose(false).scan(entries, false, stale);
+        }
+        System.out.println(check);
+        return check;
+    }
+
+    private byte[][] currentProvinces(List<byte[]> names) throws IOException {
+        List<Get> gets = new ArrayList<>(names.size());
+        for (byte[] name : names) {
+            gets.add(UserCodec.addColumns(new Get(name), UsersSchema.PROVINCE));
+        }
+        Result[] results = manager.getTable(dataTable).get(gets);
+        byte[][] provinces = new byte[results.length][];
+        for (int i = 0; i < results.length; i++) {
+            provinces[i] = UserCodec.value(results[i], UsersSchema.PROVINCE);
+        }
+        return provinces;
+    }
+
+    private static List<byte[]> rows(List<Put> puts) {
+        List<byte[]> rows = new ArrayList<>(puts.size());
+        for (Put put : puts) {
+            rows.add(put.getRow());
+        }
+        return rows;
+    }
+
+    /**
+     * Result of a consistency check.
+     */
+    public static class IndexCheck {
+        final AtomicLong users = new AtomicLong();
+        final AtomicLong entries = new AtomicLong();
+        final AtomicLong missing = new AtomicLong();
+        final AtomicLong stale = new AtomicLong();
+
+        public boolean isConsistent() {
+            return missing.get() == 0 && stale.get() == 0;
+        }
+
+        @Override
+        public String toString() {
+            return "Users: " + users.get() + " index entries: " + entries.get() + " missing entries: "
+                    + missing.get() + " stale entries: " + stale.get();
+        }
+    }
+}
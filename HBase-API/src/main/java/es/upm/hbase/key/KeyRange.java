@@ -0,0 +1,29 @@
+package es.upm.hbase.key;
+
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Physical key range [startRow, stopRow) of the table, empty keys mean the start or the end of it.
+ */
+public class KeyRange {
+    private final byte[] startRow;
+    private final byte[] stopRow;
+
+    public KeyRange(byte[] startRow, byte[] stopRow) {
+        this.startRow = startRow;
+        this.stopRow = stopRow;
+    }
+
+    public byte[] getStartRow() {
+        return startRow;
+    }
+
+    public byte[] getStopRow() {
+        return stopRow;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + Bytes.toStringBinary(startRow) + ", " + Bytes.toStringBinary(stopRow) + ")";
+    }
+}
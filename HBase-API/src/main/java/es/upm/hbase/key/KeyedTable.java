@@ -0,0 +1,186 @@
+package es.upm.hbase.key;
+
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.client.metrics.ScanMetrics;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+
+/**
+ * Reads a table through its {@link RowKeyStrategy}: scans and name lookups are given in logical
+ * keys and fan out to one scanner per bucket, whose rows are merged back in logical key order.
+ */
+public class KeyedTable {
+    private final Table table;
+    private final RowKeyStrategy keys;
+
+    public KeyedTable(Table table, RowKeyStrategy keys) {
+        this.table = table;
+        this.keys = keys;
+    }
+
+    /**
+     * Scanner over the logical range of the scan, with its columns, filter and settings applied
+     * to every bucket.
+     */
+    public ResultScanner getScanner(Scan scan) throws IOException {
+        List<KeyRange> ranges = keys.ranges(scan.getStartRow(), scan.getStopRow());
+        if (ranges.size() == 1 && keys.getPrefixLength() == 0) {
+            return table.getScanner(scan);
+        }
+        List<ResultScanner> scanners = new ArrayList<>(ranges.size());
+        try {
+            for (KeyRange range : ranges) {
+                scanners.add(table.getScanner(new Scan(scan)
+                        .withStartRow(range.getStartRow(), true).withStopRow(range.getStopRow(), false)));
+            }
+            return new MergingScanner(scanners, keys.getPrefixLength());
+        } catch (IOException e) {
+            for (ResultScanner scanner : scanners) {
+                scanner.close();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Rows of the users with the name, projected like the get and with its consistency. With the
+     * name strategy this is the get itself.
+     */
+    public List<Result> getUsers(byte[] name, Get projection) throws IOException {
+        if (!keys.isUnique()) {
+            return Collections.singletonList(table.get(projection));
+        }
+        Scan scan = usersScan(name, projection);
+        List<Result> users = new ArrayList<>();
+        try (ResultScanner rs = getScanner(scan)) {
+            for (Result user : rs) {
+                users.add(user);
+            }
+        }
+        return users;
+    }
+
+    /**
+     * Logical scan over the rows of the users with the name, for the strategies with unique keys,
+     * projected like the get and with its consistency.
+     */
+    public static Scan usersScan(byte[] name, Get projection) {
+        byte[] prefix = Bytes.add(name, new byte[]{RowKeyStrategy.SEPARATOR});
+        Scan scan = new Scan().withStartRow(prefix).withStopRow(RowKeyStrategy.stopRowForPrefix(prefix))
+                .readVersions(projection.getMaxVersions()).setConsistency(projection.getConsistency());
+        for (Map.Entry<byte[], NavigableSet<byte[]>> family : projection.getFamilyMap().entrySet()) {
+            if (family.getValue() == null || family.getValue().isEmpty()) {
+                scan.addFamily(family.getKey());
+            } else {
+                for (byte[] qualifier : family.getValue()) {
+                    scan.addColumn(family.getKey(), qualifier);
+                }
+            }
+        }
+        return scan;
+    }
+
+    /**
+     * Orders rows by their key without the prefix.
+     */
+    public static Comparator<Result> logicalOrder(int prefixLength) {
+        return (a, b) -> {
+            byte[] x = a.getRow();
+            byte[] y = b.getRow();
+            return Bytes.compareTo(x, prefixLength, x.length - prefixLength, y, prefixLength, y.length - prefixLength);
+        };
+    }
+
+    /**
+     * Merges bucket scanners, each sorted by key, comparing the keys without their prefix.
+     */
+    static class MergingScanner implements ResultScanner {
+        private final List<ResultScanner> scanners;
+        private final PriorityQueue<Head> heads;
+
+        MergingScanner(List<ResultScanner> scanners, int prefixLength) throws IOException {
+            this.scanners = scanners;
+            Comparator<Result> order = logicalOrder(prefixLength);
+            this.heads = new PriorityQueue<>(Math.max(1, scanners.size()), (a, b) -> order.compare(a.result, b.result));
+            for (ResultScanner scanner : scanners) {
+                advance(scanner);
+            }
+        }
+
+        private void advance(ResultScanner scanner) throws IOException {
+            Result result = scanner.next();
+            if (result != null) {
+                heads.add(new Head(scanner, result));
+            }
+        }
+
+        @Override
+        public Result next() throws IOException {
+            Head head = heads.poll();
+            if (head == null) {
+                return null;
+            }
+            advance(head.scanner);
+            return head.result;
+        }
+
+        @Override
+        public void close() {
+            for (ResultScanner scanner : scanners) {
+                scanner.close();
+            }
+        }
+
+        @Override
+        public boolean renewLease() {
+            boolean renewed = true;
+            for (ResultScanner scanner : scanners) {
+                renewed &= scanner.renewLease();
+            }
+            return renewed;
+        }
+
+        /**
+         * Sum of the metrics of the bucket scanners, null when scan metrics are disabled.
+         */
+        @Override
+        public ScanMetrics getScanMetrics() {
+            ScanMetrics total = null;
+            for (ResultScanner scanner : scanners) {
+                ScanMetrics metrics = scanner.getScanMetrics();
+                if (metrics == null) {
+                    continue;
+                }
+                if (total == null) {
+                    total = new ScanMetrics();
+                }
+                for (Map.Entry<String, Long> counter : metrics.getMetricsMap(false).entrySet()) {
+                    total.addToCounter(counter.getKey(), counter.getValue());
+                }
+            }
+            return total;
+        }
+
+        private static class Head {
+            final ResultScanner scanner;
+            final Result result;
+
+            Head(ResultScanner scanner, Result result) {
+                this.scanner = scanner;
+                this.result = result;
+            }
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package es.upm.hbase.key;
+
+import es.upm.hbase.UsersSchema;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Admin;
+import org.apache.hadoop.hbase.util.ByteArrayHashKey;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.apache.hadoop.hbase.util.MurmurHash3;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How the row key of a user is built.
+ *
+ * Every strategy has a logical key, which is what scans and gets are expressed in, and a
+ * physical row key, which may add a bucket prefix in front of it:
+ * <ul>
+ * <li>name: the name itself, the original layout. Users with the same name share the row and
+ * every load just adds versions to the same 10 rows.</li>
+ * <li>name-id: name#id with a random 64-bit id, one row per user, sorted by name.</li>
+ * <li>salted: a bucket byte taken from the random id followed by name#id.</li>
+ * <li>hashed: a bucket byte taken from the hash of name#id followed by name#id, so the bucket of
+ * a known user can be computed again.</li>
+ * </ul>
+ * With the prefixed strategies writes spread evenly over the buckets, one region each, and a
+ * logical range becomes one physical range per bucket that readers have to merge
+ * ({@link KeyedTable} does it).
+ */
+public abstract class RowKeyStrategy {
+    public static final String KEYS_KEY = "users.row.keys";
+    public static final byte SEPARATOR = '#';
+    static final int MAX_BUCKETS = 256;
+    // Before NAME, which needs it to be built.
+    private static final byte[][] SORTED_NAMES = sortedNames();
+
+    public static final RowKeyStrategy NAME = new NameKeys();
+
+    /**
+     * name, name-id, salted or hashed. regions is the number of regions the table is pre-split
+     * into, and the number of buckets of the prefixed strategies.
+     */
+    public static RowKeyStrategy forName(String name, int regions) {
+        if (regions < 1 || regions > MAX_BUCKETS) {
+            throw new IllegalArgumentException("The number of regions must be between 1 and " + MAX_BUCKETS);
+        }
+        switch (name) {
+            case "name":
+                return regions == 1 ? NAME : new NameKeys(regions);
+            case "name-id":
+                return new NameIdKeys(regions);
+            case "salted":
+                return new PrefixedKeys(regions, false);
+            case "hashed":
+                return new PrefixedKeys(regions, true);
+            default:
+                throw new IllegalArgumentException("Unknown row key strategy: " + name + " (name, name-id, salted or hashed)");
+        }
+    }
+
+    /**
+     * Strategy of a {@link #getSpec} value.
+     */
+    public static RowKeyStrategy forSpec(String spec) {
+        int colon = spec.lastIndexOf(':');
+        if (colon < 0) {
+            throw new IllegalArgumentException("Not a row key strategy: " + spec + " (name:regions)");
+        }
+        return forName(spec.substring(0, colon), Integer.parseInt(spec.substring(colon + 1)));
+    }
+
+    /**
+     * Strategy the table was created with, name keys when the descriptor does not say.
+     */
+    public static RowKeyStrategy forTable(Admin admin, TableName table) throws IOException {
+        if (!admin.tableExists(table)) {
+            return NAME;
+        }
+        String spec = admin.getDescriptor(table).getValue(KEYS_KEY);
+        return spec == null ? NAME : forSpec(spec);
+    }
+
+    /**
+     * name:regions, the value recorded in the table descriptor under KEYS_KEY.
+     */
+    public String getSpec() {
+        return getName() + ":" + getRegions();
+    }
+
+    /**
+     * Name of the strategy for {@link #forName}.
+     */
+    public abstract String getName();
+
+    public abstract int getRegions();
+
+    /**
+     * Row key of a new user with the given name.
+     */
+    public byte[] rowKey(byte[] name) {
+        return rowKey(name, ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE);
+    }
+
+    /**
+     * Row key of the user with the given name and non-negative id, for generators that draw the
+     * ids from their own seeded random source.
+     */
+    public abstract byte[] rowKey(byte[] name, long id);
+
+    /**
+     * Physical ranges holding the logical range [startRow, stopRow), sorted by key.
+     */
+    public abstract List<KeyRange> ranges(byte[] startRow, byte[] stopRow);
+
+    /**
+     * Keys the table is pre-split at, empty for a single region.
+     */
+    public abstract byte[][] splitKeys();
+
+    /**
+     * Bytes in front of the logical key.
+     */
+    public int getPrefixLength() {
+        return 0;
+    }
+
+    /**
+     * Whether every user has its own row, so that a name has to be looked up with a scan.
+     */
+    public boolean isUnique() {
+        return true;
+    }
+
+    static byte[] logicalKey(byte[] name, long id) {
+        return Bytes.add(name, new byte[]{SEPARATOR}, Bytes.toBytes(id));
+    }
+
+    /**
+     * First key after every key starting with the prefix, empty when there is none.
+     */
+    public static byte[] stopRowForPrefix(byte[] prefix) {
+        for (int i = prefix.length - 1; i >= 0; i--) {
+            if (prefix[i] != (byte) 0xff) {
+                byte[] stop = Arrays.copyOf(prefix, i + 1);
+                stop[i]++;
+                return stop;
+            }
+        }
+        return HConstants.EMPTY_END_ROW;
+    }
+
+    private static byte[][] sortedNames() {
+        byte[][] names = new byte[UsersSchema.NAMES.length][];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = Bytes.toBytes(UsersSchema.NAMES[i]);
+        }
+        Arrays.sort(names, Bytes.BYTES_COMPARATOR);
+        return names;
+    }
+
+    /**
+     * The name is the row key. The table can only be split between names.
+     */
+    static class NameKeys extends RowKeyStrategy {
+        private final int regions;
+
+        NameKeys() {
+            this(1);
+        }
+
+        NameKeys(int regions) {
+            this.regions = Math.min(regions, SORTED_NAMES.length);
+        }
+
+        @Override
+        public byte[] rowKey(byte[] name) {
+            return name;
+        }
+
+        @Override
+        public byte[] rowKey(byte[] name, long id) {
+            return name;
+        }
+
+        @Override
+        public List<KeyRange> ranges(byte[] startRow, byte[] stopRow) {
+            return Collections.singletonList(new KeyRange(startRow, stopRow));
+        }
+
+        @Override
+        public byte[][] splitKeys() {
+            byte[][] splits = new byte[regions - 1][];
+            for (int i = 1; i < regions; i++) {
+                splits[i - 1] = SORTED_NAMES[i * SORTED_NAMES.length / regions];
+            }
+            return splits;
+        }
+
+        @Override
+        public boolean isUnique() {
+            return false;
+        }
+
+        @Override
+        public String getName() {
+            return "name";
+        }
+
+        @Override
+        public int getRegions() {
+            return regions;
+        }
+
+        @Override
+        public String toString() {
+            return "name (" + regions + " regions)";
+        }
+    }
+
+    /**
+     * name#id. The ids are random, so the split points are interpolated over the known names
+     * and, inside a name, over the id space.
+     */
+    static class NameIdKeys extends RowKeyStrategy {
+        private final int regions;
+
+        NameIdKeys(int regions) {
+            this.regions = regions;
+        }
+
+        @Override
+        public byte[] rowKey(byte[] name, long id) {
+            return logicalKey(name, id);
+        }
+
+        @Override
+        public List<KeyRange> ranges(byte[] startRow, byte[] stopRow) {
+            return Collections.singletonList(new KeyRange(startRow, stopRow));
+        }
+
+        @Override
+        public byte[][] splitKeys() {
+            byte[][] splits = new byte[regions - 1][];
+            for (int i = 1; i < regions; i++) {
+                double position = (double) i * SORTED_NAMES.length / regions;
+                int name = (int) position;
+                double fraction = position - name;
+                splits[i - 1] = fraction == 0 ? SORTED_NAMES[name]
+                        : logicalKey(SORTED_NAMES[name], (long) (fraction * Long.MAX_VALUE));
+            }
+            return splits;
+        }
+
+        @Override
+        public String getName() {
+            return "name-id";
+        }
+
+        @Override
+        public int getRegions() {
+            return regions;
+        }
+
+        @Override
+        public String toString() {
+            return "name-id (" + regions + " regions)";
+        }
+    }
+
+    /**
+     * One bucket byte in front of name#id, one bucket per region.
+     */
+    static class PrefixedKeys extends RowKeyStrategy {
+        private final int buckets;
+        private final boolean hashed;
+
+        PrefixedKeys(int buckets, boolean hashed) {
+            this.buckets = buckets;
+            this.hashed = hashed;
+        }
+
+        @Override
+        public byte[] rowKey(byte[] name, long id) {
+            byte[] logical = logicalKey(name, id);
+            // The id is random, so the salt is too, and seeded generators still get the same keys.
+            int bucket = hashed
+                    ? (MurmurHash3.getInstance().hash(new ByteArrayHashKey(logical, 0, logical.length), 0) & Integer.MAX_VALUE) % buckets
+                    : (int) (id % buckets);
+            return Bytes.add(new byte[]{(byte) bucket}, logical);
+        }
+
+        @Override
+        public List<KeyRange> ranges(byte[] startRow, byte[] stopRow) {
+            List<KeyRange> ranges = new ArrayList<>(buckets);
+            for (int bucket = 0; bucket < buckets; bucket++) {
+                byte[] prefix = {(byte) bucket};
+                byte[] stop = stopRow.length == 0 ? stopRowForPrefix(prefix) : Bytes.add(prefix, stopRow);
+                ranges.add(new KeyRange(Bytes.add(prefix, startRow), stop));
+            }
+            return ranges;
+        }
+
+        @Override
+        public byte[][] splitKeys() {
+            byte[][] splits = new byte[buckets - 1][];
+            for (int bucket = 1; bucket < buckets; bucket++) {
+                splits[bucket - 1] = new byte[]{(byte) bucket};
+            }
+            return splits;
+        }
+
+        @Override
+        public int getPrefixLength() {
+            return 1;
+        }
+
+        @Override
+        public String getName() {
+            return hashed ? "hashed" : "salted";
+        }
+
+        @Override
+        public int getRegions() {
+            return buckets;
+        }
+
+        @Override
+        public String toString() {
+            return (hashed ? "hashed" : "salted") + " (" + buckets + " buckets)";
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package es.upm.hbase.load;
+
+import es.upm.hbase.connection.ConnectionManager;
+import es.upm.hbase.key.RowKeyStrategy;
+import es.upm.hbase.metrics.Operation;
+import es.upm.hbase.metrics.OperationMetrics;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.BufferedMutator;
+import org.apache.hadoop.hbase.client.BufferedMutatorParams;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.RetriesExhaustedWithDetailsException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Bulk loader for the Users table built on a {@link BufferedMutator}.
+ *
+ * Several producer threads generate rows into a bounded queue that a single writer drains into
+ * the mutator. When the write buffer is full the mutator flushes synchronously, the queue fills
+ * up and the producers block, so memory stays bounded whatever the number of rows.
+ */
+public class BufferedLoader {
+    private static final Put POISON = new Put(new byte[]{0});
+
+    private final ConnectionManager manager;
+    private final TableName table;
+    private UserDataGenerator generator = new UserDataGenerator(RowKeyStrategy.NAME);
+    private final int producers;
+    private final long writeBufferSize;
+    private final long flushPeriodMs;
+    private final int queueCapacity;
+
+    private final AtomicLong rows = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong failedRows = new AtomicLong();
+    private final AtomicReference<Exception> firstFailure = new AtomicReference<>();
+
+    public BufferedLoader(ConnectionManager manager, TableName table, int producers, long writeBufferSize,
+                          long flushPeriodMs, int queueCapacity) {
+        this.manager = manager;
+        this.table = table;
+        this.producers = producers;
+        this.writeBufferSize = writeBufferSize;
+        this.flushPeriodMs = flushPeriodMs;
+        this.queueCapacity = queueCapacity;
+    }
+
+    public BufferedLoader(ConnectionManager manager, TableName table) {
+        this(manager, table, Runtime.getRuntime().availableProcessors(), 8 * 1024 * 1024, 1000, 10000);
+    }
+
+    /**
+     * Generator of the users, uniform users with name keys by default.
+     */
+    public BufferedLoader setGenerator(UserDataGenerator generator) {
+        this.generator = generator;
+        return this;
+    }
+
+    /**
+     * Loads numberUsers random users and prints the achieved throughput.
+     */
+    public void load(long numberUsers) throws IOException, InterruptedException {
+        rows.set(0);
+        bytes.set(0);
+        failedRows.set(0);
+        firstFailure.set(null);
+
+        BufferedMutatorParams params = new BufferedMutatorParams(table)
+                .writeBufferSize(writeBufferSize)
+                .setWriteBufferPeriodicFlushTimeoutMs(flushPeriodMs)
+                .listener(this::onException);
+
+        BlockingQueue<Put> queue = new ArrayBlockingQueue<>(queueCapacity);
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            long quota = numberUsers / producers + (p < numberUsers % producers ? 1 : 0);
+            UserDataGenerator.Source source = generator.newSource();
+            Thread producer = new Thread(() -> {
+                try {
+                    for (long i = 0; i < quota; i++) {
+                        queue.put(source.next(HConstants.LATEST_TIMESTAMP));
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "loader-producer-" + p);
+            threads.add(producer);
+        }
+
+        long start = System.nanoTime();
+        ProgressReporter reporter = new ProgressReporter(start);
+        reporter.start();
+        try (BufferedMutator mutator = manager.getConnection().getBufferedMutator(params)) {
+            for (Thread producer : threads) {
+                producer.start();
+            }
+            Thread closer = new Thread(() -> {
+                try {
+                    for (Thread producer : threads) {
+                        producer.join();
+                    }
+                    queue.put(POISON);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "loader-closer");
+            closer.start();
+
+            // A mutate is as slow as the flush it triggers when the write buffer is full
+            OperationMetrics puts = manager.getMetrics().get(Operation.PUT);
+            Put put;
+            while ((put = queue.take()) != POISON) {
+                long putStart = System.nanoTime();
+                long size = UserRowGenerator.payloadSize(put);
+                mutator.mutate(put);
+                puts.record(putStart, 1, size);
+                rows.incrementAndGet();
+                bytes.addAndGet(size);
+            }
+            mutator.flush();
+        } finally {
+            reporter.interrupt();
+            reporter.join();
+        }
+        long elapsedNs = System.nanoTime() - start;
+
+        double seconds = elapsedNs / 1e9;
+        long loaded = rows.get() - failedRows.get();
+        System.out.println("Loaded " + loaded + " users (" + failedRows.get() + " failed) in "
+                + (elapsedNs / 1000000) + "ms.");
+        System.out.println(String.format("Throughput: %.0f rows/s, %.2f MB/s", loaded / seconds,
+                bytes.get() / seconds / (1024 * 1024)));
+        if (firstFailure.get() != null) {
+            System.out.println("First failure: " + firstFailure.get());
+        }
+    }
+
+    private void onException(RetriesExhaustedWithDetailsException e, BufferedMutator mutator) {
+        failedRows.addAndGet(e.getNumExceptions());
+        firstFailure.compareAndSet(null, e);
+        OperationMetrics puts = manager.getMetrics().get(Operation.PUT);
+        for (int i = 0; i < e.getNumExceptions(); i++) {
+            puts.error(e.getCause(i));
+        }
+    }
+
+    private class ProgressReporter extends Thread {
+        private final long start;
+
+        ProgressReporter(long start) {
+            super("loader-reporter");
+            setDaemon(true);
+            this.start = start;
+        }
+
+        @Override
+        public void run() {
+            long lastRows = 0;
+            long lastBytes = 0;
+            try {
+                while (!isInterrupted()) {
+                    Thread.sleep(1000);
+                    long currentRows = rows.get();
+                    long currentBytes = bytes.get();
+                    System.out.println(String.format("[%ds] %d rows, %d rows/s, %.2f MB/s",
+                            (System.nanoTime() - start) / 1000000000L, currentRows, currentRows - lastRows,
+                            (currentBytes - lastBytes) / (1024.0 * 1024)));
+                    lastRows = currentRows;
+                    lastBytes = currentBytes;
+                }
+            } catch (InterruptedException e) {
+                // Load finished.
+            }
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package es.upm.hbase.load;
+
+import es.upm.hbase.UsersSchema;
+import es.upm.hbase.connection.ConnectionManager;
+import es.upm.hbase.key.RowKeyStrategy;
+import es.upm.hbase.metrics.Operation;
+import es.upm.hbase.metrics.OperationMetrics;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Durability;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Initial loader for large volumes of users that avoids most of the per-row write path cost.
+ *
+ * Rows are generated in parallel and bucketed by the region that will own them. A bucket that
+ * reaches batchSize rows is sorted by key and handed to the writers through a bounded queue, so
+ * every batch goes to a single region and memory stays bounded whatever the number of users:
+ * each generator holds at most maxPending rows in its buckets, flushing the fullest one when it
+ * would exceed them, and the queue holds at most two batches per writer. Writers are capped at
+ * writers threads, not one per region.
+ *
+ * Generation and load are reported apart: the generation rate counts only the time the
+ * generators spend producing, bucketing and sorting rows, not the time they wait for room in the
+ * queue, so it tells whether the load is bound by the generators or by the writes.
+ *
+ * Writes go through the WAL unless the durability says otherwise. With SKIP_WAL the table is
+ * flushed at the end, which persists the memstores as store files before returning, but rows
+ * acknowledged before that flush are lost if a RegionServer fails in between.
+ *
+ * Rows are stamped with the time they are generated, so loads after a change capture run are
+ * seen by the next one. Repeated users of a batch get one more millisecond each so that they
+ * become versions, as with Main.put; repeats in different batches generated within the same
+ * millisecond keep only one version.
+ */
+public class RegionAlignedLoader {
+    private static final List<Put> END = new ArrayList<>();
+
+    private final ConnectionManager manager;
+    private final TableName table;
+    private UserDataGenerator generator = new UserDataGenerator(RowKeyStrategy.NAME);
+    private final int generators;
+    private final int batchSize;
+    private int writers = 2 * Runtime.getRuntime().availableProcessors();
+    private Durability durability = Durability.USE_DEFAULT;
+
+    public RegionAlignedLoader(ConnectionManager manager, TableName table, int generators, int batchSize) {
+        this.manager = manager;
+        this.table = table;
+        this.generators = generators;
+        this.batchSize = batchSize;
+    }
+
+    public RegionAlignedLoader(ConnectionManager manager, TableName table) {
+        this(manager, table, Runtime.getRuntime().availableProcessors(), 5000);
+    }
+
+    /**
+     * Generator of the users, uniform users with name keys by default.
+     */
+    public RegionAlignedLoader setGenerator(UserDataGenerator generator) {
+        this.generator = generator;
+        return this;
+    }
+
+    /**
+     * Writer threads, at most one per region.
+     */
+    public RegionAlignedLoader setWriters(int writers) {
+        this.writers = Math.max(1, writers);
+        return this;
+    }
+
+    /**
+     * Durability of the puts, the one of the table by default. SKIP_WAL is faster but loses the
+     * rows not yet flushed if a RegionServer fails during the load.
+     */
+    public RegionAlignedLoader setDurability(Durability durability) {
+        this.durability = durability;
+        return this;
+    }
+
+    public void load(int numberUsers) throws IOException, InterruptedException {
+        int maxVersions = manager.getAdmin().getDescriptor(table).getColumnFamily(UsersSchema.FAMILY).getMaxVersions();
+        if (maxVersions < UsersSchema.MAX_VERSIONS) {
+            System.out.println("Warning: " + table + " keeps " + maxVersions + " versions, createTable uses "
+                    + UsersSchema.MAX_VERSIONS + ". Older versions of repeated users will be dropped.");
+        }
+        byte[][] startKeys = manager.getRegionLocator(table).getStartKeys();
+        Arrays.sort(startKeys, Bytes.BYTES_COMPARATOR);
+
+        int writerCount = Math.min(writers, startKeys.length);
+        BlockingQueue<List<Put>> queue = new ArrayBlockingQueue<>(2 * writerCount);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicLong bytes = new AtomicLong();
+        AtomicLong generationNs = new AtomicLong();
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(writerCount + generators);
+        try {
+            List<Future<?>> writing = new ArrayList<>();
+            for (int w = 0; w < writerCount; w++) {
+                writing.add(pool.submit(() -> {
+                    write(queue, bytes, failure);
+                    return null;
+                }));
+            }
+            List<Future<?>> generating = new ArrayList<>();
+            for (int g = 0; g < generators; g++) {
+                int first = (int) ((long) numberUsers * g / generators);
+                int last = (int) ((long) numberUsers * (g + 1) / generators);
+                UserDataGenerator.Source source = generator.newSource();
+                generating.add(pool.submit(() -> {
+                    generationNs.addAndGet(generate(source, last - first, startKeys, queue, failure));
+                    return null;
+                }));
+            }
+            await(generating, failure);
+            for (int w = 0; w < writerCount; w++) {
+                offer(queue, END, failure);
+            }
+            await(writing, failure);
+            if (failure.get() != null) {
+                throw new IOException("Region load failed", failure.get());
+            }
+            if (durability == Durability.SKIP_WAL || durability == Durability.ASYNC_WAL) {
+                manager.getAdmin().flush(table);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        long loaded = System.nanoTime();
+        double loadSeconds = (loaded - start) / 1e9;
+        // The generators run in parallel, so their rate is over the mean time of one of them
+        double generationSeconds = generationNs.get() / 1e9 / generators;
+        System.out.println(String.format("Generated and sorted %d users on %d threads in %dms of generation each (%.0f rows/s).",
+                numberUsers, generators, (long) (generationSeconds * 1000), numberUsers / generationSeconds));
+        System.out.println(String.format("Loaded %d users into %d regions with %d writers in %dms (%.0f rows/s, %.2f MB/s).",
+                numberUsers, startKeys.length, writerCount, (loaded - start) / 1000000, numberUsers / loadSeconds,
+                bytes.get() / loadSeconds / (1024 * 1024)));
+    }
+
+    private static void await(List<Future<?>> futures, AtomicReference<Throwable> failure) throws InterruptedException {
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                failure.compareAndSet(null, e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Generates rows users into per-region buckets, queueing a bucket when it is full or when it
+     * is the fullest one and the generator holds too many rows. Returns the nanoseconds spent
+     * generating, those waiting for room in the queue left out.
+     */
+    private long generate(UserDataGenerator.Source source, int rows, byte[][] startKeys, BlockingQueue<List<Put>> queue,
+                          AtomicReference<Throwable> failure) throws InterruptedException {
+        long start = System.nanoTime();
+        long waitingNs = 0;
+        int maxPending = 4 * batchSize;
+        List<List<Put>> buckets = new ArrayList<>(startKeys.length);
+        for (int r = 0; r < startKeys.length; r++) {
+            buckets.add(new ArrayList<>());
+        }
+        int pending = 0;
+        for (int i = 0; i < rows && failure.get() == null; i++) {
+            Put put = source.next(System.currentTimeMillis());
+            int region = regionIndex(startKeys, put.getRow());
+            List<Put> bucket = buckets.get(region);
+            bucket.add(put);
+            pending++;
+            if (bucket.size() < batchSize && pending <= maxPending) {
+                continue;
+            }
+            if (bucket.size() < batchSize) {
+                region = fullest(buckets);
+                bucket = buckets.get(region);
+            }
+            pending -= bucket.size();
+            waitingNs += offerTimed(queue, sorted(bucket), failure);
+            buckets.set(region, new ArrayList<>());
+        }
+        for (List<Put> bucket : buckets) {
+            if (!bucket.isEmpty()) {
+                waitingNs += offerTimed(queue, sorted(bucket), failure);
+            }
+        }
+        return System.nanoTime() - start - waitingNs;
+    }
+
+    // Queues the batch and returns the nanoseconds it waited for room
+    private static long offerTimed(BlockingQueue<List<Put>> queue, List<Put> batch, AtomicReference<Throwable> failure)
+            throws InterruptedException {
+        long start = System.nanoTime();
+        offer(queue, batch, failure);
+        return System.nanoTime() - start;
+    }
+
+    private static int fullest(List<List<Put>> buckets) {
+        int fullest = 0;
+        for (int r = 1; r < buckets.size(); r++) {
+            if (buckets.get(r).size() > buckets.get(fullest).size()) {
+                fullest = r;
+            }
+        }
+        return fullest;
+    }
+
+    /**
+     * Sorts the batch by key and moves every repeated row one millisecond after the previous one.
+     */
+    static List<Put> sorted(List<Put> batch) {
+        batch.sort((a, b) -> Bytes.compareTo(a.getRow(), b.getRow()));
+        for (int i = 1; i < batch.size(); i++) {
+            Put previous = batch.get(i - 1);
+            Put put = batch.get(i);
+            if (Bytes.equals(previous.getRow(), put.getRow()) && put.getTimestamp() <= previous.getTimestamp()) {
+                batch.set(i, restamp(put, previous.getTimestamp() + 1));
+            }
+        }
+        return batch;
+    }
+
+    private static Put restamp(Put put, long timestamp) {
+        Put copy = new Put(put.getRow(), timestamp);
+        for (List<Cell> cells : put.getFamilyCellMap().values()) {
+            for (Cell cell : cells) {
+                copy.addColumn(CellUtil.cloneFamily(cell), CellUtil.cloneQualifier(cell), timestamp,
+                        CellUtil.cloneValue(cell));
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Queues the batch, giving up once another thread has failed, whose error is reported instead.
+     */
+    private static void offer(BlockingQueue<List<Put>> queue, List<Put> batch, AtomicReference<Throwable> failure)
+            throws InterruptedException {
+        while (failure.get() == null) {
+            if (queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+                return;
+            }
+        }
+    }
+
+    private void write(BlockingQueue<List<Put>> queue, AtomicLong bytes, AtomicReference<Throwable> failure)
+            throws IOException, InterruptedException {
+        try (Table t = manager.getConnection().getTable(table)) {
+            while (failure.get() == null) {
+                List<Put> batch = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (batch == END) {
+                    return;
+                }
+                if (batch == null) {
+                    continue;
+                }
+                long batchBytes = 0;
+                for (Put put : batch) {
+                    put.setDurability(durability);
+                    batchBytes += UserRowGenerator.payloadSize(put);
+                }
+                write(t, batch, batchBytes);
+                bytes.addAndGet(batchBytes);
+            }
+        } catch (IOException | RuntimeException e) {
+            failure.compareAndSet(null, e);
+            throw e;
+        }
+    }
+
+    // One batch is one PUT in the metrics, with all its rows
+    private void write(Table t, List<Put> batch, long batchBytes) throws IOException {
+        OperationMetrics puts = manager.getMetrics().get(Operation.PUT);
+        long start = System.nanoTime();
+        try {
+            t.put(batch);
+        } catch (IOException e) {
+            puts.error(e);
+            throw e;
+        }
+        puts.record(start, batch.size(), batchBytes);
+    }
+
+    /**
+     * Index of the region whose start key is the greatest one lower or equal than the row.
+     */
+    static int regionIndex(byte[][] sortedStartKeys, byte[] row) {
+        int pos = Arrays.binarySearch(sortedStartKeys, row, Bytes.BYTES_COMPARATOR);
+        return pos >= 0 ? pos : Math.max(0, -pos - 2);
+    }
+}
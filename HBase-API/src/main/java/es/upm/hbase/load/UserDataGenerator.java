@@ -0,0 +1,229 @@
+package es.upm.hbase.load;
+
+import es.upm.hbase.UsersSchema;
+import es.upm.hbase.codec.UserCodec;
+import es.upm.hbase.key.RowKeyStrategy;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Synthetic users for the loaders, built for throughput.
+ *
+ * Names, provinces and qualifiers are encoded once into byte[] dictionaries, the {@link UserCodec}
+ * encodes the values straight into a per-source buffer and every thread draws from its own
+ * {@link Source}, seeded from the generator seed and a stream number. Stream numbers are taken
+ * from a counter of the generator, shared with its {@link #withKeys} and {@link #withCodec}
+ * copies, so every source of a session draws different users, whichever loader asks for it, and
+ * a new generator with the same seed gives the same users again. Put copies the values into its cells, so the only per-row allocations are the
+ * Put itself and, for the unique key strategies, the row key.
+ *
+ * The dictionaries can be larger than the lists of UsersSchema (extra entries get a numeric
+ * suffix) and can be skewed: with skew s entry i is picked with probability proportional to
+ * 1/(i+1)^s, 0 being uniform.
+ */
+public class UserDataGenerator {
+    private static final int FIRST_YEAR = 2010;
+    private static final int YEARS = 14;
+
+    private final long seed;
+    private final int nameCardinality;
+    private final int provinceCardinality;
+    private final double skew;
+    private final RowKeyStrategy keys;
+    private final UserCodec codec;
+    private final AtomicInteger streams;
+
+    private final byte[][] names;
+    private final byte[][] provinces;
+    private final double[] nameCdf;
+    private final double[] provinceCdf;
+
+    public UserDataGenerator(long seed, int nameCardinality, int provinceCardinality, double skew, RowKeyStrategy keys) {
+        this(seed, nameCardinality, provinceCardinality, skew, keys, UserCodec.TEXT);
+    }
+
+    public UserDataGenerator(long seed, int nameCardinality, int provinceCardinality, double skew, RowKeyStrategy keys,
+                             UserCodec codec) {
+        this(seed, nameCardinality, provinceCardinality, skew, keys, codec, new AtomicInteger());
+    }
+
+    private UserDataGenerator(long seed, int nameCardinality, int provinceCardinality, double skew, RowKeyStrategy keys,
+                              UserCodec codec, AtomicInteger streams) {
+        if (nameCardinality < 1 || provinceCardinality < 1 || skew < 0) {
+            throw new IllegalArgumentException("Cardinalities must be positive and the skew cannot be negative");
+        }
+        this.seed = seed;
+        this.nameCardinality = nameCardinality;
+        this.provinceCardinality = provinceCardinality;
+        this.skew = skew;
+        this.keys = keys;
+        this.codec = codec;
+        this.streams = streams;
+        this.names = dictionary(UsersSchema.NAMES, nameCardinality);
+        this.provinces = dictionary(UsersSchema.PROVINCES, provinceCardinality);
+        this.nameCdf = cdf(nameCardinality, skew);
+        this.provinceCdf = cdf(provinceCardinality, skew);
+    }
+
+    /**
+     * Uniform users over the names and provinces of UsersSchema, with a random seed.
+     */
+    public UserDataGenerator(RowKeyStrategy keys) {
+        this(System.nanoTime(), UsersSchema.NAMES.length, UsersSchema.PROVINCES.length, 0, keys);
+    }
+
+    public UserDataGenerator withKeys(RowKeyStrategy keys) {
+        return new UserDataGenerator(seed, nameCardinality, provinceCardinality, skew, keys, codec, streams);
+    }
+
+    public UserDataGenerator withCodec(UserCodec codec) {
+        return new UserDataGenerator(seed, nameCardinality, provinceCardinality, skew, keys, codec, streams);
+    }
+
+    public UserCodec getCodec() {
+        return codec;
+    }
+
+    /**
+     * Independent source for one thread, on the next stream of the generator.
+     */
+    public Source newSource() {
+        int stream = streams.getAndIncrement();
+        return new Source(new SplittableRandom(seed ^ (0x9E3779B97F4A7C15L * (stream + 1))));
+    }
+
+    /**
+     * Receives the batches filled by {@link #generate}. The list is refilled once accept returns,
+     * so the puts have to be sent or copied before that.
+     */
+    public interface BatchConsumer {
+        void accept(List<Put> batch) throws IOException;
+    }
+
+    /**
+     * Generates rows users on threads threads, each one filling its own reusable batch of
+     * batchSize puts and handing it to the consumer, which is called concurrently.
+     */
+    public void generate(int threads, long rows, int batchSize, BatchConsumer consumer) throws IOException, InterruptedException {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> workers = new ArrayList<>(threads);
+        for (int t = 0; t < threads; t++) {
+            long quota = rows / threads + (t < rows % threads ? 1 : 0);
+            Source source = newSource();
+            Thread worker = new Thread(() -> {
+                List<Put> batch = new ArrayList<>(batchSize);
+                try {
+                    for (long done = 0; done < quota && failure.get() == null; done += batch.size()) {
+                        source.fill(batch, (int) Math.min(batchSize, quota - done), HConstants.LATEST_TIMESTAMP);
+                        consumer.accept(batch);
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }, "generator-" + t);
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        if (failure.get() instanceof IOException) {
+            throw (IOException) failure.get();
+        } else if (failure.get() != null) {
+            throw new IOException("Generation failed", failure.get());
+        }
+    }
+
+    private static byte[][] dictionary(String[] base, int cardinality) {
+        byte[][] entries = new byte[cardinality][];
+        for (int i = 0; i < cardinality; i++) {
+            String entry = base[i % base.length];
+            entries[i] = Bytes.toBytes(i < base.length ? entry : entry + (i / base.length));
+        }
+        return entries;
+    }
+
+    private static double[] cdf(int cardinality, double skew) {
+        if (skew == 0) {
+            return null;
+        }
+        double[] cdf = new double[cardinality];
+        double sum = 0;
+        for (int i = 0; i < cardinality; i++) {
+            sum += 1 / Math.pow(i + 1, skew);
+            cdf[i] = sum;
+        }
+        for (int i = 0; i < cardinality; i++) {
+            cdf[i] /= sum;
+        }
+        return cdf;
+    }
+
+    @Override
+    public String toString() {
+        return "seed " + seed + ", " + nameCardinality + " names, " + provinceCardinality + " provinces, skew " + skew
+                + ", keys " + keys + ", " + codec + " values";
+    }
+
+    /**
+     * Random source of one thread, not thread-safe.
+     */
+    public class Source {
+        private final SplittableRandom random;
+        private final byte[] buffer = new byte[UserCodec.BUFFER_SIZE];
+
+        Source(SplittableRandom random) {
+            this.random = random;
+        }
+
+        /**
+         * Next user, with cells carrying the given timestamp (LATEST_TIMESTAMP lets the server set it).
+         */
+        public Put next(long timestamp) {
+            byte[] name = names[pick(nameCdf, nameCardinality)];
+            return next(keys.rowKey(name, random.nextLong() & Long.MAX_VALUE), name, timestamp);
+        }
+
+        /**
+         * Next user, stored under the given row key.
+         */
+        public Put next(byte[] row, long timestamp) {
+            return next(row, names[pick(nameCdf, nameCardinality)], timestamp);
+        }
+
+        /**
+         * Clears the batch and fills it with rows new users.
+         */
+        public void fill(List<Put> batch, int rows, long timestamp) {
+            batch.clear();
+            for (int i = 0; i < rows; i++) {
+                batch.add(next(timestamp));
+            }
+        }
+
+        private Put next(byte[] row, byte[] name, long timestamp) {
+            byte[] province = provinces[pick(provinceCdf, provinceCardinality)];
+            Put put = new Put(row, timestamp);
+            codec.write(put, name, province, FIRST_YEAR + random.nextInt(YEARS), 1 + random.nextInt(12),
+                    1 + random.nextInt(28), buffer);
+            return put;
+        }
+
+        private int pick(double[] cdf, int cardinality) {
+            if (cdf == null) {
+                return random.nextInt(cardinality);
+            }
+            int i = Arrays.binarySearch(cdf, random.nextDouble());
+            return Math.min(i < 0 ? -i - 1 : i, cardinality - 1);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package es.upm.hbase.load;
+
+import es.upm.hbase.key.RowKeyStrategy;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.client.Put;
+
+import java.util.List;
+
+/**
+ * Generates the same random users as Main.put (row key built from the name by the key
+ * strategy, province and a lastLogin between 2010 and 2023), safe to be called from several
+ * producer threads: every thread gets its own source of the underlying {@link UserDataGenerator}.
+ */
+public class UserRowGenerator {
+    private final UserDataGenerator generator;
+    private final ThreadLocal<UserDataGenerator.Source> sources;
+
+    public UserRowGenerator(UserDataGenerator generator) {
+        this.generator = generator;
+        this.sources = ThreadLocal.withInitial(() -> this.generator.newSource());
+    }
+
+    public UserRowGenerator(RowKeyStrategy keys) {
+        this(new UserDataGenerator(keys));
+    }
+
+    public UserRowGenerator() {
+        this(RowKeyStrategy.NAME);
+    }
+
+    public Put next() {
+        return next(HConstants.LATEST_TIMESTAMP);
+    }
+
+    /**
+     * Generates a user whose cells carry the given timestamp.
+     */
+    public Put next(long timestamp) {
+        return sources.get().next(timestamp);
+    }
+
+    /**
+     * Generates a random user stored under the given row key instead of under its name.
+     */
+    public Put next(byte[] row) {
+        return sources.get().next(row, HConstants.LATEST_TIMESTAMP);
+    }
+
+    /**
+     * Bytes that the put sends for its cells: row, family, qualifier and value of each one.
+     */
+    public static long payloadSize(Put put) {
+        long size = 0;
+        for (List<Cell> cells : put.getFamilyCellMap().values()) {
+            for (Cell cell : cells) {
+                size += cell.getRowLength() + cell.getFamilyLength() + cell.getQualifierLength() + cell.getValueLength();
+            }
+        }
+        return size;
+    }
+}
@@ -0,0 +1,333 @@
+package es.upm.hbase.lookup;
+
+import es.upm.hbase.UsersSchema;
+import es.upm.hbase.codec.UserCodec;
+import es.upm.hbase.key.KeyRange;
+import es.upm.hbase.key.KeyedTable;
+import es.upm.hbase.key.RowKeyStrategy;
+import es.upm.hbase.metrics.OperationMetrics;
+import es.upm.hbase.scan.ParallelScanner;
+import org.HdrHistogram.Histogram;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.AsyncConnection;
+import org.apache.hadoop.hbase.client.AsyncTable;
+import org.apache.hadoop.hbase.client.Consistency;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Resolves a stream of user names through batched multi-gets on an {@link AsyncTable}.
+ *
+ * Keys are grouped into batches of batchSize gets and at most maxInFlight batches are pending at
+ * any time. In ordered mode results reach the sink in the same order as the keys; otherwise they
+ * are handed over as soon as their batch completes. Every key records the latency of its batch.
+ *
+ * Names are turned into rows through the {@link RowKeyStrategy} of the table, as
+ * {@link KeyedTable} does: with name keys a name is the row of a get, with unique keys it is a
+ * prefix scan in every bucket, whose users are merged in logical key order.
+ *
+ * With TIMELINE consistency the gets of a batch are sent one by one instead of as a multi-get,
+ * because the asynchronous client only falls back to the region replicas for single gets.
+ *
+ * When given the GET metrics of a connection, every batch is recorded there as one call with the
+ * rows of its users, the stale ones among them counted apart.
+ */
+public class AsyncLookupPipeline {
+
+    /**
+     * Receives the row of every user with the name of the key, or an empty result when there is none.
+     */
+    public interface ResultSink {
+        void accept(String key, Result result);
+    }
+
+    private final AsyncConnection connection;
+    private final TableName table;
+    private final int batchSize;
+    private final int maxInFlight;
+    private final boolean ordered;
+    private Consistency consistency = Consistency.STRONG;
+    private RowKeyStrategy keys = RowKeyStrategy.NAME;
+    private OperationMetrics metrics;
+    private final Histogram latencies = new Histogram(3600L * 1000 * 1000 * 1000, 3);
+
+    public AsyncLookupPipeline(AsyncConnection connection, TableName table, int batchSize, int maxInFlight, boolean ordered) {
+        this.connection = connection;
+        this.table = table;
+        this.batchSize = batchSize;
+        this.maxInFlight = maxInFlight;
+        this.ordered = ordered;
+    }
+
+    public AsyncLookupPipeline setConsistency(Consistency consistency) {
+        this.consistency = consistency;
+        return this;
+    }
+
+    /**
+     * Row key strategy of the table, name keys by default.
+     */
+    public AsyncLookupPipeline setKeys(RowKeyStrategy keys) {
+        this.keys = keys;
+        return this;
+    }
+
+    /**
+     * Metrics to record the lookups in, none by default.
+     */
+    public AsyncLookupPipeline setMetrics(OperationMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Looks up every key and prints the achieved QPS and latency percentiles.
+     */
+    public void run(Iterator<String> keys, ResultSink sink) throws IOException, InterruptedException {
+        latencies.reset();
+        AsyncTable<?> t = connection.getTable(table);
+        long start = System.nanoTime();
+        long lookups = ordered ? runOrdered(t, keys, sink) : runUnordered(t, keys, sink);
+        report(lookups, System.nanoTime() - start);
+    }
+
+    /**
+     * Baseline for comparison: the same lookups done one blocking {@link Table#get} at a time.
+     */
+    public void runBlocking(Table t, Iterator<String> names, ResultSink sink) throws IOException {
+        latencies.reset();
+        KeyedTable users = new KeyedTable(t, keys);
+        long start = System.nanoTime();
+        long lookups = 0;
+        while (names.hasNext()) {
+            String name = names.next();
+            long submitted = System.nanoTime();
+            List<Result> results;
+            try {
+                results = users.getUsers(Bytes.toBytes(name), lookup(name));
+            } catch (IOException | RuntimeException e) {
+                record(submitted, null, e);
+                throw e;
+            }
+            latencies.recordValue(System.nanoTime() - submitted);
+            record(submitted, Collections.singletonList(results), null);
+            deliver(name, results, sink);
+            lookups++;
+        }
+        report(lookups, System.nanoTime() - start);
+    }
+
+    private void report(long lookups, long elapsedNs) {
+        System.out.println(String.format("Resolved %d keys in %dms: %.0f QPS", lookups, elapsedNs / 1000000,
+                lookups / (elapsedNs / 1e9)));
+        System.out.println(String.format("Latency p50 %.3fms, p99 %.3fms, p999 %.3fms, max %.3fms",
+                percentileMs(50), percentileMs(99), percentileMs(99.9), latencies.getMaxValue() / 1e6));
+    }
+
+    public Histogram getLatencies() {
+        return latencies;
+    }
+
+    private long runOrdered(AsyncTable<?> t, Iterator<String> keys, ResultSink sink) throws IOException {
+        ArrayDeque<Batch> pending = new ArrayDeque<>();
+        long lookups = 0;
+        while (keys.hasNext()) {
+            Batch batch = submit(t, keys);
+            lookups += batch.keys.size();
+            pending.add(batch);
+            // Emit every batch already completed at the head, and block on the head when the window is full.
+            while (!pending.isEmpty() && (pending.peek().results.isDone() || pending.size() >= maxInFlight)) {
+                emit(pending.poll(), sink);
+            }
+        }
+        while (!pending.isEmpty()) {
+            emit(pending.poll(), sink);
+        }
+        return lookups;
+    }
+
+    private long runUnordered(AsyncTable<?> t, Iterator<String> keys, ResultSink sink) throws IOException, InterruptedException {
+        Semaphore window = new Semaphore(maxInFlight);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicLong lookups = new AtomicLong();
+        while (keys.hasNext() && failure.get() == null) {
+            window.acquire();
+            Batch batch = submit(t, keys);
+            lookups.addAndGet(batch.keys.size());
+            batch.results.whenComplete((results, error) -> {
+                try {
+                    if (error != null) {
+                        failure.compareAndSet(null, error);
+                    } else {
+                        synchronized (sink) {
+                            deliver(batch.keys, results, sink);
+                        }
+                    }
+                } finally {
+                    window.release();
+                }
+            });
+        }
+        window.acquire(maxInFlight);
+        if (failure.get() != null) {
+            throw new IOException("Lookup batch failed", failure.get());
+        }
+        return lookups.get();
+    }
+
+    private Batch submit(AsyncTable<?> t, Iterator<String> keys) {
+        List<String> names = new ArrayList<>(batchSize);
+        List<Get> gets = new ArrayList<>(batchSize);
+        while (keys.hasNext() && names.size() < batchSize) {
+            String name = keys.next();
+            names.add(name);
+            gets.add(lookup(name));
+        }
+        long submitted = System.nanoTime();
+        // Chained so that the latency is recorded before anyone waiting on the batch sees it completed.
+        CompletableFuture<List<List<Result>>> results = lookupAll(t, names, gets).whenComplete((r, e) -> {
+            synchronized (latencies) {
+                latencies.recordValueWithCount(System.nanoTime() - submitted, names.size());
+            }
+            record(submitted, r, e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+        });
+        return new Batch(names, results);
+    }
+
+    // Records a batch, or the failure that ended it, when there are metrics to record it in
+    private void record(long submitted, List<List<Result>> results, Throwable error) {
+        if (metrics == null) {
+            return;
+        } else if (error != null) {
+            metrics.error(error);
+            return;
+        }
+        long rows = 0;
+        long bytes = 0;
+        long stale = 0;
+        for (List<Result> users : results) {
+            for (Result user : users) {
+                rows++;
+                bytes += ParallelScanner.sizeOf(user);
+                if (user.isStale()) {
+                    stale++;
+                }
+            }
+        }
+        metrics.record(submitted, rows, bytes);
+        metrics.stale(stale);
+    }
+
+    private Get lookup(String name) {
+        return UserCodec.addColumns(new Get(Bytes.toBytes(name)), UsersSchema.PROVINCE).setConsistency(consistency);
+    }
+
+    // The users of every name, in the order of the names
+    private CompletableFuture<List<List<Result>>> lookupAll(AsyncTable<?> t, List<String> names, List<Get> gets) {
+        if (!keys.isUnique()) {
+            return getAll(t, gets).thenApply(results -> {
+                List<List<Result>> users = new ArrayList<>(results.size());
+                for (Result result : results) {
+                    users.add(Collections.singletonList(result));
+                }
+                return users;
+            });
+        }
+        List<CompletableFuture<List<Result>>> users = new ArrayList<>(names.size());
+        for (int i = 0; i < names.size(); i++) {
+            users.add(scanUsers(t, Bytes.toBytes(names.get(i)), gets.get(i)));
+        }
+        return joinAll(users);
+    }
+
+    // One scan per bucket of the logical range, merged back in logical key order
+    private CompletableFuture<List<Result>> scanUsers(AsyncTable<?> t, byte[] name, Get projection) {
+        Scan logical = KeyedTable.usersScan(name, projection);
+        List<CompletableFuture<List<Result>>> buckets = new ArrayList<>();
+        for (KeyRange range : keys.ranges(logical.getStartRow(), logical.getStopRow())) {
+            buckets.add(t.scanAll(KeyedTable.usersScan(name, projection).withStartRow(range.getStartRow(), true)
+                    .withStopRow(range.getStopRow(), false)));
+        }
+        return joinAll(buckets).thenApply(results -> {
+            List<Result> users = new ArrayList<>();
+            for (List<Result> bucket : results) {
+                users.addAll(bucket);
+            }
+            users.sort(KeyedTable.logicalOrder(keys.getPrefixLength()));
+            return users;
+        });
+    }
+
+    private static <T> CompletableFuture<List<T>> joinAll(List<CompletableFuture<T>> futures) {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).thenApply(done -> {
+            List<T> list = new ArrayList<>(futures.size());
+            for (CompletableFuture<T> future : futures) {
+                list.add(future.join());
+            }
+            return list;
+        });
+    }
+
+    private CompletableFuture<List<Result>> getAll(AsyncTable<?> t, List<Get> gets) {
+        if (consistency != Consistency.TIMELINE) {
+            return t.getAll(gets);
+        }
+        List<CompletableFuture<Result>> results = new ArrayList<>(gets.size());
+        for (Get get : gets) {
+            results.add(t.get(get));
+        }
+        return joinAll(results);
+    }
+
+    private void emit(Batch batch, ResultSink sink) throws IOException {
+        try {
+            deliver(batch.keys, batch.results.join(), sink);
+        } catch (CompletionException e) {
+            throw new IOException("Lookup batch failed", e.getCause());
+        }
+    }
+
+    private static void deliver(List<String> keys, List<List<Result>> results, ResultSink sink) {
+        for (int i = 0; i < keys.size(); i++) {
+            deliver(keys.get(i), results.get(i), sink);
+        }
+    }
+
+    private static void deliver(String key, List<Result> users, ResultSink sink) {
+        if (users.isEmpty()) {
+            sink.accept(key, Result.EMPTY_RESULT);
+        }
+        for (Result user : users) {
+            sink.accept(key, user);
+        }
+    }
+
+    private double percentileMs(double percentile) {
+        return latencies.getValueAtPercentile(percentile) / 1e6;
+    }
+
+    private static class Batch {
+        final List<String> keys;
+        final CompletableFuture<List<List<Result>>> results;
+
+        Batch(List<String> keys, CompletableFuture<List<List<Result>>> results) {
+            this.keys = keys;
+            this.results = results;
+        }
+    }
+}
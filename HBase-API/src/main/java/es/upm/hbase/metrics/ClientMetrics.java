@@ -0,0 +1,135 @@
+package es.upm.hbase.metrics;
+
+import org.apache.hadoop.hbase.client.metrics.ScanMetrics;
+
+import java.io.Closeable;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+/**
+ * Metrics of the operations run through one connection, published as JMX MBeans.
+ *
+ * Every operation type gets an {@link OperationMetrics} MBean named
+ * es.upm.hbase:type=Operations,connection=N,name=PUT (and so on), and the summed ScanMetrics are
+ * published as es.upm.hbase:type=Scans,connection=N. They are unregistered when closed.
+ *
+ * The HBase client keeps its own metrics per connection when hbase.client.metrics.enable is set:
+ * RPC counts and latencies by call type, meta cache hits and misses, exceptions and backoffs.
+ * It publishes them through JMX under the metrics domain, {@link #hbaseCounters()} reads them
+ * back from there.
+ */
+public class ClientMetrics implements Closeable {
+    public static final String DOMAIN = "es.upm.hbase";
+    private static final String HBASE_PREFIX = "org.apache.hadoop.hbase.client.MetricsConnection.";
+    private static final ObjectName HBASE_METRICS = objectName("metrics:name=" + HBASE_PREFIX + "*,*");
+    private static final AtomicInteger CONNECTIONS = new AtomicInteger();
+
+    private final OperationMetrics[] operations = new OperationMetrics[Operation.values().length];
+    private final ScanTotals scans = new ScanTotals();
+    private final List<ObjectName> names = new ArrayList<>();
+
+    public ClientMetrics() {
+        int connection = CONNECTIONS.incrementAndGet();
+        for (Operation operation : Operation.values()) {
+            operations[operation.ordinal()] = new OperationMetrics(operation);
+            register(DOMAIN + ":type=Operations,connection=" + connection + ",name=" + operation,
+                    operations[operation.ordinal()]);
+        }
+        register(DOMAIN + ":type=Scans,connection=" + connection, scans);
+    }
+
+    public OperationMetrics get(Operation operation) {
+        return operations[operation.ordinal()];
+    }
+
+    public ScanTotals getScans() {
+        return scans;
+    }
+
+    /**
+     * Adds the metrics of a finished scan to the totals, its RPC retries to those of SCAN.
+     */
+    public void scanned(ScanMetrics metrics) {
+        if (metrics == null) {
+            return;
+        }
+        scans.add(metrics);
+        get(Operation.SCAN).retries(metrics.countOfRPCRetries.get());
+    }
+
+    /**
+     * Counts of the metrics the HBase clients of this JVM publish, by metric name. Empty when
+     * hbase.client.metrics.enable is not set.
+     */
+    public static Map<String, Long> hbaseCounters() {
+        Map<String, Long> counters = new TreeMap<>();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : server.queryNames(HBASE_METRICS, null)) {
+            try {
+                Object count = server.getAttribute(name, "Count");
+                if (count instanceof Number) {
+                    counters.put(name.getKeyProperty("name").substring(HBASE_PREFIX.length()), ((Number) count).longValue());
+                }
+            } catch (JMException e) {
+                // Gauges have no count, and a metric may go away while being read.
+            }
+        }
+        return counters;
+    }
+
+    public void reset() {
+        for (OperationMetrics operation : operations) {
+            operation.reset();
+        }
+        scans.reset();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        for (OperationMetrics operation : operations) {
+            s.append(operation).append('\n');
+        }
+        return s.append("Scans: ").append(scans.getScans()).append(' ').append(scans.getCounters()).toString();
+    }
+
+    private void register(String name, Object mbean) {
+        ObjectName objectName = objectName(name);
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(mbean, objectName);
+            names.add(objectName);
+        } catch (JMException e) {
+            // The metrics are still kept, only JMX clients do not see them.
+            System.out.println("Cannot register " + name + ": " + e);
+        }
+    }
+
+    private static ObjectName objectName(String name) {
+        try {
+            return new ObjectName(name);
+        } catch (MalformedObjectNameException e) {
+            throw new IllegalArgumentException(name, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : names) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                // Already gone.
+            }
+        }
+        names.clear();
+    }
+}
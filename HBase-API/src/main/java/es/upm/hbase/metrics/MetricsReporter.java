@@ -0,0 +1,120 @@
+package es.upm.hbase.metrics;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends a snapshot of the {@link ClientMetrics} to a file at a fixed interval, one JSON object
+ * per line, so that a long run can be followed with tail and plotted afterwards.
+ *
+ * Every line holds the cumulative counters and latency percentiles of each operation, in
+ * nanoseconds, the summed ScanMetrics and the counters of the HBase client metrics. The rates
+ * of an interval are the difference between two lines.
+ */
+public class MetricsReporter implements Closeable {
+    private final ClientMetrics metrics;
+    private final Path file;
+    private final long intervalMs;
+    private final ScheduledExecutorService timer;
+    private PrintWriter out;
+
+    public MetricsReporter(ClientMetrics metrics, Path file, long intervalMs) {
+        this.metrics = metrics;
+        this.file = file;
+        this.intervalMs = intervalMs;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public MetricsReporter start() throws IOException {
+        out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND));
+        timer.scheduleAtFixedRate(this::report, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    /**
+     * Writes one snapshot now.
+     */
+    public synchronized void report() {
+        if (out == null) {
+            return;
+        }
+        StringBuilder line = new StringBuilder("{\"time\":\"").append(Instant.now()).append("\",\"operations\":{");
+        for (Operation operation : Operation.values()) {
+            OperationMetrics op = metrics.get(operation);
+            Histogram latency = op.getHistogram();
+            if (operation.ordinal() > 0) {
+                line.append(',');
+            }
+            line.append('"').append(operation).append("\":{\"count\":").append(latency.getTotalCount())
+                    .append(",\"errors\":").append(op.getErrors())
+                    .append(",\"retries\":").append(op.getRetries())
+                    .append(",\"rows\":").append(op.getRows())
+                    .append(",\"stale_rows\":").append(op.getStaleRows())
+                    .append(",\"bytes\":").append(op.getBytes())
+                    .append(",\"mean_ns\":").append((long) latency.getMean())
+                    .append(",\"p50_ns\":").append(latency.getValueAtPercentile(50))
+                    .append(",\"p99_ns\":").append(latency.getValueAtPercentile(99))
+                    .append(",\"p999_ns\":").append(latency.getValueAtPercentile(99.9))
+                    .append(",\"max_ns\":").append(latency.getMaxValue()).append('}');
+        }
+        line.append("},\"scans\":");
+        append(line, metrics.getScans().getCounters());
+        line.append(",\"hbase\":");
+        append(line, ClientMetrics.hbaseCounters());
+        out.println(line.append('}'));
+        out.flush();
+    }
+
+    private static void append(StringBuilder line, Map<String, Long> counters) {
+        line.append('{');
+        boolean first = true;
+        for (Map.Entry<String, Long> counter : counters.entrySet()) {
+            if (!first) {
+                line.append(',');
+            }
+            first = false;
+            line.append('"').append(counter.getKey().replace("\\", "\\\\").replace("\"", "\\\"")).append("\":")
+                    .append(counter.getValue());
+        }
+        line.append('}');
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Stops the timer and writes a last snapshot.
+     */
+    @Override
+    public synchronized void close() {
+        timer.shutdownNow();
+        if (out != null) {
+            report();
+            out.close();
+            out = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "every " + intervalMs + "ms to " + file;
+    }
+}
@@ -0,0 +1,8 @@
+package es.upm.hbase.metrics;
+
+/**
+ * Kinds of client operation the metrics are kept for.
+ */
+public enum Operation {
+    PUT, GET, SCAN, DELETE, ADMIN
+}
@@ -0,0 +1,156 @@
+package es.upm.hbase.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram and counters of one operation type, safe to update from any thread.
+ *
+ * Latencies are recorded in nanoseconds into a {@link Recorder}, which never blocks the
+ * recording threads; readers move what was recorded since the previous read into the cumulative
+ * histogram before taking a percentile. A failed operation counts as an error and its latency is
+ * not recorded, so that fast failures do not make the percentiles look better.
+ */
+public class OperationMetrics implements OperationMetricsMBean {
+    private static final long MAX_LATENCY_NS = 3600L * 1000 * 1000 * 1000;
+
+    private final Operation operation;
+    private final Recorder recorder = new Recorder(MAX_LATENCY_NS, 3);
+    private final Histogram total = new Histogram(MAX_LATENCY_NS, 3);
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final LongAdder stale = new LongAdder();
+    private volatile String lastError;
+    private Histogram interval;
+
+    OperationMetrics(Operation operation) {
+        this.operation = operation;
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    /**
+     * Records an operation that started at startNs, from System.nanoTime(), and ends now.
+     */
+    public void record(long startNs, long rowCount, long byteCount) {
+        recorder.recordValue(Math.min(MAX_LATENCY_NS, Math.max(0, System.nanoTime() - startNs)));
+        rows.add(rowCount);
+        bytes.add(byteCount);
+    }
+
+    public void error(Throwable error) {
+        errors.increment();
+        lastError = String.valueOf(error);
+    }
+
+    public void retries(long count) {
+        retries.add(count);
+    }
+
+    /**
+     * Counts rows answered by a secondary region replica, possibly behind the primary. The rest
+     * of the rows came from the primary.
+     */
+    public void stale(long count) {
+        stale.add(count);
+    }
+
+    /**
+     * Copy of the latencies recorded so far.
+     */
+    public synchronized Histogram getHistogram() {
+        interval = recorder.getIntervalHistogram(interval);
+        total.add(interval);
+        return total.copy();
+    }
+
+    @Override
+    public long getCount() {
+        return getHistogram().getTotalCount();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    @Override
+    public long getRows() {
+        return rows.sum();
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    @Override
+    public long getStaleRows() {
+        return stale.sum();
+    }
+
+    @Override
+    public double getMeanNs() {
+        return getHistogram().getMean();
+    }
+
+    @Override
+    public long getP50Ns() {
+        return getHistogram().getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getP99Ns() {
+        return getHistogram().getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getP999Ns() {
+        return getHistogram().getValueAtPercentile(99.9);
+    }
+
+    @Override
+    public long getMaxNs() {
+        return getHistogram().getMaxValue();
+    }
+
+    @Override
+    public String getLastError() {
+        return lastError;
+    }
+
+    @Override
+    public synchronized void reset() {
+        interval = recorder.getIntervalHistogram(interval);
+        total.reset();
+        errors.reset();
+        retries.reset();
+        rows.reset();
+        bytes.reset();
+        stale.reset();
+        lastError = null;
+    }
+
+    @Override
+    public String toString() {
+        Histogram histogram = getHistogram();
+        long staleRows = getStaleRows();
+        return String.format("%s: %d ops, %d errors, %d retries, %d rows%s, %.2f MB, mean %.3fms p50 %.3fms "
+                        + "p99 %.3fms p99.9 %.3fms max %.3fms", operation, histogram.getTotalCount(), getErrors(),
+                getRetries(), getRows(), staleRows == 0 ? "" : " (" + staleRows + " stale)", getBytes() / 1048576.0,
+                histogram.getMean() / 1e6,
+                histogram.getValueAtPercentile(50) / 1e6, histogram.getValueAtPercentile(99) / 1e6,
+                histogram.getValueAtPercentile(99.9) / 1e6, histogram.getMaxValue() / 1e6);
+    }
+}
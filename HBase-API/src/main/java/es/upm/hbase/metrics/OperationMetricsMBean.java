@@ -0,0 +1,36 @@
+package es.upm.hbase.metrics;
+
+/**
+ * JMX view of the {@link OperationMetrics} of one operation. Latencies are in nanoseconds and,
+ * like the counters, cover every operation since the connection was opened or last reset.
+ */
+public interface OperationMetricsMBean {
+    long getCount();
+
+    long getErrors();
+
+    long getRetries();
+
+    long getRows();
+
+    long getBytes();
+
+    /**
+     * Rows answered by a secondary region replica.
+     */
+    long getStaleRows();
+
+    double getMeanNs();
+
+    long getP50Ns();
+
+    long getP99Ns();
+
+    long getP999Ns();
+
+    long getMaxNs();
+
+    String getLastError();
+
+    void reset();
+}
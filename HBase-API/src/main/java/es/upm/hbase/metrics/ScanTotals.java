@@ -0,0 +1,50 @@
+package es.upm.hbase.metrics;
+
+import org.apache.hadoop.hbase.client.metrics.ScanMetrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sum of the {@link ScanMetrics} of every finished scan: RPCs, retries, bytes, regions, and the
+ * rows the RegionServers scanned and filtered out, under the names HBase gives them.
+ */
+public class ScanTotals implements ScanTotalsMXBean {
+    private final LongAdder scans = new LongAdder();
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Adds the metrics of a closed scanner, ignoring scanners without metrics enabled.
+     */
+    public void add(ScanMetrics metrics) {
+        if (metrics == null) {
+            return;
+        }
+        scans.increment();
+        for (Map.Entry<String, Long> counter : metrics.getMetricsMap(false).entrySet()) {
+            counters.computeIfAbsent(counter.getKey(), name -> new LongAdder()).add(counter.getValue());
+        }
+    }
+
+    @Override
+    public long getScans() {
+        return scans.sum();
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        Map<String, Long> values = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> counter : counters.entrySet()) {
+            values.put(counter.getKey(), counter.getValue().sum());
+        }
+        return values;
+    }
+
+    @Override
+    public void reset() {
+        scans.reset();
+        counters.clear();
+    }
+}
@@ -0,0 +1,14 @@
+package es.upm.hbase.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of the {@link ScanTotals}.
+ */
+public interface ScanTotalsMXBean {
+    long getScans();
+
+    Map<String, Long> getCounters();
+
+    void reset();
+}
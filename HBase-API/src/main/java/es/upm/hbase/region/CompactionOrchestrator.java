@@ -0,0 +1,306 @@
+package es.upm.hbase.region;
+
+import es.upm.hbase.connection.ConnectionManager;
+import org.apache.hadoop.hbase.ClusterMetrics;
+import org.apache.hadoop.hbase.HRegionLocation;
+import org.apache.hadoop.hbase.RegionMetrics;
+import org.apache.hadoop.hbase.ServerMetrics;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.Size;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Admin;
+import org.apache.hadoop.hbase.client.CompactionState;
+import org.apache.hadoop.hbase.client.RegionInfo;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Compacts and merges the regions of a table a few at a time instead of all at once.
+ *
+ * Compactions go region by region, those with the most store files and bytes first, with at
+ * most maxConcurrent running in the table and perServer on each RegionServer, so that the disks
+ * of a server are never rewriting more than a couple of regions. A compaction is tracked with
+ * getCompactionStateForRegion until the region is idle again; since requests are queued, a
+ * region is only considered done once it was seen compacting or the start grace has passed.
+ * Regions never seen compacting are reported apart as not observed: the server may have found
+ * nothing to do, or compacted them between two polls.
+ *
+ * Merges join pairs of adjacent regions whose store files together stay under a threshold.
+ */
+public class CompactionOrchestrator {
+    private final ConnectionManager manager;
+    private final TableName table;
+    private int maxConcurrent = 2;
+    private int perServer = 1;
+    private int minStoreFiles = 2;
+    private long pollMs = 1000;
+    private long startGraceMs = 5000;
+    private long timeoutMs = TimeUnit.MINUTES.toMillis(30);
+
+    public CompactionOrchestrator(ConnectionManager manager, TableName table) {
+        this.manager = manager;
+        this.table = table;
+    }
+
+    /**
+     * Compactions running at the same time in the table and on each server.
+     */
+    public CompactionOrchestrator setConcurrency(int maxConcurrent, int perServer) {
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.perServer = Math.max(1, perServer);
+        return this;
+    }
+
+    /**
+     * Store files a region needs before a minor compaction is worth it. Major compactions take
+     * every region with store files.
+     */
+    public CompactionOrchestrator setMinStoreFiles(int minStoreFiles) {
+        this.minStoreFiles = minStoreFiles;
+        return this;
+    }
+
+    public CompactionOrchestrator setPollMs(long pollMs) {
+        this.pollMs = pollMs;
+        return this;
+    }
+
+    public CompactionOrchestrator setTimeoutMs(long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+        return this;
+    }
+
+    /**
+     * Regions of the table with their store files, from one ClusterMetrics call, ranked by store
+     * file count and then by size.
+     */
+    public List<RegionFiles> rank() throws IOException {
+        Map<String, RegionMetrics> metrics = new HashMap<>();
+        Admin admin = manager.getAdmin();
+        for (ServerMetrics server : admin.getClusterMetrics(EnumSet.of(ClusterMetrics.Option.LIVE_SERVERS))
+                .getLiveServerMetrics().values()) {
+            for (RegionMetrics region : server.getRegionMetrics().values()) {
+                metrics.put(RegionInfo.encodeRegionName(region.getRegionName()), region);
+            }
+        }
+        List<RegionFiles> regions = new ArrayList<>();
+        for (HRegionLocation location : manager.getRegionLocator(table).getAllRegionLocations()) {
+            RegionInfo region = location.getRegion();
+            if (region.getReplicaId() != RegionInfo.DEFAULT_REPLICA_ID || location.getServerName() == null) {
+                continue;
+            }
+            RegionMetrics loaded = metrics.get(region.getEncodedName());
+            regions.add(new RegionFiles(region, location.getServerName(),
+                    loaded == null ? 0 : loaded.getStoreFileCount(),
+                    loaded == null ? 0 : (long) loaded.getStoreFileSize().get(Size.Unit.BYTE)));
+        }
+        regions.sort((a, b) -> a.storeFiles != b.storeFiles ? Integer.compare(b.storeFiles, a.storeFiles)
+                : Long.compare(b.storeFileBytes, a.storeFileBytes));
+        return regions;
+    }
+
+    /**
+     * Compacts the ranked regions within the concurrency caps and waits for all of them.
+     * Returns the store file bytes, before the compaction, of the regions seen compacting: what a
+     * major compaction rewrites, an upper bound for a minor one.
+     */
+    public long compact(boolean major) throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        List<RegionFiles> queue = new ArrayList<>();
+        for (RegionFiles region : rank()) {
+            if (region.storeFiles >= (major ? 1 : minStoreFiles)) {
+                queue.add(region);
+            }
+        }
+        System.out.println(String.format("%d regions to %s compact, at most %d at a time and %d per server.",
+                queue.size(), major ? "major" : "minor", maxConcurrent, perServer));
+
+        Admin admin = manager.getAdmin();
+        Map<ServerName, Integer> busy = new HashMap<>();
+        List<Running> running = new ArrayList<>();
+        long bytes = 0;
+        int done = 0;
+        int notObserved = 0;
+        long notObservedBytes = 0;
+        int total = queue.size();
+        while (!queue.isEmpty() || !running.isEmpty()) {
+            for (Iterator<RegionFiles> it = queue.iterator(); it.hasNext() && running.size() < maxConcurrent; ) {
+                RegionFiles region = it.next();
+                if (busy.getOrDefault(region.server, 0) >= perServer) {
+                    continue;
+                }
+                if (major) {
+                    admin.majorCompactRegion(region.region.getRegionName());
+                } else {
+                    admin.compactRegion(region.region.getRegionName());
+                }
+                busy.merge(region.server, 1, Integer::sum);
+                running.add(new Running(region));
+                it.remove();
+            }
+            Thread.sleep(pollMs);
+            for (Iterator<Running> it = running.iterator(); it.hasNext(); ) {
+                Running compaction = it.next();
+                CompactionState state = admin.getCompactionStateForRegion(compaction.region.region.getRegionName());
+                long elapsedMs = System.currentTimeMillis() - compaction.start;
+                if (state != CompactionState.NONE) {
+                    compaction.seen = true;
+                    if (elapsedMs > timeoutMs) {
+                        throw new IOException("Compaction of " + compaction.region + " still running after " + timeoutMs + "ms");
+                    }
+                } else if (compaction.seen || elapsedMs > startGraceMs) {
+                    it.remove();
+                    busy.merge(compaction.region.server, -1, Integer::sum);
+                    if (compaction.seen) {
+                        bytes += compaction.region.storeFileBytes;
+                        done++;
+                    } else {
+                        notObservedBytes += compaction.region.storeFileBytes;
+                        notObserved++;
+                    }
+                    System.out.println(String.format("%s %s in %dms - %d/%d regions done",
+                            compaction.seen ? "Compacted" : "No compaction observed of", compaction.region,
+                            elapsedMs, done + notObserved, total));
+                }
+            }
+        }
+        long elapsedMs = System.currentTimeMillis() - start;
+        System.out.println(String.format("Compacted %d regions, %.2f MB of store files rewritten, in %dms (%.2f MB/s).",
+                done, bytes / 1048576.0, elapsedMs, bytes / 1048576.0 / Math.max(1, elapsedMs / 1000.0)));
+        if (notObserved > 0) {
+            System.out.println(String.format("%d regions with %.2f MB of store files not observed compacting, not "
+                    + "counted: nothing to do or done between polls.", notObserved, notObservedBytes / 1048576.0));
+        }
+        return bytes;
+    }
+
+    /**
+     * Merges pairs of adjacent regions whose store files together are under maxBytes, at most
+     * maxConcurrent merges at a time, and waits for the merged regions to be online.
+     * Returns the number of merges done.
+     */
+    public int mergeSmall(long maxBytes) throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        List<RegionFiles> regions = rank();
+        regions.sort((a, b) -> Bytes.compareTo(a.region.getStartKey(), b.region.getStartKey()));
+        List<RegionFiles[]> pairs = new ArrayList<>();
+        for (int i = 0; i + 1 < regions.size(); i++) {
+            RegionFiles left = regions.get(i);
+            RegionFiles right = regions.get(i + 1);
+            if (left.storeFileBytes + right.storeFileBytes <= maxBytes) {
+                pairs.add(new RegionFiles[]{left, right});
+                // Each region takes part in one merge per run.
+                i++;
+            }
+        }
+        System.out.println(String.format("%d of %d regions merge in pairs under %.2f MB.", pairs.size() * 2,
+                regions.size(), maxBytes / 1048576.0));
+
+        Admin admin = manager.getAdmin();
+        int done = 0;
+        long bytes = 0;
+        for (int from = 0; from < pairs.size(); from += maxConcurrent) {
+            List<RegionFiles[]> round = pairs.subList(from, Math.min(pairs.size(), from + maxConcurrent));
+            List<Future<Void>> merges = new ArrayList<>(round.size());
+            for (RegionFiles[] pair : round) {
+                merges.add(admin.mergeRegionsAsync(new byte[][]{pair[0].region.getRegionName(),
+                        pair[1].region.getRegionName()}, false));
+            }
+            for (int i = 0; i < round.size(); i++) {
+                RegionFiles[] pair = round.get(i);
+                try {
+                    merges.get(i).get(timeoutMs, TimeUnit.MILLISECONDS);
+                    waitForMerged(pair[0].region.getStartKey(), pair[1].region.getEndKey());
+                    done++;
+                    bytes += pair[0].storeFileBytes + pair[1].storeFileBytes;
+                    System.out.println("Merged " + pair[0] + " and " + pair[1]);
+                } catch (ExecutionException | TimeoutException e) {
+                    System.out.println("Merge of " + pair[0] + " and " + pair[1] + " failed: " + e);
+                }
+            }
+        }
+        manager.refresh(table);
+        System.out.println(String.format("%d merges, %.2f MB of store files, in %dms. The merged regions keep "
+                + "references to the old files until they are compacted.", done, bytes / 1048576.0,
+                System.currentTimeMillis() - start));
+        return done;
+    }
+
+    /**
+     * Probes hbase:meta with an exponential backoff until a region spans [startKey, endKey).
+     */
+    private void waitForMerged(byte[] startKey, byte[] endKey) throws IOException, InterruptedException {
+        long start = System.currentTimeMillis();
+        long probeMs = 50;
+        while (true) {
+            HRegionLocation location = manager.getRegionLocator(table).getRegionLocation(startKey, true);
+            if (location != null && location.getServerName() != null
+                    && Bytes.equals(location.getRegion().getStartKey(), startKey)
+                    && Bytes.equals(location.getRegion().getEndKey(), endKey)) {
+                return;
+            }
+            if (System.currentTimeMillis() - start > timeoutMs) {
+                throw new IOException("No region [" + Bytes.toStringBinary(startKey) + ", "
+                        + Bytes.toStringBinary(endKey) + ") online after " + timeoutMs + "ms");
+            }
+            Thread.sleep(probeMs);
+            probeMs = Math.min(probeMs * 2, 2000);
+        }
+    }
+
+    /**
+     * A region with its store files.
+     */
+    public static class RegionFiles {
+        private final RegionInfo region;
+        private final ServerName server;
+        private final int storeFiles;
+        private final long storeFileBytes;
+
+        RegionFiles(RegionInfo region, ServerName server, int storeFiles, long storeFileBytes) {
+            this.region = region;
+            this.server = server;
+            this.storeFiles = storeFiles;
+            this.storeFileBytes = storeFileBytes;
+        }
+
+        public RegionInfo getRegion() {
+            return region;
+        }
+
+        public int getStoreFiles() {
+            return storeFiles;
+        }
+
+        public long getStoreFileBytes() {
+            return storeFileBytes;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s on %s (%d files, %.2f MB)", region.getEncodedName(), server.getHostname(),
+                    storeFiles, storeFileBytes / 1048576.0);
+        }
+    }
+
+    private static class Running {
+        final RegionFiles region;
+        final long start = System.currentTimeMillis();
+        boolean seen;
+
+        Running(RegionFiles region) {
+            this.region = region;
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package es.upm.hbase.region;
+
+import es.upm.hbase.balance.RebalancePlanner;
+import es.upm.hbase.connection.ConnectionManager;
+import org.apache.hadoop.hbase.HRegionLocation;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Admin;
+import org.apache.hadoop.hbase.client.RegionInfo;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.filter.FilterList;
+import org.apache.hadoop.hbase.filter.FirstKeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.KeyOnlyFilter;
+import org.apache.hadoop.hbase.filter.RandomRowFilter;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Finds the regions of a table worth splitting and splits them.
+ *
+ * A region is a candidate when its store files are over maxRegionBytes or its request rate is
+ * over hotFactor times the mean of the table, both taken from the same metrics snapshot the
+ * {@link RebalancePlanner} uses. The split key comes from the data of the region: the median of
+ * a random sample of its row keys, or the byte midpoint between its first and last rows when
+ * the sample is too small or MIDPOINT is chosen.
+ *
+ * All the splits are submitted to the master before waiting for any of them, and completion is
+ * probed on hbase:meta with an exponential backoff until both daughters of every split are open.
+ */
+public class SplitAdvisor {
+    public enum KeyChoice {
+        SAMPLED, MIDPOINT
+    }
+
+    private static final long FIRST_PROBE_MS = 50;
+    private static final long MAX_PROBE_MS = 2000;
+
+    private final ConnectionManager manager;
+    private final TableName table;
+    private long maxRegionBytes = 1024L * 1024 * 1024;
+    private double hotFactor = 2;
+    private int maxSplits = 8;
+    private long sampleMs = 5000;
+    private float sampleChance = 0.01f;
+    private KeyChoice keyChoice = KeyChoice.SAMPLED;
+    private long timeoutMs = TimeUnit.MINUTES.toMillis(5);
+
+    public SplitAdvisor(ConnectionManager manager, TableName table) {
+        this.manager = manager;
+        this.table = table;
+    }
+
+    /**
+     * Store file bytes over which a region is split.
+     */
+    public SplitAdvisor setMaxRegionBytes(long maxRegionBytes) {
+        this.maxRegionBytes = maxRegionBytes;
+        return this;
+    }
+
+    /**
+     * How many times the mean request rate of the table makes a region hot, 0 disables it.
+     */
+    public SplitAdvisor setHotFactor(double hotFactor) {
+        this.hotFactor = hotFactor;
+        return this;
+    }
+
+    public SplitAdvisor setMaxSplits(int maxSplits) {
+        this.maxSplits = maxSplits;
+        return this;
+    }
+
+    /**
+     * Time between the two metrics samples the request rates come from.
+     */
+    public SplitAdvisor setSampleMs(long sampleMs) {
+        this.sampleMs = sampleMs;
+        return this;
+    }
+
+    /**
+     * Probability of every row being part of the key sample.
+     */
+    public SplitAdvisor setSampleChance(float sampleChance) {
+        this.sampleChance = sampleChance;
+        return this;
+    }
+
+    public SplitAdvisor setKeyChoice(KeyChoice keyChoice) {
+        this.keyChoice = keyChoice;
+        return this;
+    }
+
+    public SplitAdvisor setTimeoutMs(long timeoutMs) {
+        this.timeoutMs = timeoutMs;
+        return this;
+    }
+
+    /**
+     * Oversized and hot regions, the largest first, with the key each one would be split at.
+     * Regions whose data gives no usable key, such as a single row, are left out.
+     */
+    public List<Split> advise() throws IOException, InterruptedException {
+        List<RebalancePlanner.RegionLoad> regions = new RebalancePlanner(manager, table).setSampleMs(sampleMs)
+                .snapshot().getRegions();
+        double meanRate = 0;
+        for (RebalancePlanner.RegionLoad region : regions) {
+            meanRate += region.getRequestRate() / regions.size();
+        }
+        List<RebalancePlanner.RegionLoad> candidates = new ArrayList<>();
+        for (RebalancePlanner.RegionLoad region : regions) {
+            boolean oversized = region.getStoreFileBytes() > maxRegionBytes;
+            boolean hot = hotFactor > 0 && meanRate > 0 && region.getRequestRate() > hotFactor * meanRate;
+            if (oversized || hot) {
+                candidates.add(region);
+            }
+        }
+        candidates.sort((a, b) -> a.getStoreFileBytes() != b.getStoreFileBytes()
+                ? Long.compare(b.getStoreFileBytes(), a.getStoreFileBytes())
+                : Double.compare(b.getRequestRate(), a.getRequestRate()));
+
+        List<Split> splits = new ArrayList<>();
+        Table t = manager.getTable(table);
+        for (RebalancePlanner.RegionLoad region : candidates) {
+            if (splits.size() == maxSplits) {
+                break;
+            }
+            String reason = region.getStoreFileBytes() > maxRegionBytes
+                    ? String.format("%.2f MB", region.getStoreFileBytes() / 1048576.0)
+                    : String.format("%.0f req/s, mean %.0f", region.getRequestRate(), meanRate);
+            byte[] key = splitKey(t, region.getRegionInfo());
+            if (key == null) {
+                System.out.println("No split key found for " + region.getName() + " (" + reason + ")");
+            } else {
+                splits.add(new Split(region.getRegionInfo(), key, reason));
+            }
+        }
+        return splits;
+    }
+
+    /**
+     * Split of the region holding the key, at the key.
+     */
+    public Split at(byte[] key) throws IOException {
+        HRegionLocation location = manager.getRegionLocator(table).getRegionLocation(key, true);
+        return new Split(location.getRegion(), key, "requested");
+    }
+
+    public void print(List<Split> splits) {
+        if (splits.isEmpty()) {
+            System.out.println("No region of " + table + " over " + maxRegionBytes / 1048576 + " MB or "
+                    + hotFactor + " times the mean request rate.");
+            return;
+        }
+        System.out.println(splits.size() + " splits:");
+        for (Split split : splits) {
+            System.out.println("  " + split);
+        }
+    }
+
+    /**
+     * Submits every split and waits until all the daughters are online. Returns the time from the
+     * first submission until then.
+     */
+    public long execute(List<Split> splits) throws IOException, InterruptedException {
+        if (splits.isEmpty()) {
+            return 0;
+        }
+        long start = System.currentTimeMillis();
+        Admin admin = manager.getAdmin();
+        List<Future<Void>> submitted = new ArrayList<>(splits.size());
+        for (Split split : splits) {
+            submitted.add(admin.splitRegionAsync(split.region.getRegionName(), split.key));
+        }
+        List<Split> pending = new ArrayList<>();
+        for (int i = 0; i < splits.size(); i++) {
+            try {
+                submitted.get(i).get(Math.max(1, timeoutMs - (System.currentTimeMillis() - start)), TimeUnit.MILLISECONDS);
+                pending.add(splits.get(i));
+            } catch (ExecutionException e) {
+                System.out.println("Split failed: " + splits.get(i) + ": " + e.getCause());
+            } catch (TimeoutException e) {
+                // The procedure may still finish, the probe decides.
+                pending.add(splits.get(i));
+            }
+        }
+        waitForDaughters(pending, start);
+        long elapsedMs = System.currentTimeMillis() - start;
+        System.out.println(String.format("%d/%d splits done, all daughters online after %dms.", pending.size(),
+                splits.size(), elapsedMs));
+        manager.refresh(table);
+        return elapsedMs;
+    }
+
+    /**
+     * Reads the locations of the table from hbase:meta, with an exponential backoff between reads,
+     * until every split key starts one open region and ends another.
+     */
+    private void waitForDaughters(List<Split> splits, long start) throws IOException, InterruptedException {
+        long probeMs = FIRST_PROBE_MS;
+        List<Split> waiting = new ArrayList<>(splits);
+        while (true) {
+            List<HRegionLocation> locations = manager.getRegionLocator(table).getAllRegionLocations();
+            waiting.removeIf(split -> online(locations, split.key));
+            if (waiting.isEmpty()) {
+                return;
+            }
+            if (System.currentTimeMillis() - start > timeoutMs) {
+                throw new IOException("Daughters not online after " + timeoutMs + "ms: " + waiting);
+            }
+            Thread.sleep(probeMs);
+            probeMs = Math.min(probeMs * 2, MAX_PROBE_MS);
+        }
+    }
+
+    private static boolean online(List<HRegionLocation> locations, byte[] key) {
+        boolean left = false;
+        boolean right = false;
+        for (HRegionLocation location : locations) {
+            // Split parents stay in meta until the catalog janitor removes them
+            if (location.getServerName() == null || location.getRegion().isSplit()) {
+                continue;
+            }
+            left |= Bytes.equals(location.getRegion().getEndKey(), key);
+            right |= Bytes.equals(location.getRegion().getStartKey(), key);
+        }
+        return left && right;
+    }
+
+    /**
+     * Key strictly inside the region to split it at, null when there is none.
+     */
+    private byte[] splitKey(Table t, RegionInfo region) throws IOException {
+        byte[] key = null;
+        if (keyChoice == KeyChoice.SAMPLED) {
+            List<byte[]> sample = sample(t, region);
+            if (sample.size() >= 2) {
+                key = sample.get(sample.size() / 2);
+            }
+        }
+        if (key == null) {
+            byte[] first = edgeRow(t, region, false);
+            byte[] last = edgeRow(t, region, true);
+            if (first != null && last != null && Bytes.compareTo(first, last) < 0) {
+                byte[] middle = Bytes.split(first, last, 1)[1];
+                // Rows too close to have a key in between
+                key = Bytes.compareTo(middle, first) > 0 ? middle : null;
+            }
+        }
+        boolean inside = key != null && Bytes.compareTo(key, region.getStartKey()) > 0
+                && (region.getEndKey().length == 0 || Bytes.compareTo(key, region.getEndKey()) < 0);
+        return inside ? key : null;
+    }
+
+    /**
+     * Sorted random sample of the row keys of the region, only keys cross the network.
+     */
+    private List<byte[]> sample(Table t, RegionInfo region) throws IOException {
+        Scan scan = new Scan().withStartRow(region.getStartKey()).withStopRow(region.getEndKey())
+                .setFilter(new FilterList(new RandomRowFilter(sampleChance), new FirstKeyOnlyFilter(), new KeyOnlyFilter()))
+                .setCacheBlocks(false).setCaching(1000);
+        List<byte[]> keys = new ArrayList<>();
+        try (ResultScanner rs = t.getScanner(scan)) {
+            for (Result result : rs) {
+                keys.add(result.getRow());
+            }
+        }
+        Collections.sort(keys, Bytes.BYTES_COMPARATOR);
+        return keys;
+    }
+
+    /**
+     * First or last row of the region, null when it is empty.
+     */
+    private static byte[] edgeRow(Table t, RegionInfo region, boolean last) throws IOException {
+        Scan scan = last
+                // Reversed scans go from the start row down to the stop row, the end key belongs to the next region
+                ? new Scan().withStartRow(region.getEndKey(), false).withStopRow(region.getStartKey(), true).setReversed(true)
+                : new Scan().withStartRow(region.getStartKey()).withStopRow(region.getEndKey());
+        scan.setFilter(new FilterList(new FirstKeyOnlyFilter(), new KeyOnlyFilter())).setLimit(1);
+        try (ResultScanner rs = t.getScanner(scan)) {
+            Result result = rs.next();
+            return result == null ? null : result.getRow();
+        }
+    }
+
+    /**
+     * Split of one region at one key.
+     */
+    public static class Split {
+        private final RegionInfo region;
+        private final byte[] key;
+        private final String reason;
+
+        Split(RegionInfo region, byte[] key, String reason) {
+            this.region = region;
+            this.key = key;
+            this.reason = reason;
+        }
+
+        public RegionInfo getRegion() {
+            return region;
+        }
+
+        public byte[] getKey() {
+            return key;
+        }
+
+        @Override
+        public String toString() {
+            return region.getEncodedName() + " [" + Bytes.toStringBinary(region.getStartKey()) + ", "
+                    + Bytes.toStringBinary(region.getEndKey()) + ") at " + Bytes.toStringBinary(key) + " (" + reason + ")";
+        }
+    }
+}
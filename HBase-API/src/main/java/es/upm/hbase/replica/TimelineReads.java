@@ -0,0 +1,124 @@
+package es.upm.hbase.replica;
+
+import es.upm.hbase.connection.ConnectionManager;
+import es.upm.hbase.metrics.ClientMetrics;
+import es.upm.hbase.metrics.Operation;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.AsyncConnection;
+import org.apache.hadoop.hbase.client.Consistency;
+import org.apache.hadoop.hbase.client.Query;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Table;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Timeline-consistent reads of tables with region replicas.
+ *
+ * A TIMELINE get is sent to the primary replica first and, when the primary has not answered
+ * within the primary call timeout, to the secondary replicas too; the first answer wins. An
+ * answer from a secondary may miss the latest writes and is flagged by {@link Result#isStale()}.
+ * The timeout is a setting of the connection, so when it differs from that of the application
+ * the reads go through a connection of their own, opened with the same configuration otherwise.
+ *
+ * The results read, by gets, scans or batch lookups, are counted as stale or primary answers in
+ * the metrics of the application connection, under the operation that read them.
+ */
+public class TimelineReads implements Closeable {
+    public static final String PRIMARY_TIMEOUT_KEY = "hbase.client.primaryCallTimeout.get";
+    public static final String PRIMARY_TIMEOUT_MULTIGET_KEY = "hbase.client.primaryCallTimeout.multiget";
+    public static final long DEFAULT_PRIMARY_TIMEOUT_US = 10000;
+
+    private final ConnectionManager manager;
+    private final boolean owned;
+    private final ClientMetrics metrics;
+    private final long primaryTimeoutUs;
+
+    public TimelineReads(ConnectionManager manager, long primaryTimeoutUs) throws IOException {
+        this.metrics = manager.getMetrics();
+        this.primaryTimeoutUs = primaryTimeoutUs;
+        Configuration conf = manager.getConfiguration();
+        if (conf.getLong(PRIMARY_TIMEOUT_KEY, DEFAULT_PRIMARY_TIMEOUT_US) == primaryTimeoutUs
+                && conf.getLong(PRIMARY_TIMEOUT_MULTIGET_KEY, DEFAULT_PRIMARY_TIMEOUT_US) == primaryTimeoutUs) {
+            this.manager = manager;
+            this.owned = false;
+        } else {
+            conf = new Configuration(conf);
+            conf.setLong(PRIMARY_TIMEOUT_KEY, primaryTimeoutUs);
+            conf.setLong(PRIMARY_TIMEOUT_MULTIGET_KEY, primaryTimeoutUs);
+            this.manager = new ConnectionManager(conf);
+            this.owned = true;
+        }
+    }
+
+    /**
+     * Table handle of the reading connection, cached per thread like those of
+     * {@link ConnectionManager#getTable}.
+     */
+    public Table getTable(TableName table) throws IOException {
+        return manager.getTable(table);
+    }
+
+    /**
+     * Asynchronous connection with the same primary call timeout.
+     */
+    public AsyncConnection getAsyncConnection() throws IOException {
+        return manager.getAsyncConnection();
+    }
+
+    public void warmUp(TableName table) throws IOException {
+        manager.warmUp(table);
+    }
+
+    /**
+     * Marks the get or scan as timeline consistent.
+     */
+    public static <T extends Query> T timeline(T query) {
+        query.setConsistency(Consistency.TIMELINE);
+        return query;
+    }
+
+    /**
+     * Counts the stale results among those the operation read.
+     */
+    public List<Result> count(Operation operation, List<Result> results) {
+        long stale = 0;
+        for (Result result : results) {
+            if (result.isStale()) {
+                stale++;
+            }
+        }
+        metrics.get(operation).stale(stale);
+        return results;
+    }
+
+    /**
+     * Counts the result as stale when the operation got it from a secondary replica.
+     */
+    public Result count(Operation operation, Result result) {
+        if (result.isStale()) {
+            metrics.get(operation).stale(1);
+        }
+        return result;
+    }
+
+    public long getPrimaryTimeoutUs() {
+        return primaryTimeoutUs;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("timeline reads, primary call timeout %.3fms%s", primaryTimeoutUs / 1000.0,
+                owned ? " (own connection)" : "");
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (owned) {
+            manager.close();
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package es.upm.hbase.scan;
+
+import org.apache.hadoop.hbase.client.Result;
+
+/**
+ * Only counts the rows, to measure the scan without any output cost.
+ */
+public class CountingRowSink implements RowSink {
+    private long rows = 0;
+
+    @Override
+    public void accept(Result result) {
+        rows++;
+    }
+
+    @Override
+    public long getRows() {
+        return rows;
+    }
+
+    @Override
+    public void close() {
+        System.out.println("Rows: " + rows);
+    }
+}
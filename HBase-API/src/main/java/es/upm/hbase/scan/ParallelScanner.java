@@ -0,0 +1,296 @@
+package es.upm.hbase.scan;
+
+import es.upm.hbase.connection.ConnectionManager;
+import es.upm.hbase.key.KeyRange;
+import es.upm.hbase.metrics.Operation;
+import es.upm.hbase.metrics.OperationMetrics;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.HRegionLocation;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.Table;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Scans a table, or key ranges of it, with one sub-scanner per region running on a bounded
+ * worker pool.
+ *
+ * At most maxScannersPerServer sub-scanners are open at the same time against a RegionServer.
+ * In ordered mode every region streams into its own bounded queue and the calling thread drains
+ * them in key order, so rows reach the consumer sorted. In unordered mode the consumer is called
+ * directly from the workers and therefore has to be thread-safe, which suits aggregations.
+ * Every region scan is recorded as one SCAN in the metrics of the connection, with its ScanMetrics.
+ */
+public class ParallelScanner {
+
+    /**
+     * Receives the scanned rows.
+     */
+    public interface RowConsumer {
+        void accept(Result result) throws IOException;
+    }
+
+    private static final Result END_OF_REGION = Result.EMPTY_RESULT;
+
+    private final ConnectionManager manager;
+    private final TableName table;
+    private final int threads;
+    private final int maxScannersPerServer;
+    private final int queueCapacity;
+    private boolean verbose = true;
+
+    public ParallelScanner(ConnectionManager manager, TableName table, int threads, int maxScannersPerServer, int queueCapacity) {
+        this.manager = manager;
+        this.table = table;
+        this.threads = threads;
+        this.maxScannersPerServer = maxScannersPerServer;
+        this.queueCapacity = queueCapacity;
+    }
+
+    public ParallelScanner(ConnectionManager manager, TableName table) {
+        this(manager, table, Runtime.getRuntime().availableProcessors(), 2, 1000);
+    }
+
+    /**
+     * Enables or disables the per-region progress lines, the final summary is always printed.
+     */
+    public ParallelScanner setVerbose(boolean verbose) {
+        this.verbose = verbose;
+        return this;
+    }
+
+    /**
+     * Runs the scan over every region that intersects its [startRow, stopRow) range.
+     * The template is copied for every region, so filters, columns and caching apply to all.
+     */
+    public ScanSummary scan(Scan template, boolean ordered, RowConsumer consumer) throws IOException, InterruptedException {
+        return scan(template, Collections.singletonList(new KeyRange(template.getStartRow(), template.getStopRow())),
+                ordered, consumer);
+    }
+
+    /**
+     * Runs the scan over the regions of all the key ranges in one go, such as the buckets a
+     * {@link es.upm.hbase.key.RowKeyStrategy} maps a logical range to, instead of the range of the
+     * template. In ordered mode rows come range after range, in key order within each one.
+     */
+    public ScanSummary scan(Scan template, List<KeyRange> keyRanges, boolean ordered, RowConsumer consumer)
+            throws IOException, InterruptedException {
+        List<HRegionLocation> locations = manager.getRegionLocator(table).getAllRegionLocations();
+        List<RegionRange> ranges = new ArrayList<>();
+        for (KeyRange keyRange : keyRanges) {
+            ranges.addAll(RegionRange.split(locations, keyRange.getStartRow(), keyRange.getStopRow()));
+        }
+        Map<ServerName, Semaphore> serverSlots = new HashMap<>();
+        for (RegionRange range : ranges) {
+            serverSlots.computeIfAbsent(range.getServer(), s -> new Semaphore(maxScannersPerServer, true));
+        }
+
+        ScanSummary summary = new ScanSummary(ranges.size());
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<BlockingQueue<Result>> queues = new ArrayList<>();
+        for (int i = 0; ordered && i < ranges.size(); i++) {
+            queues.add(new ArrayBlockingQueue<>(queueCapacity));
+        }
+        ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, ranges.size())));
+        // Server slots are taken here, in key order, so that a region blocked on its full queue
+        // never holds a slot needed by an earlier region the ordered consumer is waiting for.
+        Thread dispatcher = new Thread(() -> {
+            try {
+                for (int i = 0; i < ranges.size() && failure.get() == null; i++) {
+                    RegionRange range = ranges.get(i);
+                    Semaphore slots = serverSlots.get(range.getServer());
+                    BlockingQueue<Result> queue = ordered ? queues.get(i) : null;
+                    slots.acquire();
+                    int index = i;
+                    workers.execute(() -> {
+                        try {
+                            scanRegion(template, range, index, queue, consumer, summary, failure);
+                        } catch (Throwable e) {
+                            failure.compareAndSet(null, e);
+                        } finally {
+                            slots.release();
+                        }
+                    });
+                }
+            } catch (Throwable e) {
+                failure.compareAndSet(null, e);
+            }
+        }, "scan-dispatcher");
+        dispatcher.setDaemon(true);
+        try {
+            dispatcher.start();
+            if (ordered) {
+                drain:
+                for (BlockingQueue<Result> queue : queues) {
+                    Result result;
+                    while ((result = queue.poll(100, TimeUnit.MILLISECONDS)) != END_OF_REGION) {
+                        if (result != null) {
+                            consumer.accept(result);
+                        } else if (failure.get() != null) {
+                            break drain;
+                        }
+                    }
+                }
+            }
+            if (failure.get() != null) {
+                // Workers may be waiting for room in queues nobody drains any more, and the
+                // dispatcher for the slots they hold.
+                dispatcher.interrupt();
+                workers.shutdownNow();
+            }
+            dispatcher.join();
+            workers.shutdown();
+            while (!workers.isTerminated()) {
+                workers.awaitTermination(1, TimeUnit.SECONDS);
+            }
+        } catch (IOException | RuntimeException | InterruptedException e) {
+            // A failing consumer stops the regions still queueing rows for it too
+            failure.compareAndSet(null, e);
+            throw e;
+        } finally {
+            dispatcher.interrupt();
+            workers.shutdownNow();
+        }
+        if (failure.get() != null) {
+            throw new IOException("Parallel scan failed", failure.get());
+        }
+        summary.finish();
+        summary.print();
+        return summary;
+    }
+
+    private void scanRegion(Scan template, RegionRange range, int index, BlockingQueue<Result> queue,
+                            RowConsumer consumer, ScanSummary summary, AtomicReference<Throwable> failure)
+            throws IOException, InterruptedException {
+        Scan scan = new Scan(template).withStartRow(range.getStartRow(), true).withStopRow(range.getStopRow(), false)
+                .setScanMetricsEnabled(true);
+        OperationMetrics metrics = manager.getMetrics().get(Operation.SCAN);
+        long start = System.nanoTime();
+        long rows = 0;
+        long bytes = 0;
+        try (Table t = manager.getConnection().getTable(table);
+             ResultScanner scanner = t.getScanner(scan)) {
+            for (Result result : scanner) {
+                rows++;
+                bytes += sizeOf(result);
+                if (queue != null) {
+                    if (!offer(queue, result, failure)) {
+                        return;
+                    }
+                } else {
+                    consumer.accept(result);
+                }
+            }
+            metrics.record(start, rows, bytes);
+            manager.getMetrics().scanned(scanner.getScanMetrics());
+        } catch (IOException | RuntimeException e) {
+            metrics.error(e);
+            throw e;
+        } finally {
+            if (queue != null) {
+                offer(queue, END_OF_REGION, failure);
+            }
+        }
+        long elapsedNs = System.nanoTime() - start;
+        summary.regionDone(rows, bytes);
+        if (verbose) {
+            System.out.println(String.format("Region %d/%d %s: %d rows in %dms (%.0f rows/s) - %d/%d regions done",
+                    index + 1, summary.getRegions(), range, rows, elapsedNs / 1000000, rows / (elapsedNs / 1e9),
+                    summary.getRegionsDone(), summary.getRegions()));
+        }
+    }
+
+    /**
+     * Queues the row, giving up when another region has failed and the queue is no longer drained.
+     */
+    private static boolean offer(BlockingQueue<Result> queue, Result result, AtomicReference<Throwable> failure)
+            throws InterruptedException {
+        while (failure.get() == null) {
+            if (queue.offer(result, 100, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Serialized size of the cells of the row.
+     */
+    public static long sizeOf(Result result) {
+        long size = 0;
+        for (Cell cell : result.rawCells()) {
+            size += cell.getSerializedSize();
+        }
+        return size;
+    }
+
+    /**
+     * Totals of a parallel scan.
+     */
+    public static class ScanSummary {
+        private final int regions;
+        private final long start = System.nanoTime();
+        private final AtomicLong regionsDone = new AtomicLong();
+        private final AtomicLong rows = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private long elapsedNs;
+
+        ScanSummary(int regions) {
+            this.regions = regions;
+        }
+
+        void regionDone(long regionRows, long regionBytes) {
+            rows.addAndGet(regionRows);
+            bytes.addAndGet(regionBytes);
+            regionsDone.incrementAndGet();
+        }
+
+        void finish() {
+            elapsedNs = System.nanoTime() - start;
+        }
+
+        public int getRegions() {
+            return regions;
+        }
+
+        public long getRegionsDone() {
+            return regionsDone.get();
+        }
+
+        public long getRows() {
+            return rows.get();
+        }
+
+        public long getBytes() {
+            return bytes.get();
+        }
+
+        public long getElapsedNs() {
+            return elapsedNs;
+        }
+
+        void print() {
+            double seconds = elapsedNs / 1e9;
+            System.out.println(String.format("Scanned %d rows from %d regions in %dms (%.0f rows/s, %.2f MB/s).",
+                    rows.get(), regions, elapsedNs / 1000000, rows.get() / seconds,
+                    bytes.get() / seconds / (1024 * 1024)));
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package es.upm.hbase.scan;
+
+import es.upm.hbase.UsersSchema;
+import es.upm.hbase.codec.UserCodec;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+
+/**
+ * Prints the key and one column of every row as text, the original output of the scan options.
+ * Columns of the users are decoded whatever their encoding.
+ */
+public class PrintRowSink implements RowSink {
+    private final byte[] family;
+    private final byte[] qualifier;
+    private final String label;
+    private long rows = 0;
+
+    public PrintRowSink(byte[] family, byte[] qualifier, String label) {
+        this.family = family;
+        this.qualifier = qualifier;
+        this.label = label;
+    }
+
+    @Override
+    public void accept(Result result) {
+        String key = Bytes.toString(result.getRow());
+        String value = Bytes.toString(Bytes.equals(family, UsersSchema.FAMILY)
+                ? UserCodec.value(result, qualifier) : result.getValue(family, qualifier));
+        System.out.println("Key: " + key + " " + label + ": " + value);
+        rows++;
+    }
+
+    @Override
+    public long getRows() {
+        return rows;
+    }
+
+    @Override
+    public void close() {
+    }
+}
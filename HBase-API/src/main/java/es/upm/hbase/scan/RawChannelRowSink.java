@@ -0,0 +1,92 @@
+package es.upm.hbase.scan;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.client.Result;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Writes the raw bytes of every cell, straight from the cell backing arrays, into a large buffer
+ * that is drained to a channel only when full. No String is built per row.
+ *
+ * Every row becomes one line: the key followed by a tab separated qualifier=value per cell.
+ */
+public class RawChannelRowSink implements RowSink {
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    private final boolean closeChannel;
+    private long rows = 0;
+    private long bytes = 0;
+
+    public RawChannelRowSink(WritableByteChannel channel, int bufferSize, boolean closeChannel) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        this.closeChannel = closeChannel;
+    }
+
+    @Override
+    public void accept(Result result) throws IOException {
+        Cell[] cells = result.rawCells();
+        if (cells == null || cells.length == 0) {
+            return;
+        }
+        Cell first = cells[0];
+        write(first.getRowArray(), first.getRowOffset(), first.getRowLength());
+        for (Cell cell : cells) {
+            writeByte((byte) '\t');
+            write(cell.getQualifierArray(), cell.getQualifierOffset(), cell.getQualifierLength());
+            writeByte((byte) '=');
+            write(cell.getValueArray(), cell.getValueOffset(), cell.getValueLength());
+        }
+        writeByte((byte) '\n');
+        rows++;
+    }
+
+    private void write(byte[] array, int offset, int length) throws IOException {
+        if (buffer.remaining() < length) {
+            drain();
+            if (buffer.remaining() < length) {
+                ByteBuffer large = ByteBuffer.wrap(array, offset, length);
+                while (large.hasRemaining()) {
+                    bytes += channel.write(large);
+                }
+                return;
+            }
+        }
+        buffer.put(array, offset, length);
+    }
+
+    private void writeByte(byte b) throws IOException {
+        if (!buffer.hasRemaining()) {
+            drain();
+        }
+        buffer.put(b);
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            bytes += channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public long getRows() {
+        return rows;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        drain();
+        if (closeChannel) {
+            channel.close();
+        }
+    }
+}
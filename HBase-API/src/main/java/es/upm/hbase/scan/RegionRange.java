@@ -0,0 +1,92 @@
+package es.upm.hbase.scan;
+
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HRegionLocation;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.client.RegionInfo;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The part of a scanned key range [startRow, stopRow) that falls into a single region.
+ */
+public class RegionRange {
+    private final HRegionLocation location;
+    private final byte[] startRow;
+    private final byte[] stopRow;
+
+    RegionRange(HRegionLocation location, byte[] startRow, byte[] stopRow) {
+        this.location = location;
+        this.startRow = startRow;
+        this.stopRow = stopRow;
+    }
+
+    public HRegionLocation getLocation() {
+        return location;
+    }
+
+    public ServerName getServer() {
+        return location.getServerName();
+    }
+
+    public String getRegionName() {
+        return location.getRegion().getEncodedName();
+    }
+
+    public byte[] getStartRow() {
+        return startRow;
+    }
+
+    /**
+     * Exclusive stop row, empty when the range reaches the end of the table.
+     */
+    public byte[] getStopRow() {
+        return stopRow;
+    }
+
+    /**
+     * Cuts [startRow, stopRow) at the region boundaries. Empty keys mean the start or the end of
+     * the table. The locations must belong to the same table; the result is sorted by key. Only
+     * the primary replica of every region is taken.
+     */
+    public static List<RegionRange> split(List<HRegionLocation> locations, byte[] startRow, byte[] stopRow) {
+        List<HRegionLocation> sorted = new ArrayList<>(locations.size());
+        for (HRegionLocation location : locations) {
+            if (location.getRegion().getReplicaId() == RegionInfo.DEFAULT_REPLICA_ID) {
+                sorted.add(location);
+            }
+        }
+        sorted.sort((a, b) -> Bytes.compareTo(a.getRegion().getStartKey(), b.getRegion().getStartKey()));
+
+        List<RegionRange> ranges = new ArrayList<>();
+        for (HRegionLocation location : sorted) {
+            byte[] regionStart = location.getRegion().getStartKey();
+            byte[] regionEnd = location.getRegion().getEndKey();
+            byte[] from = Bytes.compareTo(startRow, regionStart) > 0 ? startRow : regionStart;
+            byte[] to;
+            if (isEnd(regionEnd)) {
+                to = stopRow;
+            } else if (isEnd(stopRow)) {
+                to = regionEnd;
+            } else {
+                to = Bytes.compareTo(stopRow, regionEnd) < 0 ? stopRow : regionEnd;
+            }
+            if (isEnd(to) || Bytes.compareTo(from, to) < 0) {
+                ranges.add(new RegionRange(location, from, to));
+            }
+        }
+        return ranges;
+    }
+
+    private static boolean isEnd(byte[] key) {
+        return Bytes.equals(key, HConstants.EMPTY_END_ROW);
+    }
+
+    @Override
+    public String toString() {
+        return getRegionName() + " [" + Bytes.toStringBinary(startRow) + ", " + Bytes.toStringBinary(stopRow)
+                + ") on " + getServer();
+    }
+}
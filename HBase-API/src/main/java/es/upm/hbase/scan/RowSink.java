@@ -0,0 +1,16 @@
+package es.upm.hbase.scan;
+
+import org.apache.hadoop.hbase.client.Result;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destination of the rows returned by a scan. Closing it flushes any buffered output.
+ */
+public interface RowSink extends Closeable {
+
+    void accept(Result result) throws IOException;
+
+    long getRows();
+}
@@ -0,0 +1,158 @@
+package es.upm.hbase.scan;
+
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.metrics.ScanMetrics;
+
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Tunable settings applied to the scans of the examples: column projection, caching, batching,
+ * result size and scan metrics, plus the way the scanned rows are written out.
+ */
+public class ScanProfile {
+
+    /**
+     * How the scanned rows are output.
+     */
+    public enum Output {
+        /** One text line per row, decoding key and value as Strings. */
+        PRINT,
+        /** Raw cell bytes through a large buffered channel to stdout. */
+        RAW,
+        /** Rows are only counted. */
+        COUNT
+    }
+
+    private final List<byte[][]> columns = new ArrayList<>();
+    private int caching = -1;
+    private int batch = -1;
+    private long maxResultSize = -1;
+    private boolean metricsEnabled = false;
+    private Output output = Output.PRINT;
+    private int outputBufferSize = 4 * 1024 * 1024;
+
+    /**
+     * Restricts the scan to family:qualifier, it can be called several times.
+     */
+    public ScanProfile addColumn(byte[] family, byte[] qualifier) {
+        columns.add(new byte[][]{family, qualifier});
+        return this;
+    }
+
+    public ScanProfile clearColumns() {
+        columns.clear();
+        return this;
+    }
+
+    /**
+     * Rows fetched per RPC, a negative value keeps the client default.
+     */
+    public ScanProfile setCaching(int caching) {
+        this.caching = caching;
+        return this;
+    }
+
+    /**
+     * Maximum cells per returned Result, a negative value returns whole rows. It is not applied
+     * to scans whose filter decides on whole rows.
+     */
+    public ScanProfile setBatch(int batch) {
+        this.batch = batch;
+        return this;
+    }
+
+    public int getBatch() {
+        return batch;
+    }
+
+    /**
+     * Maximum bytes per RPC, a negative value keeps the client default.
+     */
+    public ScanProfile setMaxResultSize(long maxResultSize) {
+        this.maxResultSize = maxResultSize;
+        return this;
+    }
+
+    public ScanProfile setMetricsEnabled(boolean metricsEnabled) {
+        this.metricsEnabled = metricsEnabled;
+        return this;
+    }
+
+    public boolean isMetricsEnabled() {
+        return metricsEnabled;
+    }
+
+    public ScanProfile setOutput(Output output) {
+        this.output = output;
+        return this;
+    }
+
+    public Output getOutput() {
+        return output;
+    }
+
+    public ScanProfile setOutputBufferSize(int outputBufferSize) {
+        this.outputBufferSize = outputBufferSize;
+        return this;
+    }
+
+    public Scan apply(Scan scan) {
+        for (byte[][] column : columns) {
+            scan.addColumn(column[0], column[1]);
+        }
+        if (caching > 0) {
+            scan.setCaching(caching);
+        }
+        if (batch > 0 && !needsWholeRows(scan)) {
+            scan.setBatch(batch);
+        }
+        if (maxResultSize > 0) {
+            scan.setMaxResultSize(maxResultSize);
+        }
+        scan.setScanMetricsEnabled(metricsEnabled);
+        return scan;
+    }
+
+    /**
+     * Whether the filter of the scan has to see whole rows, which the RegionServers refuse to
+     * combine with a batch.
+     */
+    public static boolean needsWholeRows(Scan scan) {
+        return scan.hasFilter() && scan.getFilter().hasFilterRow();
+    }
+
+    /**
+     * Sink for the configured output. PRINT shows family:qualifier with the given label.
+     */
+    public RowSink newSink(byte[] family, byte[] qualifier, String label) {
+        switch (output) {
+            case RAW:
+                return new RawChannelRowSink(new FileOutputStream(FileDescriptor.out).getChannel(), outputBufferSize, false);
+            case COUNT:
+                return new CountingRowSink();
+            default:
+                return new PrintRowSink(family, qualifier, label);
+        }
+    }
+
+    public static void printMetrics(ScanMetrics metrics) {
+        if (metrics == null) {
+            return;
+        }
+        System.out.println("Scan metrics:");
+        for (Map.Entry<String, Long> entry : new TreeMap<>(metrics.getMetricsMap()).entrySet()) {
+            System.out.println("  " + entry.getKey() + ": " + entry.getValue());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "columns=" + columns.size() + " caching=" + caching + " batch=" + batch + " maxResultSize="
+                + maxResultSize + " metrics=" + metricsEnabled + " output=" + output;
+    }
+}
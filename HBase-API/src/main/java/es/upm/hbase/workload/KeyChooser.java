@@ -0,0 +1,110 @@
+package es.upm.hbase.workload;
+
+import java.util.Random;
+
+/**
+ * Picks the key index of the next operation among the keys inserted so far.
+ */
+public abstract class KeyChooser {
+    static final double ZIPFIAN_CONSTANT = 0.99;
+
+    /**
+     * Index in [0, keys) of the key to operate on; keys grows as the workload inserts.
+     */
+    public abstract long next(Random random, long keys);
+
+    /**
+     * uniform, zipfian (popular keys scattered over the key space) or latest (the most recently
+     * inserted keys are the most popular ones). records sizes the zipfian popularity table.
+     */
+    public static KeyChooser forName(String name, long records) {
+        switch (name) {
+            case "uniform":
+                return new Uniform();
+            case "zipfian":
+                return new Zipfian(records, true);
+            case "latest":
+                return new Latest(new Zipfian(records, false));
+            default:
+                throw new IllegalArgumentException("Unknown key distribution: " + name + " (uniform, zipfian or latest)");
+        }
+    }
+
+    static class Uniform extends KeyChooser {
+        @Override
+        public long next(Random random, long keys) {
+            return (long) (random.nextDouble() * keys);
+        }
+    }
+
+    /**
+     * Zipfian ranks after Gray et al., "Quickly generating billion-record synthetic databases".
+     * The zeta constant is computed once for the initial records, inserted keys reuse the
+     * ranks of the existing ones. When scrambled, the ranks are hashed so that the popular keys
+     * do not end up next to each other in the same region.
+     */
+    static class Zipfian extends KeyChooser {
+        private final long items;
+        private final boolean scrambled;
+        private final double zetan;
+        private final double alpha;
+        private final double eta;
+        private final double halfPowTheta;
+
+        Zipfian(long items, boolean scrambled) {
+            this.items = items;
+            this.scrambled = scrambled;
+            double theta = ZIPFIAN_CONSTANT;
+            double zeta2 = 1 + Math.pow(0.5, theta);
+            double zeta = 0;
+            for (long i = 1; i <= items; i++) {
+                zeta += 1 / Math.pow(i, theta);
+            }
+            this.zetan = zeta;
+            this.alpha = 1 / (1 - theta);
+            this.eta = (1 - Math.pow(2.0 / items, 1 - theta)) / (1 - zeta2 / zetan);
+            this.halfPowTheta = Math.pow(0.5, theta);
+        }
+
+        long rank(Random random) {
+            double u = random.nextDouble();
+            double uz = u * zetan;
+            if (uz < 1) {
+                return 0;
+            }
+            if (uz < 1 + halfPowTheta) {
+                return Math.min(1, items - 1);
+            }
+            return Math.min(items - 1, (long) (items * Math.pow(eta * u - eta + 1, alpha)));
+        }
+
+        @Override
+        public long next(Random random, long keys) {
+            long rank = rank(random);
+            return scrambled ? Long.remainderUnsigned(fnv(rank), keys) : rank % keys;
+        }
+
+        private static long fnv(long value) {
+            long hash = 0xCBF29CE484222325L;
+            for (int i = 0; i < 8; i++) {
+                hash ^= value & 0xff;
+                hash *= 0x100000001B3L;
+                value >>>= 8;
+            }
+            return hash;
+        }
+    }
+
+    static class Latest extends KeyChooser {
+        private final Zipfian distance;
+
+        Latest(Zipfian distance) {
+            this.distance = distance;
+        }
+
+        @Override
+        public long next(Random random, long keys) {
+            return Math.max(0, keys - 1 - distance.rank(random));
+        }
+    }
+}
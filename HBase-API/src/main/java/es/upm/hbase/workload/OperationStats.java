@@ -0,0 +1,85 @@
+package es.upm.hbase.workload;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latencies of one operation type, in microseconds.
+ *
+ * Two values are recorded for every operation: the response time, measured from the moment the
+ * schedule wanted the operation to start, and the service time, measured from the moment it
+ * actually started. When the client falls behind the target rate the difference is the time
+ * the operation waited for its turn, the part a closed-loop benchmark hides (coordinated
+ * omission). Unthrottled runs have no schedule, so both are the same.
+ */
+class OperationStats {
+    private static final long MAX_LATENCY_US = 3600L * 1000 * 1000;
+
+    final OperationType type;
+    private final Recorder response = new Recorder(MAX_LATENCY_US, 3);
+    private final Recorder service = new Recorder(MAX_LATENCY_US, 3);
+    private final Histogram totalResponse = new Histogram(MAX_LATENCY_US, 3);
+    private final Histogram totalService = new Histogram(MAX_LATENCY_US, 3);
+    private final AtomicLong errors = new AtomicLong();
+    private long seenErrors;
+    private long intervalErrors;
+    private long totalErrors;
+    private Histogram intervalResponse;
+    private Histogram intervalService;
+
+    OperationStats(OperationType type) {
+        this.type = type;
+    }
+
+    void record(long intendedStartNs, long startNs, long endNs) {
+        response.recordValue(Math.min(MAX_LATENCY_US, (endNs - intendedStartNs) / 1000));
+        service.recordValue(Math.min(MAX_LATENCY_US, (endNs - startNs) / 1000));
+    }
+
+    void error() {
+        errors.incrementAndGet();
+    }
+
+    /**
+     * Takes the operations recorded since the previous call, adding them to the totals unless
+     * they belong to the warm-up. Only called from the reporter.
+     */
+    void roll(boolean warmup) {
+        intervalResponse = response.getIntervalHistogram(intervalResponse);
+        intervalService = service.getIntervalHistogram(intervalService);
+        long errorCount = errors.get();
+        intervalErrors = errorCount - seenErrors;
+        seenErrors = errorCount;
+        if (!warmup) {
+            totalResponse.add(intervalResponse);
+            totalService.add(intervalService);
+            totalErrors += intervalErrors;
+        }
+    }
+
+    Histogram getIntervalResponse() {
+        return intervalResponse;
+    }
+
+    Histogram getIntervalService() {
+        return intervalService;
+    }
+
+    long getIntervalErrors() {
+        return intervalErrors;
+    }
+
+    long getTotalErrors() {
+        return totalErrors;
+    }
+
+    Histogram getTotalResponse() {
+        return totalResponse;
+    }
+
+    Histogram getTotalService() {
+        return totalService;
+    }
+}
@@ -0,0 +1,35 @@
+package es.upm.hbase.workload;
+
+import es.upm.hbase.metrics.Operation;
+
+import java.util.Locale;
+
+/**
+ * Operations of a workload mix.
+ */
+public enum OperationType {
+    READ, UPDATE, INSERT, SCAN, DELETE;
+
+    /**
+     * Name of the proportion of this operation in the workload file.
+     */
+    public String key() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Client operation this one is measured as.
+     */
+    public Operation operation() {
+        switch (this) {
+            case READ:
+                return Operation.GET;
+            case SCAN:
+                return Operation.SCAN;
+            case DELETE:
+                return Operation.DELETE;
+            default:
+                return Operation.PUT;
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package es.upm.hbase.workload;
+
+import es.upm.hbase.UsersSchema;
+import org.apache.hadoop.hbase.TableName;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Settings of a headless run, read from a properties file:
+ *
+ * <pre>
+ * table=Users
+ * records=100000              # keys user0000000000 .. user(records-1)
+ * load=false                  # insert the records before running
+ * threads=8
+ * target=5000                 # total ops/s, 0 runs unthrottled
+ * warmup=30                   # seconds, reported but left out of the summary
+ * duration=300                # seconds
+ * report.interval=10          # seconds
+ * distribution=zipfian        # uniform, zipfian or latest
+ * read=0.90
+ * update=0.05
+ * insert=0
+ * scan=0.05
+ * delete=0
+ * scan.length=100
+ * csv=results.csv             # optional, interval and summary rows
+ * metrics=metrics.jsonl        # optional, client metrics snapshot every report interval
+ * </pre>
+ *
+ * The proportions of the mix are normalised, so they do not need to add up to 1.
+ */
+public class Workload {
+    public static final String KEY_PREFIX = "user";
+
+    private TableName table = UsersSchema.TABLE;
+    private long records = 100000;
+    private boolean load = false;
+    private int threads = 8;
+    private double target = 0;
+    private int warmupSeconds = 0;
+    private int durationSeconds = 60;
+    private int reportIntervalSeconds = 10;
+    private String distribution = "zipfian";
+    private final Map<OperationType, Double> mix = new EnumMap<>(OperationType.class);
+    private int scanLength = 100;
+    private String csv;
+    private String metrics;
+
+    public Workload() {
+        mix.put(OperationType.READ, 0.95);
+        mix.put(OperationType.UPDATE, 0.05);
+    }
+
+    public static Workload load(String file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        return fromProperties(properties);
+    }
+
+    public static Workload fromProperties(Properties p) {
+        Workload w = new Workload();
+        w.table = TableName.valueOf(p.getProperty("table", w.table.getNameAsString()));
+        w.records = Long.parseLong(p.getProperty("records", String.valueOf(w.records)));
+        w.load = Boolean.parseBoolean(p.getProperty("load", String.valueOf(w.load)));
+        w.threads = Integer.parseInt(p.getProperty("threads", String.valueOf(w.threads)));
+        w.target = Double.parseDouble(p.getProperty("target", String.valueOf(w.target)));
+        w.warmupSeconds = Integer.parseInt(p.getProperty("warmup", String.valueOf(w.warmupSeconds)));
+        w.durationSeconds = Integer.parseInt(p.getProperty("duration", String.valueOf(w.durationSeconds)));
+        w.reportIntervalSeconds = Integer.parseInt(p.getProperty("report.interval", String.valueOf(w.reportIntervalSeconds)));
+        w.distribution = p.getProperty("distribution", w.distribution);
+        w.scanLength = Integer.parseInt(p.getProperty("scan.length", String.valueOf(w.scanLength)));
+        w.csv = p.getProperty("csv");
+        w.metrics = p.getProperty("metrics");
+        boolean mixGiven = false;
+        for (OperationType type : OperationType.values()) {
+            mixGiven |= p.getProperty(type.key()) != null;
+        }
+        if (mixGiven) {
+            for (OperationType type : OperationType.values()) {
+                w.mix.put(type, Double.parseDouble(p.getProperty(type.key(), "0")));
+            }
+        }
+        w.validate();
+        return w;
+    }
+
+    private void validate() {
+        if (records <= 0 || threads <= 0 || durationSeconds <= 0 || reportIntervalSeconds <= 0
+                || warmupSeconds < 0 || target < 0 || scanLength <= 0) {
+            throw new IllegalArgumentException("records, threads, duration, report.interval and scan.length must be "
+                    + "positive, warmup and target cannot be negative");
+        }
+        double total = 0;
+        for (double proportion : mix.values()) {
+            if (proportion < 0) {
+                throw new IllegalArgumentException("Operation proportions cannot be negative: " + mix);
+            }
+            total += proportion;
+        }
+        if (total == 0) {
+            throw new IllegalArgumentException("At least one operation needs a positive proportion");
+        }
+        KeyChooser.forName(distribution, 1);
+    }
+
+    /**
+     * Cumulative proportions in the order of {@link OperationType#values()}. The sums are done in
+     * the same order as the total, so the last positive operation reaches exactly 1.
+     */
+    double[] cumulativeMix() {
+        double total = 0;
+        for (double proportion : mix.values()) {
+            total += proportion;
+        }
+        double[] cumulative = new double[OperationType.values().length];
+        double sum = 0;
+        for (OperationType type : OperationType.values()) {
+            sum += mix.getOrDefault(type, 0.0);
+            cumulative[type.ordinal()] = sum / total;
+        }
+        return cumulative;
+    }
+
+    public TableName getTable() {
+        return table;
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    public boolean isLoad() {
+        return load;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public double getTarget() {
+        return target;
+    }
+
+    public int getWarmupSeconds() {
+        return warmupSeconds;
+    }
+
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public int getReportIntervalSeconds() {
+        return reportIntervalSeconds;
+    }
+
+    public String getDistribution() {
+        return distribution;
+    }
+
+    public int getScanLength() {
+        return scanLength;
+    }
+
+    public String getCsv() {
+        return csv;
+    }
+
+    public String getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public String toString() {
+        return "table=" + table + " records=" + records + " threads=" + threads + " target="
+                + (target == 0 ? "unthrottled" : target + " ops/s") + " warmup=" + warmupSeconds + "s duration="
+                + durationSeconds + "s distribution=" + distribution + " mix=" + mix;
+    }
+}
@@ -0,0 +1,303 @@
+package es.upm.hbase.workload;
+
+import es.upm.hbase.UsersSchema;
+import es.upm.hbase.connection.ConnectionManager;
+import es.upm.hbase.load.UserRowGenerator;
+import es.upm.hbase.metrics.MetricsReporter;
+import es.upm.hbase.metrics.OperationMetrics;
+import es.upm.hbase.scan.ParallelScanner;
+import org.HdrHistogram.Histogram;
+import org.apache.hadoop.hbase.client.BufferedMutator;
+import org.apache.hadoop.hbase.client.Delete;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.Scan;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.util.Bytes;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a {@link Workload} without the interactive menu and reports latency percentiles per
+ * operation type.
+ *
+ * Every worker follows its own schedule of target/threads ops/s and records each operation
+ * against the time it should have started, so a slow server shows up as queueing in the
+ * response times instead of silently lowering the request rate. Interval reports are printed
+ * while running, the warm-up intervals are left out of the final summary. With a csv file both
+ * the intervals and the summary are also written as CSV rows, and with a metrics file the client
+ * metrics of the connection are appended to it at every interval.
+ */
+public class WorkloadDriver {
+    private static final String CSV_HEADER = "time_s,phase,operation,count,ops_per_s,errors,"
+            + "mean_us,p50_us,p90_us,p99_us,p999_us,max_us,service_p50_us,service_p99_us,service_max_us";
+
+    private final ConnectionManager manager;
+    private final Workload workload;
+    private final UserRowGenerator generator = new UserRowGenerator();
+    private final OperationStats[] stats = new OperationStats[OperationType.values().length];
+    private final AtomicLong keys;
+    private final AtomicReference<Exception> firstError = new AtomicReference<>();
+    private final KeyChooser chooser;
+    private final double[] mix;
+    private volatile boolean stopped;
+
+    public WorkloadDriver(ConnectionManager manager, Workload workload) {
+        this.manager = manager;
+        this.workload = workload;
+        for (OperationType type : OperationType.values()) {
+            stats[type.ordinal()] = new OperationStats(type);
+        }
+        this.keys = new AtomicLong(workload.getRecords());
+        this.chooser = KeyChooser.forName(workload.getDistribution(), workload.getRecords());
+        this.mix = workload.cumulativeMix();
+    }
+
+    public static byte[] key(long index) {
+        return Bytes.toBytes(String.format("%s%010d", Workload.KEY_PREFIX, index));
+    }
+
+    /**
+     * Inserts the initial records with a BufferedMutator.
+     */
+    public void load() throws IOException {
+        long start = System.currentTimeMillis();
+        try (BufferedMutator mutator = manager.getConnection().getBufferedMutator(workload.getTable())) {
+            for (long i = 0; i < workload.getRecords(); i++) {
+                mutator.mutate(generator.next(key(i)));
+            }
+        }
+        long timeElapsed = System.currentTimeMillis() - start;
+        System.out.println("Loaded " + workload.getRecords() + " records. Time elapsed: " + timeElapsed + "ms.");
+    }
+
+    public void run() throws IOException, InterruptedException {
+        System.out.println("Workload: " + workload);
+        if (workload.isLoad()) {
+            load();
+        }
+        long startNs = System.nanoTime();
+        long warmupEndNs = startNs + TimeUnit.SECONDS.toNanos(workload.getWarmupSeconds());
+        long endNs = warmupEndNs + TimeUnit.SECONDS.toNanos(workload.getDurationSeconds());
+
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < workload.getThreads(); i++) {
+            Thread worker = new Thread(() -> work(startNs, endNs), "workload-" + i);
+            worker.setDaemon(true);
+            workers.add(worker);
+        }
+        try (PrintWriter csv = workload.getCsv() == null ? null
+                : new PrintWriter(Files.newBufferedWriter(Paths.get(workload.getCsv()), StandardCharsets.UTF_8));
+             MetricsReporter metrics = workload.getMetrics() == null ? null
+                     : new MetricsReporter(manager.getMetrics(), Paths.get(workload.getMetrics()),
+                     TimeUnit.SECONDS.toMillis(workload.getReportIntervalSeconds())).start()) {
+            if (csv != null) {
+                csv.println(CSV_HEADER);
+            }
+            if (metrics != null) {
+                System.out.println("Metrics reporter writing " + metrics);
+            }
+            for (Thread worker : workers) {
+                worker.start();
+            }
+            try {
+                report(startNs, warmupEndNs, endNs, workers, csv);
+            } finally {
+                stopped = true;
+                for (Thread worker : workers) {
+                    worker.join();
+                }
+            }
+            summary(endNs - warmupEndNs, csv);
+        }
+        if (firstError.get() != null) {
+            System.out.println("First error: " + firstError.get());
+        }
+    }
+
+    private void work(long startNs, long endNs) {
+        double target = workload.getTarget();
+        long intervalNs = target == 0 ? 0 : (long) (1e9 * workload.getThreads() / target);
+        // Workers start spread over one interval so that they do not fire in lockstep.
+        long intendedNs = startNs + (intervalNs == 0 ? 0 : ThreadLocalRandom.current().nextLong(intervalNs));
+        Random random = ThreadLocalRandom.current();
+        try (Table t = manager.getConnection().getTable(workload.getTable())) {
+            while (!stopped) {
+                long now = System.nanoTime();
+                if (now >= endNs || intendedNs >= endNs) {
+                    break;
+                }
+                if (intervalNs > 0 && intendedNs > now) {
+                    LockSupport.parkNanos(intendedNs - now);
+                    continue;
+                }
+                OperationType type = choose(random);
+                long opStart = System.nanoTime();
+                long scheduled = intervalNs > 0 ? intendedNs : opStart;
+                OperationMetrics metrics = manager.getMetrics().get(type.operation());
+                try {
+                    long[] transferred = execute(t, type, random);
+                    stats[type.ordinal()].record(scheduled, opStart, System.nanoTime());
+                    metrics.record(opStart, transferred[0], transferred[1]);
+                } catch (IOException | RuntimeException e) {
+                    stats[type.ordinal()].error();
+                    metrics.error(e);
+                    firstError.compareAndSet(null, e);
+                }
+                intendedNs += intervalNs;
+            }
+        } catch (IOException | RuntimeException e) {
+            firstError.compareAndSet(null, e);
+        }
+    }
+
+    private OperationType choose(Random random) {
+        double u = random.nextDouble();
+        OperationType[] types = OperationType.values();
+        for (int i = 0; i < types.length; i++) {
+            if (u < mix[i]) {
+                return types[i];
+            }
+        }
+        return types[types.length - 1];
+    }
+
+    /**
+     * Runs one operation and returns the rows and bytes it transferred.
+     */
+    private long[] execute(Table t, OperationType type, Random random) throws IOException {
+        switch (type) {
+            case READ:
+                Result user = t.get(new Get(key(chooser.next(random, keys.get()))).addFamily(UsersSchema.FAMILY));
+                return new long[]{user.isEmpty() ? 0 : 1, ParallelScanner.sizeOf(user)};
+            case UPDATE:
+                return write(t, generator.next(key(chooser.next(random, keys.get()))));
+            case INSERT:
+                return write(t, generator.next(key(keys.getAndIncrement())));
+            case SCAN:
+                Scan scan = new Scan().withStartRow(key(chooser.next(random, keys.get())))
+                        .setLimit(workload.getScanLength()).setCaching(workload.getScanLength())
+                        .setScanMetricsEnabled(true);
+                long rows = 0;
+                long bytes = 0;
+                try (ResultScanner rs = t.getScanner(scan)) {
+                    for (Result result : rs) {
+                        rows++;
+                        bytes += ParallelScanner.sizeOf(result);
+                    }
+                    manager.getMetrics().scanned(rs.getScanMetrics());
+                }
+                return new long[]{rows, bytes};
+            case DELETE:
+                t.delete(new Delete(key(chooser.next(random, keys.get()))));
+                return new long[]{1, 0};
+        }
+        throw new IllegalArgumentException(type.name());
+    }
+
+    private static long[] write(Table t, Put put) throws IOException {
+        t.put(put);
+        return new long[]{1, UserRowGenerator.payloadSize(put)};
+    }
+
+    /**
+     * Prints a report every interval, plus one when the warm-up ends, until the run is over.
+     */
+    private void report(long startNs, long warmupEndNs, long endNs, List<Thread> workers, PrintWriter csv)
+            throws InterruptedException {
+        long intervalNs = TimeUnit.SECONDS.toNanos(workload.getReportIntervalSeconds());
+        long previousNs = startNs;
+        boolean warmupReported = warmupEndNs == startNs;
+        while (previousNs < endNs) {
+            long nextNs = Math.min(previousNs + intervalNs, endNs);
+            if (!warmupReported && nextNs >= warmupEndNs) {
+                nextNs = warmupEndNs;
+                warmupReported = true;
+            }
+            long waitNs;
+            while ((waitNs = nextNs - System.nanoTime()) > 0) {
+                TimeUnit.NANOSECONDS.sleep(waitNs);
+            }
+            boolean warmup = nextNs <= warmupEndNs && warmupEndNs > startNs;
+            if (nextNs == endNs) {
+                // Let the operations in flight finish, so that they make it into the last interval.
+                stopped = true;
+                for (Thread worker : workers) {
+                    worker.join();
+                }
+            }
+            double seconds = (nextNs - previousNs) / 1e9;
+            long elapsedSeconds = Math.round((nextNs - startNs) / 1e9);
+            for (OperationStats s : stats) {
+                s.roll(warmup);
+                Histogram h = s.getIntervalResponse();
+                if (h.getTotalCount() == 0 && s.getIntervalErrors() == 0) {
+                    continue;
+                }
+                String phase = warmup ? "WARMUP" : "RUN";
+                System.out.println(String.format(Locale.ROOT, "[%5ds] %-6s %-6s %s", elapsedSeconds, phase, s.type,
+                        text(h, s.getIntervalService(), s.getIntervalErrors(), seconds)));
+                if (csv != null) {
+                    csv.println(csv(elapsedSeconds, phase, s.type.name(), h, s.getIntervalService(), s.getIntervalErrors(), seconds));
+                }
+            }
+            previousNs = nextNs;
+        }
+    }
+
+    private void summary(long runNs, PrintWriter csv) {
+        double seconds = runNs / 1e9;
+        System.out.println("Summary (" + workload.getDurationSeconds() + "s, warm-up excluded):");
+        long total = 0;
+        for (OperationStats s : stats) {
+            Histogram h = s.getTotalResponse();
+            total += h.getTotalCount();
+            if (h.getTotalCount() == 0 && s.getTotalErrors() == 0) {
+                continue;
+            }
+            System.out.println(String.format(Locale.ROOT, "  %-6s %s", s.type,
+                    text(h, s.getTotalService(), s.getTotalErrors(), seconds)));
+            if (csv != null) {
+                csv.println(csv(Math.round(seconds), "TOTAL", s.type.name(), h, s.getTotalService(), s.getTotalErrors(), seconds));
+            }
+        }
+        System.out.println(String.format(Locale.ROOT, "  Throughput: %.0f ops/s", total / seconds));
+    }
+
+    private static String text(Histogram response, Histogram service, long errors, double seconds) {
+        return String.format(Locale.ROOT,
+                "ops: %d (%.0f ops/s) errors: %d latency mean %.3fms p50 %.3fms p90 %.3fms p99 %.3fms p999 %.3fms max %.3fms"
+                        + " (service p50 %.3fms p99 %.3fms)",
+                response.getTotalCount(), response.getTotalCount() / seconds, errors, response.getMean() / 1000,
+                ms(response, 50), ms(response, 90), ms(response, 99), ms(response, 99.9), response.getMaxValue() / 1000.0,
+                ms(service, 50), ms(service, 99));
+    }
+
+    private static String csv(long time, String phase, String operation, Histogram response, Histogram service,
+                              long errors, double seconds) {
+        return String.format(Locale.ROOT, "%d,%s,%s,%d,%.1f,%d,%.1f,%d,%d,%d,%d,%d,%d,%d,%d",
+                time, phase, operation, response.getTotalCount(), response.getTotalCount() / seconds, errors,
+                response.getMean(), response.getValueAtPercentile(50), response.getValueAtPercentile(90),
+                response.getValueAtPercentile(99), response.getValueAtPercentile(99.9), response.getMaxValue(),
+                service.getValueAtPercentile(50), service.getValueAtPercentile(99), service.getMaxValue());
+    }
+
+    private static double ms(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / 1000.0;
+    }
+}
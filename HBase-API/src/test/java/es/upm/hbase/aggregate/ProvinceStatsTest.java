@@ -0,0 +1,78 @@
+package es.upm.hbase.aggregate;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class ProvinceStatsTest {
+
+    private static HashSet<String> names(String... names) {
+        return new HashSet<>(Arrays.asList(names));
+    }
+
+    @Test
+    public void emptyStatsHaveNoLogins() {
+        ProvinceStats stats = new ProvinceStats("Madrid");
+        assertEquals("Madrid", stats.getProvince());
+        assertEquals(0, stats.getCount());
+        assertNull(stats.getFirstLogin());
+        assertNull(stats.getLastLogin());
+        assertEquals(0, stats.getDistinctNames());
+    }
+
+    @Test
+    public void mergingSumsTheCounts() {
+        ProvinceStats stats = new ProvinceStats("Madrid");
+        stats.add(3, "2015-01-01", "2016-01-01", names("Ana"));
+        stats.add(4, "2014-01-01", "2015-06-01", names("Luis"));
+        assertEquals(7, stats.getCount());
+    }
+
+    @Test
+    public void mergingKeepsTheEarliestAndLatestLogins() {
+        ProvinceStats stats = new ProvinceStats("Madrid");
+        stats.add(1, "2015-03-01", "2015-03-01", names("Ana"));
+        stats.add(2, "2012-07-15", "2014-01-01", names("Ana"));
+        stats.add(2, "2016-01-01", "2023-12-31", names("Ana"));
+        assertEquals("2012-07-15", stats.getFirstLogin());
+        assertEquals("2023-12-31", stats.getLastLogin());
+    }
+
+    @Test
+    public void partialsWithoutLoginsLeaveThemUnchanged() {
+        ProvinceStats stats = new ProvinceStats("Madrid");
+        stats.add(2, null, null, names("Ana"));
+        assertNull(stats.getFirstLogin());
+        assertNull(stats.getLastLogin());
+        stats.add(1, "2015-03-01", "2015-04-01", names("Luis"));
+        stats.add(5, null, null, names("Eva"));
+        assertEquals(8, stats.getCount());
+        assertEquals("2015-03-01", stats.getFirstLogin());
+        assertEquals("2015-04-01", stats.getLastLogin());
+    }
+
+    @Test
+    public void namesAreCountedOnceAcrossPartials() {
+        ProvinceStats stats = new ProvinceStats("Madrid");
+        stats.add(3, "2015-01-01", "2015-01-01", names("Ana", "Luis"));
+        stats.add(2, "2015-01-01", "2015-01-01", names("Luis", "Eva"));
+        stats.add(1, "2015-01-01", "2015-01-01", Collections.emptySet());
+        assertEquals(3, stats.getDistinctNames());
+    }
+
+    @Test
+    public void mergeOrderDoesNotMatter() {
+        ProvinceStats forward = new ProvinceStats("Madrid");
+        forward.add(2, "2013-01-01", "2014-01-01", names("Ana"));
+        forward.add(3, "2011-01-01", "2019-01-01", names("Eva", "Ana"));
+        ProvinceStats backward = new ProvinceStats("Madrid");
+        backward.add(3, "2011-01-01", "2019-01-01", names("Eva", "Ana"));
+        backward.add(2, "2013-01-01", "2014-01-01", names("Ana"));
+        assertEquals(forward.toString(), backward.toString());
+    }
+}
@@ -0,0 +1,155 @@
+package es.upm.hbase.balance;
+
+import es.upm.hbase.balance.RebalancePlanner.Move;
+import es.upm.hbase.balance.RebalancePlanner.RegionLoad;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.RegionInfoBuilder;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RebalancePlannerTest {
+    private static final TableName TABLE = TableName.valueOf("Users");
+    private static final ServerName A = ServerName.valueOf("a", 16020, 1L);
+    private static final ServerName B = ServerName.valueOf("b", 16020, 1L);
+    private static final ServerName C = ServerName.valueOf("c", 16020, 1L);
+
+    private static RegionLoad region(int index, ServerName server, float locality) {
+        return new RegionLoad(RegionInfoBuilder.newBuilder(TABLE).setStartKey(Bytes.toBytes(index))
+                .setEndKey(Bytes.toBytes(index + 1)).build(), server, 0, 0, locality);
+    }
+
+    private static List<RegionLoad> regions(ServerName... servers) {
+        List<RegionLoad> regions = new ArrayList<>();
+        for (ServerName server : servers) {
+            regions.add(region(regions.size(), server, 0));
+        }
+        return regions;
+    }
+
+    private static double[] equal(int regions) {
+        double[] weights = new double[regions];
+        Arrays.fill(weights, 1.0 / regions);
+        return weights;
+    }
+
+    /**
+     * Load of every server once the moves are done.
+     */
+    private static Map<ServerName, Double> after(List<RegionLoad> regions, double[] weights, List<Move> moves) {
+        Map<RegionLoad, ServerName> placement = new HashMap<>();
+        for (RegionLoad region : regions) {
+            placement.put(region, region.getServer());
+        }
+        for (Move move : moves) {
+            assertEquals(placement.get(move.getRegion()), move.getFrom());
+            placement.put(move.getRegion(), move.getTo());
+        }
+        Map<ServerName, Double> load = new HashMap<>();
+        for (int i = 0; i < regions.size(); i++) {
+            load.merge(placement.get(regions.get(i)), weights[i], Double::sum);
+        }
+        return load;
+    }
+
+    @Test
+    public void balancedPlacementHasNoMoves() {
+        List<RegionLoad> regions = regions(A, B, A, B);
+        assertTrue(RebalancePlanner.plan(regions, equal(4), Arrays.asList(A, B), 0.1, 1).isEmpty());
+    }
+
+    @Test
+    public void regionsMoveFromTheHeaviestToTheLightestServer() {
+        List<RegionLoad> regions = regions(A, A, A, A, A, A);
+        double[] weights = equal(6);
+        List<Move> moves = RebalancePlanner.plan(regions, weights, Arrays.asList(A, B, C), 0.1, 1);
+        assertEquals(4, moves.size());
+        for (double load : after(regions, weights, moves).values()) {
+            assertEquals(1.0 / 3, load, 1e-9);
+        }
+    }
+
+    @Test
+    public void everyRegionMovesAtMostOnce() {
+        List<RegionLoad> regions = regions(A, A, A, B);
+        double[] weights = {0.4, 0.3, 0.2, 0.1};
+        List<Move> moves = RebalancePlanner.plan(regions, weights, Arrays.asList(A, B), 0, 1);
+        List<RegionLoad> moved = new ArrayList<>();
+        for (Move move : moves) {
+            assertTrue(!moved.contains(move.getRegion()));
+            moved.add(move.getRegion());
+        }
+        Map<ServerName, Double> load = after(regions, weights, moves);
+        assertEquals(0.5, load.get(A), 1e-9);
+        assertEquals(0.5, load.get(B), 1e-9);
+    }
+
+    @Test
+    public void regionsHeavierThanTheGapStay() {
+        List<RegionLoad> regions = regions(A, B);
+        assertTrue(RebalancePlanner.plan(regions, new double[]{0.9, 0.1}, Arrays.asList(A, B), 0.1, 1).isEmpty());
+    }
+
+    @Test
+    public void regionsOfDeadServersGoToTheLightestFirst() {
+        List<RegionLoad> regions = regions(A, A, C, B);
+        List<Move> moves = RebalancePlanner.plan(regions, equal(4), Arrays.asList(A, B), 0.1, 1);
+        assertEquals(1, moves.size());
+        assertEquals(regions.get(2), moves.get(0).getRegion());
+        assertEquals(C, moves.get(0).getFrom());
+        assertEquals(B, moves.get(0).getTo());
+    }
+
+    @Test
+    public void localRegionsAreTheLastToMove() {
+        List<RegionLoad> regions = Arrays.asList(region(0, A, 1), region(1, A, 0), region(2, A, 1), region(3, A, 1));
+        List<Move> moves = RebalancePlanner.plan(regions, equal(4), Arrays.asList(A, B), 0.1, 1);
+        assertEquals(regions.get(1), moves.get(0).getRegion());
+        assertEquals(2, moves.size());
+    }
+
+    @Test
+    public void argumentsAreLeftUntouched() {
+        List<RegionLoad> regions = regions(A, A, A, A);
+        List<RegionLoad> copy = new ArrayList<>(regions);
+        double[] weights = {0.4, 0.3, 0.2, 0.1};
+        RebalancePlanner.plan(regions, weights, Arrays.asList(A, B), 0.1, 1);
+        assertEquals(copy, regions);
+        assertArrayEquals(new double[]{0.4, 0.3, 0.2, 0.1}, weights, 0);
+        for (RegionLoad region : regions) {
+            assertEquals(A, region.getServer());
+        }
+    }
+
+    @Test
+    public void singleServerHasNothingToBalance() {
+        assertTrue(RebalancePlanner.plan(regions(A, A), equal(2), Collections.singletonList(A), 0.1, 1).isEmpty());
+    }
+
+    @Test
+    public void weightsAreSharesOfEveryDimension() {
+        List<RegionLoad> regions = Arrays.asList(
+                new RegionLoad(RegionInfoBuilder.newBuilder(TABLE).build(), A, 30, 100, 0),
+                new RegionLoad(RegionInfoBuilder.newBuilder(TABLE).build(), B, 10, 300, 0));
+        assertArrayEquals(new double[]{0.75 + 0.25 + 0.5, 0.25 + 0.75 + 0.5},
+                RebalancePlanner.weigh(regions, 1, 1, 1), 1e-9);
+        assertArrayEquals(new double[]{2 * 0.75, 2 * 0.25}, RebalancePlanner.weigh(regions, 2, 0, 0), 1e-9);
+    }
+
+    @Test
+    public void idleDimensionsDoNotCount() {
+        List<RegionLoad> regions = regions(A, B, B, B);
+        assertArrayEquals(equal(4), RebalancePlanner.weigh(regions, 1, 1, 1), 1e-9);
+    }
+}
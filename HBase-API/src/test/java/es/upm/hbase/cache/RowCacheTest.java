@@ -0,0 +1,150 @@
+package es.upm.hbase.cache;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellUtil;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Get;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.Table;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class RowCacheTest {
+    private static final byte[] FAMILY = Bytes.toBytes("basic");
+    private static final byte[] QUALIFIER = Bytes.toBytes("province");
+
+    private final AtomicInteger reads = new AtomicInteger();
+
+    /**
+     * Table whose gets return one cell with the row as value, calling onGet before answering.
+     */
+    private Table table(Consumer<byte[]> onGet, boolean stale) {
+        return (Table) Proxy.newProxyInstance(Table.class.getClassLoader(), new Class<?>[]{Table.class},
+                (proxy, method, args) -> {
+                    if (!method.getName().equals("get") || !(args[0] instanceof Get)) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    byte[] row = ((Get) args[0]).getRow();
+                    reads.incrementAndGet();
+                    onGet.accept(row);
+                    Cell cell = new KeyValue(row, FAMILY, QUALIFIER, 1L, row);
+                    return Result.create(Collections.singletonList(cell), null, stale);
+                });
+    }
+
+    private Table table() {
+        return table(row -> {
+        }, false);
+    }
+
+    private static Get get(String row) {
+        return new Get(Bytes.toBytes(row)).addFamily(FAMILY);
+    }
+
+    @Test
+    public void secondGetIsAHit() throws Exception {
+        RowCache cache = new RowCache(10, 1 << 20, 1, TimeUnit.MINUTES);
+        Table table = table();
+        Result first = cache.get(table, get("a"));
+        assertSame(first, cache.get(table, get("a")));
+        assertEquals(1, reads.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void projectionsAreCachedApart() throws Exception {
+        RowCache cache = new RowCache(10, 1 << 20, 1, TimeUnit.MINUTES);
+        Table table = table();
+        cache.get(table, get("a"));
+        cache.get(table, new Get(Bytes.toBytes("a")).addColumn(FAMILY, QUALIFIER));
+        cache.get(table, get("a").readVersions(3));
+        assertEquals(3, reads.get());
+        assertEquals(3, cache.size());
+    }
+
+    @Test
+    public void leastRecentlyUsedEntryIsEvicted() throws Exception {
+        RowCache cache = new RowCache(2, 1 << 20, 1, TimeUnit.MINUTES);
+        Table table = table();
+        cache.get(table, get("a"));
+        cache.get(table, get("b"));
+        cache.get(table, get("a"));
+        cache.get(table, get("c"));
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        cache.get(table, get("a"));
+        assertEquals(3, reads.get());
+        cache.get(table, get("b"));
+        assertEquals(4, reads.get());
+    }
+
+    @Test
+    public void bytesBoundEvicts() throws Exception {
+        RowCache probe = new RowCache(10, 1 << 20, 1, TimeUnit.MINUTES);
+        probe.get(table(), get("a"));
+        long entryBytes = probe.sizeInBytes();
+
+        RowCache cache = new RowCache(10, 2 * entryBytes, 1, TimeUnit.MINUTES);
+        Table table = table();
+        cache.get(table, get("a"));
+        cache.get(table, get("b"));
+        cache.get(table, get("c"));
+        assertEquals(2, cache.size());
+        assertTrue(cache.sizeInBytes() <= 2 * entryBytes);
+    }
+
+    @Test
+    public void expiredEntryIsReadAgain() throws Exception {
+        RowCache cache = new RowCache(10, 1 << 20, 1, TimeUnit.MILLISECONDS);
+        Table table = table();
+        cache.get(table, get("a"));
+        Thread.sleep(5);
+        cache.get(table, get("a"));
+        assertEquals(2, reads.get());
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void invalidateDropsEveryProjectionOfTheRow() throws Exception {
+        RowCache cache = new RowCache(10, 1 << 20, 1, TimeUnit.MINUTES);
+        Table table = table();
+        cache.get(table, get("a"));
+        cache.get(table, new Get(Bytes.toBytes("a")).addColumn(FAMILY, QUALIFIER));
+        cache.get(table, get("b"));
+        cache.invalidate(Bytes.toBytes("a"));
+        assertEquals(1, cache.size());
+        cache.get(table, get("a"));
+        assertEquals(4, reads.get());
+    }
+
+    @Test
+    public void getRacingWithAnInvalidationIsNotCached() throws Exception {
+        RowCache cache = new RowCache(10, 1 << 20, 1, TimeUnit.MINUTES);
+        Table table = table(cache::invalidate, false);
+        Result result = cache.get(table, get("a"));
+        assertEquals("a", Bytes.toString(CellUtil.cloneValue(result.rawCells()[0])));
+        assertEquals(0, cache.size());
+        cache.get(table, get("a"));
+        assertEquals(2, reads.get());
+    }
+
+    @Test
+    public void staleResultsAreNotCached() throws Exception {
+        RowCache cache = new RowCache(10, 1 << 20, 1, TimeUnit.MINUTES);
+        Table table = table(row -> {
+        }, true);
+        assertTrue(cache.get(table, get("a")).isStale());
+        assertEquals(0, cache.size());
+    }
+}
@@ -0,0 +1,154 @@
+package es.upm.hbase.changes;
+
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ChangeCheckpointTest {
+    private static final String TABLE = "Users";
+    // Binary keys with the separators of the file in them
+    private static final byte[] B = {'b', '\t', '\n', (byte) 0xff};
+    private static final byte[] M = Bytes.toBytes("m");
+    private static final byte[] T = Bytes.toBytes("t");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path file() {
+        return folder.getRoot().toPath().resolve("changes.checkpoint");
+    }
+
+    private static List<byte[][]> bounds(byte[]... splits) {
+        byte[][] keys = new byte[splits.length + 2][];
+        keys[0] = HConstants.EMPTY_START_ROW;
+        System.arraycopy(splits, 0, keys, 1, splits.length);
+        keys[keys.length - 1] = HConstants.EMPTY_END_ROW;
+        byte[][][] bounds = new byte[keys.length - 1][][];
+        for (int i = 0; i + 1 < keys.length; i++) {
+            bounds[i] = new byte[][]{keys[i], keys[i + 1]};
+        }
+        return Arrays.asList(bounds);
+    }
+
+    private static long[] marks(ChangeCheckpoint checkpoint) {
+        List<ChangeCheckpoint.Range> ranges = checkpoint.getRanges();
+        long[] marks = new long[ranges.size()];
+        for (int i = 0; i < marks.length; i++) {
+            marks[i] = ranges.get(i).getMark();
+        }
+        return marks;
+    }
+
+    @Test
+    public void missingFileHasNoRanges() throws Exception {
+        ChangeCheckpoint checkpoint = ChangeCheckpoint.load(file(), TABLE);
+        assertTrue(checkpoint.getRanges().isEmpty());
+        assertFalse(Files.exists(file()));
+    }
+
+    @Test(expected = IOException.class)
+    public void checkpointOfAnotherTableIsRejected() throws Exception {
+        ChangeCheckpoint.load(file(), TABLE).realign(bounds(M));
+        ChangeCheckpoint.load(file(), "Other");
+    }
+
+    @Test
+    public void newRangesStartFromZero() throws Exception {
+        ChangeCheckpoint checkpoint = ChangeCheckpoint.load(file(), TABLE);
+        checkpoint.realign(bounds(B, M));
+        assertArrayEquals(new long[]{0, 0, 0}, marks(checkpoint));
+    }
+
+    @Test
+    public void marksAndBinaryBoundsLoadBack() throws Exception {
+        ChangeCheckpoint checkpoint = ChangeCheckpoint.load(file(), TABLE);
+        checkpoint.realign(bounds(B, M));
+        checkpoint.advance(checkpoint.getRanges().get(0), 100);
+        checkpoint.advance(checkpoint.getRanges().get(2), 300);
+
+        ChangeCheckpoint loaded = ChangeCheckpoint.load(file(), TABLE);
+        assertEquals(3, loaded.getRanges().size());
+        assertArrayEquals(new long[]{100, 0, 300}, marks(loaded));
+        ChangeCheckpoint.Range middle = loaded.getRanges().get(1);
+        assertArrayEquals(B, middle.startRow);
+        assertArrayEquals(M, middle.stopRow);
+        assertArrayEquals(HConstants.EMPTY_START_ROW, loaded.getRanges().get(0).startRow);
+        assertArrayEquals(HConstants.EMPTY_END_ROW, loaded.getRanges().get(2).stopRow);
+    }
+
+    @Test
+    public void splitRangesKeepTheMarkOfTheirParent() throws Exception {
+        ChangeCheckpoint checkpoint = ChangeCheckpoint.load(file(), TABLE);
+        checkpoint.realign(bounds(M));
+        checkpoint.advance(checkpoint.getRanges().get(0), 100);
+        checkpoint.advance(checkpoint.getRanges().get(1), 200);
+
+        checkpoint.realign(bounds(B, M, T));
+        assertArrayEquals(new long[]{100, 100, 200, 200}, marks(checkpoint));
+    }
+
+    @Test
+    public void mergedRangesTakeTheLowestMark() throws Exception {
+        ChangeCheckpoint checkpoint = ChangeCheckpoint.load(file(), TABLE);
+        checkpoint.realign(bounds(B, M));
+        checkpoint.advance(checkpoint.getRanges().get(0), 300);
+        checkpoint.advance(checkpoint.getRanges().get(1), 100);
+        checkpoint.advance(checkpoint.getRanges().get(2), 200);
+
+        checkpoint.realign(Collections.singletonList(new byte[][]{HConstants.EMPTY_START_ROW, HConstants.EMPTY_END_ROW}));
+        assertArrayEquals(new long[]{100}, marks(checkpoint));
+        assertArrayEquals(new long[]{100}, marks(ChangeCheckpoint.load(file(), TABLE)));
+    }
+
+    @Test
+    public void movedBoundaryTakesTheLowestOverlappingMark() throws Exception {
+        ChangeCheckpoint checkpoint = ChangeCheckpoint.load(file(), TABLE);
+        checkpoint.realign(bounds(M));
+        checkpoint.advance(checkpoint.getRanges().get(0), 100);
+        checkpoint.advance(checkpoint.getRanges().get(1), 200);
+
+        // [, t) overlaps both old ranges, [t, ) only the second one
+        checkpoint.realign(bounds(T));
+        assertArrayEquals(new long[]{100, 200}, marks(checkpoint));
+        // Back to the old boundary, [m, ) still overlaps [, t)
+        checkpoint.realign(bounds(M));
+        assertArrayEquals(new long[]{100, 100}, marks(checkpoint));
+    }
+
+    @Test
+    public void unchangedRangesKeepTheirMarks() throws Exception {
+        ChangeCheckpoint checkpoint = ChangeCheckpoint.load(file(), TABLE);
+        checkpoint.realign(bounds(M));
+        checkpoint.advance(checkpoint.getRanges().get(0), 200);
+        checkpoint.advance(checkpoint.getRanges().get(1), 100);
+
+        // A range ending where another starts does not overlap it
+        checkpoint.realign(bounds(M));
+        assertArrayEquals(new long[]{200, 100}, marks(checkpoint));
+    }
+
+    @Test
+    public void saveLeavesNoTemporaryFile() throws Exception {
+        ChangeCheckpoint checkpoint = ChangeCheckpoint.load(file(), TABLE);
+        checkpoint.realign(bounds(M));
+        checkpoint.advance(checkpoint.getRanges().get(1), 5);
+        assertTrue(Files.exists(file()));
+        assertFalse(Files.exists(file().resolveSibling(file().getFileName() + ".tmp")));
+        assertEquals(TABLE, Files.readAllLines(file(), StandardCharsets.UTF_8).get(0));
+    }
+}
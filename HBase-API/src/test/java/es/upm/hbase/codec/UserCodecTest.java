@@ -0,0 +1,142 @@
+package es.upm.hbase.codec;
+
+import es.upm.hbase.UsersSchema;
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.CellComparator;
+import org.apache.hadoop.hbase.client.Put;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class UserCodecTest {
+    private static final UserCodec[] CODECS = {UserCodec.TEXT, UserCodec.BINARY, UserCodec.PACKED};
+    private static final byte[] ROW = Bytes.toBytes("row");
+    // The first one is in the dictionaries, the second one is escaped
+    private static final String[][] USERS = {
+            {UsersSchema.NAMES[3], UsersSchema.PROVINCES[5], "2017-03-09"},
+            {"Zacarías", "Ultramar", "1999-12-31"}};
+
+    private static Put put(UserCodec codec, String[] user, long timestamp) {
+        Put put = new Put(ROW, timestamp);
+        codec.write(put, Bytes.toBytes(user[0]), Bytes.toBytes(user[1]), user[2]);
+        return put;
+    }
+
+    private static Result result(Put... puts) {
+        List<Cell> cells = new ArrayList<>();
+        for (Put put : puts) {
+            for (List<Cell> family : put.getFamilyCellMap().values()) {
+                cells.addAll(family);
+            }
+        }
+        cells.sort(CellComparator.getInstance());
+        return Result.create(cells);
+    }
+
+    private static String writeValue(Result result, byte[] qualifier) throws Exception {
+        StringBuilder text = new StringBuilder();
+        boolean found = UserCodec.writeValue(result, qualifier, new byte[UserCodec.BUFFER_SIZE],
+                (array, offset, length) -> text.append(Bytes.toString(array, offset, length)));
+        return found ? text.toString() : null;
+    }
+
+    @Test
+    public void everyFormatRoundTrips() throws Exception {
+        for (UserCodec codec : CODECS) {
+            for (String[] user : USERS) {
+                String message = codec + " " + user[0];
+                Put put = put(codec, user, 1L);
+                Result result = result(put);
+                assertEquals(message, user[0], UserCodec.get(result, UsersSchema.NAME));
+                assertEquals(message, user[1], UserCodec.get(result, UsersSchema.PROVINCE));
+                assertEquals(message, user[2], UserCodec.get(result, UsersSchema.LAST_LOGIN));
+                assertEquals(message, user[1], Bytes.toString(UserCodec.value(put, UsersSchema.PROVINCE)));
+                assertEquals(message, user[0], writeValue(result, UsersSchema.NAME));
+                assertEquals(message, user[1], writeValue(result, UsersSchema.PROVINCE));
+                assertEquals(message, user[2], writeValue(result, UsersSchema.LAST_LOGIN));
+            }
+        }
+    }
+
+    @Test
+    public void formatsLayOutTheCellsDifferently() {
+        assertEquals(3, result(put(UserCodec.TEXT, USERS[0], 1L)).size());
+        assertEquals(3, result(put(UserCodec.BINARY, USERS[0], 1L)).size());
+        Result packed = result(put(UserCodec.PACKED, USERS[0], 1L));
+        assertEquals(1, packed.size());
+        assertTrue(packed.containsColumn(UsersSchema.FAMILY, UserCodec.PACKED_QUALIFIER));
+        // Dictionary entries take one byte, dates four
+        assertEquals(1, result(put(UserCodec.BINARY, USERS[0], 1L))
+                .getColumnLatestCell(UsersSchema.FAMILY, UsersSchema.NAME).getValueLength());
+        assertEquals(4, result(put(UserCodec.BINARY, USERS[0], 1L))
+                .getColumnLatestCell(UsersSchema.FAMILY, UsersSchema.LAST_LOGIN).getValueLength());
+    }
+
+    @Test
+    public void missingColumnsAreNull() throws Exception {
+        Result empty = Result.create(new ArrayList<>());
+        assertNull(UserCodec.value(empty, UsersSchema.NAME));
+        assertNull(writeValue(empty, UsersSchema.NAME));
+    }
+
+    @Test
+    public void newestEncodingWinsWhileMigrating() {
+        Result migrated = result(put(UserCodec.TEXT, USERS[0], 1L), put(UserCodec.PACKED, USERS[1], 2L));
+        assertEquals(USERS[1][0], UserCodec.get(migrated, UsersSchema.NAME));
+        Result notYet = result(put(UserCodec.TEXT, USERS[0], 2L), put(UserCodec.PACKED, USERS[1], 1L));
+        assertEquals(USERS[0][0], UserCodec.get(notYet, UsersSchema.NAME));
+    }
+
+    @Test
+    public void versionsAreNewestFirst() {
+        for (UserCodec codec : CODECS) {
+            List<String[]> versions = UserCodec.versions(result(put(codec, USERS[0], 1L), put(codec, USERS[1], 2L)),
+                    UsersSchema.NAME, UsersSchema.LAST_LOGIN);
+            assertEquals(codec.toString(), 2, versions.size());
+            assertArrayEquals(new String[]{USERS[1][0], USERS[1][2]}, versions.get(0));
+            assertArrayEquals(new String[]{USERS[0][0], USERS[0][2]}, versions.get(1));
+        }
+    }
+
+    @Test
+    public void textOfAPackedCellListsEveryColumn() {
+        Cell packed = result(put(UserCodec.PACKED, USERS[0], 1L)).rawCells()[0];
+        String text = UserCodec.text(packed);
+        assertTrue(text, text.contains("name=" + USERS[0][0]));
+        assertTrue(text, text.contains("province=" + USERS[0][1]));
+        assertTrue(text, text.contains(USERS[0][2]));
+    }
+
+    @Test
+    public void epochDayMatchesLocalDate() {
+        for (LocalDate date = LocalDate.of(1899, 12, 25); date.getYear() < 2101; date = date.plusDays(37)) {
+            assertEquals(date.toString(), date.toEpochDay(),
+                    UserCodec.epochDay(date.getYear(), date.getMonthValue(), date.getDayOfMonth()));
+        }
+        assertEquals(LocalDate.of(2024, 2, 29).toEpochDay(), UserCodec.epochDay(2024, 2, 29));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void longValuesCannotBeBinaryEncoded() {
+        char[] name = new char[256];
+        Arrays.fill(name, 'x');
+        put(UserCodec.BINARY, new String[]{new String(name), USERS[0][1], USERS[0][2]}, 1L);
+    }
+
+    @Test
+    public void formatOfTheName() {
+        for (UserCodec codec : CODECS) {
+            assertEquals(codec, UserCodec.of(codec.getFormat()));
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package es.upm.hbase.export;
+
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ExportCheckpointTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    // Binary keys with the separators of the file in them
+    private static final byte[] SPLIT = {1, '\t', '\n', (byte) 0xff};
+
+    private static List<ExportCheckpoint.Range> ranges() {
+        return Arrays.asList(new ExportCheckpoint.Range(0, HConstants.EMPTY_START_ROW, SPLIT),
+                new ExportCheckpoint.Range(1, SPLIT, HConstants.EMPTY_END_ROW));
+    }
+
+    @Test
+    public void directoryWithoutCheckpoint() throws Exception {
+        assertNull(ExportCheckpoint.load(folder.getRoot().toPath()));
+    }
+
+    @Test
+    public void createdCheckpointLoadsBack() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        ExportCheckpoint.create(directory, "csv", ranges());
+        ExportCheckpoint loaded = ExportCheckpoint.load(directory);
+        assertEquals("csv", loaded.getFormat());
+        assertEquals(2, loaded.getRanges().size());
+        ExportCheckpoint.Range first = loaded.getRanges().get(0);
+        ExportCheckpoint.Range second = loaded.getRanges().get(1);
+        assertEquals(0, first.index);
+        assertArrayEquals(HConstants.EMPTY_START_ROW, first.startRow);
+        assertArrayEquals(SPLIT, first.stopRow);
+        assertEquals(1, second.index);
+        assertArrayEquals(SPLIT, second.startRow);
+        assertArrayEquals(HConstants.EMPTY_END_ROW, second.stopRow);
+        assertNull(first.lastRow);
+        assertEquals(0, first.nextPart);
+        assertFalse(first.isDone());
+    }
+
+    @Test
+    public void updatesAreSaved() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        ExportCheckpoint checkpoint = ExportCheckpoint.create(directory, "columnar", ranges());
+        checkpoint.update(checkpoint.getRanges().get(0), Bytes.add(SPLIT, new byte[]{0}), 3, false);
+        checkpoint.update(checkpoint.getRanges().get(1), Bytes.toBytes("zz"), 7, true);
+
+        ExportCheckpoint loaded = ExportCheckpoint.load(directory);
+        ExportCheckpoint.Range first = loaded.getRanges().get(0);
+        assertArrayEquals(Bytes.add(SPLIT, new byte[]{0}), first.lastRow);
+        assertEquals(3, first.nextPart);
+        assertFalse(first.isDone());
+        ExportCheckpoint.Range second = loaded.getRanges().get(1);
+        assertArrayEquals(Bytes.toBytes("zz"), second.lastRow);
+        assertEquals(7, second.nextPart);
+        assertTrue(second.isDone());
+    }
+
+    @Test
+    public void saveLeavesNoTemporaryFile() throws Exception {
+        Path directory = folder.getRoot().toPath();
+        ExportCheckpoint checkpoint = ExportCheckpoint.create(directory, "csv", ranges());
+        checkpoint.update(checkpoint.getRanges().get(0), SPLIT, 1, true);
+        assertTrue(Files.exists(directory.resolve(ExportCheckpoint.FILE_NAME)));
+        assertFalse(Files.exists(directory.resolve(ExportCheckpoint.FILE_NAME + ".tmp")));
+    }
+}
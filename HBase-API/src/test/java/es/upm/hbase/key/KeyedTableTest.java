@@ -0,0 +1,102 @@
+package es.upm.hbase.key;
+
+import org.apache.hadoop.hbase.Cell;
+import org.apache.hadoop.hbase.KeyValue;
+import org.apache.hadoop.hbase.client.Result;
+import org.apache.hadoop.hbase.client.ResultScanner;
+import org.apache.hadoop.hbase.client.metrics.ScanMetrics;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class KeyedTableTest {
+    private static final byte[] FAMILY = Bytes.toBytes("BasicData");
+
+    private static Result row(int bucket, String key) {
+        byte[] row = Bytes.add(new byte[]{(byte) bucket}, Bytes.toBytes(key));
+        Cell cell = new KeyValue(row, FAMILY, Bytes.toBytes("q"), 1L, Bytes.toBytes(key));
+        return Result.create(Collections.singletonList(cell));
+    }
+
+    /**
+     * Scanner over the rows of one bucket, which have to be sorted like a region scanner's.
+     */
+    private static class ListScanner implements ResultScanner {
+        private final Iterator<Result> rows;
+        private final ScanMetrics metrics = new ScanMetrics();
+        boolean closed;
+
+        ListScanner(Result... rows) {
+            this.rows = Arrays.asList(rows).iterator();
+            metrics.countOfRowsScanned.set(rows.length);
+        }
+
+        @Override
+        public Result next() {
+            return rows.hasNext() ? rows.next() : null;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        @Override
+        public boolean renewLease() {
+            return true;
+        }
+
+        @Override
+        public ScanMetrics getScanMetrics() {
+            return metrics;
+        }
+    }
+
+    @Test
+    public void bucketsAreMergedInLogicalKeyOrder() throws IOException {
+        List<ResultScanner> buckets = Arrays.asList(
+                new ListScanner(row(0, "b"), row(0, "e"), row(0, "f")),
+                new ListScanner(),
+                new ListScanner(row(2, "a"), row(2, "c"), row(2, "g")),
+                new ListScanner(row(3, "d")));
+        List<String> keys = new ArrayList<>();
+        try (ResultScanner merged = new KeyedTable.MergingScanner(buckets, 1)) {
+            for (Result result : merged) {
+                keys.add(Bytes.toString(result.getRow(), 1, result.getRow().length - 1));
+            }
+            assertEquals(7, merged.getScanMetrics().countOfRowsScanned.get());
+        }
+        assertEquals(Arrays.asList("a", "b", "c", "d", "e", "f", "g"), keys);
+        for (ResultScanner bucket : buckets) {
+            assertTrue(((ListScanner) bucket).closed);
+        }
+    }
+
+    @Test
+    public void equalKeysOfDifferentBucketsAreAllReturned() throws IOException {
+        List<ResultScanner> buckets = Arrays.asList(new ListScanner(row(0, "a"), row(0, "b")),
+                new ListScanner(row(1, "a"), row(1, "b")));
+        int rows = 0;
+        try (ResultScanner merged = new KeyedTable.MergingScanner(buckets, 1)) {
+            while (merged.next() != null) {
+                rows++;
+            }
+        }
+        assertEquals(4, rows);
+    }
+
+    @Test
+    public void logicalOrderIgnoresThePrefix() {
+        assertTrue(KeyedTable.logicalOrder(1).compare(row(9, "a"), row(0, "b")) < 0);
+        assertTrue(KeyedTable.logicalOrder(0).compare(row(9, "a"), row(0, "b")) > 0);
+    }
+}
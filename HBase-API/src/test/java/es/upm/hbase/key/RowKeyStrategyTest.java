@@ -0,0 +1,123 @@
+package es.upm.hbase.key;
+
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RowKeyStrategyTest {
+    private static final byte[] NAME = Bytes.toBytes("Alberto");
+
+    private static boolean contains(KeyRange range, byte[] row) {
+        return Bytes.compareTo(row, range.getStartRow()) >= 0
+                && (range.getStopRow().length == 0 || Bytes.compareTo(row, range.getStopRow()) < 0);
+    }
+
+    private static byte[] namePrefix() {
+        return Bytes.add(NAME, new byte[]{RowKeyStrategy.SEPARATOR});
+    }
+
+    @Test
+    public void nameKeysAreTheName() {
+        RowKeyStrategy keys = RowKeyStrategy.forName("name", 1);
+        assertArrayEquals(NAME, keys.rowKey(NAME, 42));
+        assertFalse(keys.isUnique());
+        assertEquals(0, keys.splitKeys().length);
+        assertEquals(1, keys.ranges(HConstants.EMPTY_START_ROW, HConstants.EMPTY_END_ROW).size());
+    }
+
+    @Test
+    public void nameIdKeysSortByName() {
+        RowKeyStrategy keys = RowKeyStrategy.forName("name-id", 4);
+        byte[] row = keys.rowKey(NAME, 42);
+        assertTrue(Bytes.startsWith(row, namePrefix()));
+        assertEquals(3, keys.splitKeys().length);
+        List<KeyRange> ranges = keys.ranges(namePrefix(), RowKeyStrategy.stopRowForPrefix(namePrefix()));
+        assertEquals(1, ranges.size());
+        assertTrue(contains(ranges.get(0), row));
+    }
+
+    @Test
+    public void prefixedRangesHaveOneRangePerBucket() {
+        for (String name : new String[]{"salted", "hashed"}) {
+            RowKeyStrategy keys = RowKeyStrategy.forName(name, 8);
+            List<KeyRange> ranges = keys.ranges(namePrefix(), RowKeyStrategy.stopRowForPrefix(namePrefix()));
+            assertEquals(8, ranges.size());
+            for (int bucket = 0; bucket < ranges.size(); bucket++) {
+                KeyRange range = ranges.get(bucket);
+                assertArrayEquals(Bytes.add(new byte[]{(byte) bucket}, namePrefix()), range.getStartRow());
+                assertArrayEquals(Bytes.add(new byte[]{(byte) bucket}, RowKeyStrategy.stopRowForPrefix(namePrefix())),
+                        range.getStopRow());
+            }
+            // Every user with the name falls into exactly one of them
+            for (long id = 0; id < 100; id++) {
+                byte[] row = keys.rowKey(NAME, id);
+                int holding = 0;
+                for (KeyRange range : ranges) {
+                    holding += contains(range, row) ? 1 : 0;
+                }
+                assertEquals(1, holding);
+            }
+        }
+    }
+
+    @Test
+    public void openEndedPrefixedRangesStopAtTheNextBucket() {
+        List<KeyRange> ranges = RowKeyStrategy.forName("salted", 4).ranges(HConstants.EMPTY_START_ROW,
+                HConstants.EMPTY_END_ROW);
+        assertArrayEquals(new byte[]{0}, ranges.get(0).getStartRow());
+        assertArrayEquals(new byte[]{1}, ranges.get(0).getStopRow());
+        assertArrayEquals(new byte[]{3}, ranges.get(3).getStartRow());
+        assertArrayEquals(new byte[]{4}, ranges.get(3).getStopRow());
+    }
+
+    @Test
+    public void prefixedKeysSpreadOverTheSplits() {
+        for (String name : new String[]{"salted", "hashed"}) {
+            RowKeyStrategy keys = RowKeyStrategy.forName(name, 4);
+            assertEquals(1, keys.getPrefixLength());
+            assertEquals(3, keys.splitKeys().length);
+            int[] buckets = new int[4];
+            for (long id = 0; id < 400; id++) {
+                buckets[keys.rowKey(NAME, id)[0]]++;
+            }
+            for (int count : buckets) {
+                assertTrue(name + " bucket with " + count + " of 400 keys", count > 50);
+            }
+        }
+    }
+
+    @Test
+    public void hashedBucketIsRepeatable() {
+        RowKeyStrategy keys = RowKeyStrategy.forName("hashed", 16);
+        assertArrayEquals(keys.rowKey(NAME, 1234), keys.rowKey(NAME, 1234));
+    }
+
+    @Test
+    public void stopRowForPrefix() {
+        assertArrayEquals(Bytes.toBytes("ab"), RowKeyStrategy.stopRowForPrefix(Bytes.toBytes("aa")));
+        assertArrayEquals(new byte[]{1}, RowKeyStrategy.stopRowForPrefix(new byte[]{0, (byte) 0xff}));
+        assertArrayEquals(HConstants.EMPTY_END_ROW, RowKeyStrategy.stopRowForPrefix(new byte[]{(byte) 0xff}));
+    }
+
+    @Test
+    public void specRoundTrips() {
+        for (String name : new String[]{"name", "name-id", "salted", "hashed"}) {
+            RowKeyStrategy keys = RowKeyStrategy.forName(name, 4);
+            RowKeyStrategy parsed = RowKeyStrategy.forSpec(keys.getSpec());
+            assertEquals(keys.getSpec(), parsed.getSpec());
+            assertEquals(keys.toString(), parsed.toString());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tooManyBuckets() {
+        RowKeyStrategy.forName("salted", RowKeyStrategy.MAX_BUCKETS + 1);
+    }
+}
@@ -0,0 +1,49 @@
+package es.upm.hbase.load;
+
+import es.upm.hbase.UsersSchema;
+import es.upm.hbase.codec.UserCodec;
+import es.upm.hbase.key.RowKeyStrategy;
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class UserDataGeneratorTest {
+    private static final RowKeyStrategy KEYS = RowKeyStrategy.forName("salted", 4);
+
+    private static UserDataGenerator generator() {
+        return new UserDataGenerator(42, UsersSchema.NAMES.length, UsersSchema.PROVINCES.length, 0, KEYS);
+    }
+
+    private static List<String> rows(UserDataGenerator.Source source, int count) {
+        List<String> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            rows.add(Bytes.toStringBinary(source.next(HConstants.LATEST_TIMESTAMP).getRow()));
+        }
+        return rows;
+    }
+
+    @Test
+    public void everySourceDrawsNewUsers() {
+        UserDataGenerator generator = generator();
+        assertNotEquals(rows(generator.newSource(), 10), rows(generator.newSource(), 10));
+    }
+
+    @Test
+    public void copiesShareTheStreams() {
+        UserDataGenerator generator = generator();
+        List<String> first = rows(generator.newSource(), 10);
+        assertNotEquals(first, rows(generator.withCodec(UserCodec.PACKED).newSource(), 10));
+        assertNotEquals(first, rows(generator.withKeys(KEYS).newSource(), 10));
+    }
+
+    @Test
+    public void sameSeedGivesTheSameUsers() {
+        assertEquals(rows(generator().newSource(), 10), rows(generator().newSource(), 10));
+    }
+}
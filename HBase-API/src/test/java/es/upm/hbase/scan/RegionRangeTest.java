@@ -0,0 +1,81 @@
+package es.upm.hbase.scan;
+
+import org.apache.hadoop.hbase.HConstants;
+import org.apache.hadoop.hbase.HRegionLocation;
+import org.apache.hadoop.hbase.ServerName;
+import org.apache.hadoop.hbase.TableName;
+import org.apache.hadoop.hbase.client.RegionInfoBuilder;
+import org.apache.hadoop.hbase.util.Bytes;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class RegionRangeTest {
+    private static final TableName TABLE = TableName.valueOf("Users");
+    private static final ServerName SERVER = ServerName.valueOf("localhost", 16020, 1L);
+
+    private static HRegionLocation region(String start, String end) {
+        return region(start, end, 0);
+    }
+
+    private static HRegionLocation region(String start, String end, int replicaId) {
+        return new HRegionLocation(RegionInfoBuilder.newBuilder(TABLE).setStartKey(Bytes.toBytes(start))
+                .setEndKey(Bytes.toBytes(end)).setReplicaId(replicaId).build(), SERVER);
+    }
+
+    // Regions (, g) [g, p) [p, ) given out of order
+    private static final List<HRegionLocation> REGIONS = Arrays.asList(region("p", ""), region("", "g"),
+            region("g", "p"));
+
+    private static void assertRanges(List<RegionRange> ranges, String... bounds) {
+        assertEquals(bounds.length / 2, ranges.size());
+        for (int i = 0; i < ranges.size(); i++) {
+            assertEquals(bounds[2 * i], Bytes.toString(ranges.get(i).getStartRow()));
+            assertEquals(bounds[2 * i + 1], Bytes.toString(ranges.get(i).getStopRow()));
+        }
+    }
+
+    @Test
+    public void wholeTableTakesEveryRegionInKeyOrder() {
+        assertRanges(RegionRange.split(REGIONS, HConstants.EMPTY_START_ROW, HConstants.EMPTY_END_ROW),
+                "", "g", "g", "p", "p", "");
+    }
+
+    @Test
+    public void rangeIsCutAtTheRegionBoundaries() {
+        assertRanges(RegionRange.split(REGIONS, Bytes.toBytes("c"), Bytes.toBytes("t")),
+                "c", "g", "g", "p", "p", "t");
+    }
+
+    @Test
+    public void rangeWithinOneRegion() {
+        assertRanges(RegionRange.split(REGIONS, Bytes.toBytes("h"), Bytes.toBytes("k")), "h", "k");
+    }
+
+    @Test
+    public void openEndedRangeStopsAtTheEndOfTheTable() {
+        assertRanges(RegionRange.split(REGIONS, Bytes.toBytes("k"), HConstants.EMPTY_END_ROW),
+                "k", "p", "p", "");
+    }
+
+    @Test
+    public void stopRowOnABoundaryLeavesOutTheNextRegion() {
+        assertRanges(RegionRange.split(REGIONS, HConstants.EMPTY_START_ROW, Bytes.toBytes("g")), "", "g");
+    }
+
+    @Test
+    public void emptyRangeHasNoRegions() {
+        assertRanges(RegionRange.split(REGIONS, Bytes.toBytes("k"), Bytes.toBytes("k")));
+    }
+
+    @Test
+    public void secondaryReplicasAreSkipped() {
+        List<HRegionLocation> replicated = Arrays.asList(region("", "g"), region("", "g", 1), region("g", ""),
+                region("g", "", 1));
+        assertRanges(RegionRange.split(replicated, HConstants.EMPTY_START_ROW, HConstants.EMPTY_END_ROW),
+                "", "g", "g", "");
+    }
+}
@@ -0,0 +1,97 @@
+package es.upm.hbase.workload;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class KeyChooserTest {
+    private static final int KEYS = 1000;
+    private static final int SAMPLES = 200000;
+
+    private static long[] histogram(KeyChooser chooser, long keys) {
+        Random random = new Random(42);
+        long[] counts = new long[(int) keys];
+        for (int i = 0; i < SAMPLES; i++) {
+            long key = chooser.next(random, keys);
+            assertTrue("key " + key + " out of [0, " + keys + ")", key >= 0 && key < keys);
+            counts[(int) key]++;
+        }
+        return counts;
+    }
+
+    private static long max(long[] counts) {
+        long max = 0;
+        for (long count : counts) {
+            max = Math.max(max, count);
+        }
+        return max;
+    }
+
+    private static int argMax(long[] counts) {
+        int max = 0;
+        for (int i = 1; i < counts.length; i++) {
+            if (counts[i] > counts[max]) {
+                max = i;
+            }
+        }
+        return max;
+    }
+
+    @Test
+    public void uniformIsFlat() {
+        long[] counts = histogram(KeyChooser.forName("uniform", KEYS), KEYS);
+        for (long count : counts) {
+            assertEquals(SAMPLES / KEYS, count, SAMPLES / KEYS / 2);
+        }
+    }
+
+    @Test
+    public void zipfianMostPopularKeyMatchesTheFirstRank() {
+        long[] counts = histogram(KeyChooser.forName("zipfian", KEYS), KEYS);
+        double zetan = 0;
+        for (int i = 1; i <= KEYS; i++) {
+            zetan += 1 / Math.pow(i, KeyChooser.ZIPFIAN_CONSTANT);
+        }
+        assertEquals(1 / zetan, (double) max(counts) / SAMPLES, 0.01);
+    }
+
+    @Test
+    public void scrambledZipfianSpreadsThePopularKeys() {
+        long[] counts = histogram(new KeyChooser.Zipfian(KEYS, true), KEYS);
+        int first = argMax(counts);
+        counts[first] = 0;
+        int second = argMax(counts);
+        assertTrue(Math.abs(first - second) > 1);
+    }
+
+    @Test
+    public void unscrambledZipfianFavoursTheFirstKeys() {
+        long[] counts = histogram(new KeyChooser.Zipfian(KEYS, false), KEYS);
+        assertTrue(counts[0] > counts[1] && counts[1] > counts[10] && counts[10] > counts[100]);
+    }
+
+    @Test
+    public void latestFavoursTheLastInsertedKeys() {
+        long[] counts = histogram(KeyChooser.forName("latest", KEYS), 2 * KEYS);
+        assertEquals(2 * KEYS - 1, argMax(counts));
+        long newest = 0;
+        for (int i = KEYS; i < 2 * KEYS; i++) {
+            newest += counts[i];
+        }
+        assertEquals(SAMPLES, newest);
+    }
+
+    @Test
+    public void keysBelowTheRecordsStayInRange() {
+        histogram(KeyChooser.forName("zipfian", KEYS), 10);
+        histogram(KeyChooser.forName("latest", KEYS), 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownDistribution() {
+        KeyChooser.forName("hotspot", KEYS);
+    }
+}